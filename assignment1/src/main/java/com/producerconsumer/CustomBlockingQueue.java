@@ -5,14 +5,21 @@ public class CustomBlockingQueue<E> extends Queue<E> {
     protected Object[] elements;
     protected int front;
     protected int rear;
+    // Console messages on blocking, switched off when the queue sits inside a pipeline
+    protected final boolean verbose;
 
     // aBounded queue creation
     @SuppressWarnings("unchecked")
     public CustomBlockingQueue(int capacity) {
+        this(capacity, true);
+    }
+
+    public CustomBlockingQueue(int capacity, boolean verbose) {
         super(capacity <= 0 ? DEFAULT_CAPACITY : capacity);
         this.elements = new Object[this.capacity];
         this.front = 0;
         this.rear = -1;
+        this.verbose = verbose;
     }
 
     @SuppressWarnings("unchecked")
@@ -29,7 +36,9 @@ public class CustomBlockingQueue<E> extends Queue<E> {
 
         // Wait if queue is full (only for bounded queues)
         while (isFull() && capacity > 0) {
-            System.out.println("Queue is full hence waiting to produce");
+            if (verbose) {
+                System.out.println("Queue is full hence waiting to produce");
+            }
             wait();
         }
 
@@ -46,7 +55,9 @@ public class CustomBlockingQueue<E> extends Queue<E> {
     public synchronized E dequeue() throws InterruptedException {
         // Wait if queue is empty
         while (isEmpty()) {
-            System.out.println("Queue is empty hence waiting to consume");
+            if (verbose) {
+                System.out.println("Queue is empty hence waiting to consume");
+            }
             wait();
         }
 
@@ -11,6 +11,10 @@ public class DynamicBlockingQueue<E> extends CustomBlockingQueue<E> {
         super(initialCapacity <= 0 ? DEFAULT_CAPACITY : initialCapacity);
     }
 
+    public DynamicBlockingQueue(int initialCapacity, boolean verbose) {
+        super(initialCapacity <= 0 ? DEFAULT_CAPACITY : initialCapacity, verbose);
+    }
+
     public DynamicBlockingQueue() {
         super(DEFAULT_CAPACITY);
     }
@@ -26,10 +30,13 @@ public class DynamicBlockingQueue<E> extends CustomBlockingQueue<E> {
         double utilization = (double) size / capacity;
 //        System.out.println(utilization);
         if (utilization >= GROWTH_THRESHOLD) {
-            int newCapacity = (int) (capacity * GROWTH_FACTOR);
+            // Always grow by at least one slot, 1 * 1.5 truncates back to 1
+            int newCapacity = Math.max(capacity + 1, (int) (capacity * GROWTH_FACTOR));
             int oldCapacity = capacity;
             resize(newCapacity);
-            System.out.println("[DynamicQueue] Resized from " + oldCapacity + " to " + newCapacity);
+            if (verbose) {
+                System.out.println("[DynamicQueue] Resized from " + oldCapacity + " to " + newCapacity);
+            }
         }
 
         rear = (rear + 1) % capacity;
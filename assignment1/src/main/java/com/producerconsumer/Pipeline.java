@@ -0,0 +1,324 @@
+package com.producerconsumer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+// Chains stages of worker threads through blocking queues: submit -> stage 1 -> stage 2 -> ... -> sink
+// Every stage owns its input queue, so worker count, queue type and capacity can be tuned per stage
+public class Pipeline<I, O> {
+    private static final int DEFAULT_STAGE_CAPACITY = 64;
+
+    // Marks end of input, one per worker so every worker of a stage sees exactly one
+    private static final Envelope POISON = new Envelope(-1, null);
+
+    private final List<Stage> stages;
+    private final java.util.function.Consumer<? super O> sink;
+    private final boolean ordered;
+    private final AtomicLong sequence = new AtomicLong();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final List<Thread> threads = new ArrayList<>();
+    // submit holds the read side from its closed check until the item is queued, close takes the write side,
+    // so every item is either queued ahead of the end-of-input markers or rejected
+    private final ReadWriteLock admission = new ReentrantReadWriteLock();
+    // Ordered mode only: one permit per sequence number between submit and the sink, so a slow item at the head
+    // can't make the reorder buffer grow past what the stage queues and workers hold anyway
+    private final Semaphore inFlight;
+
+    // Sink calls are serialised, the reorder buffer for ordered output is keyed by submission sequence
+    private final Object sinkLock = new Object();
+    private final Map<Long, Envelope> pending = new HashMap<>();
+    private long nextToEmit = 0;
+
+    private volatile boolean started;
+    private volatile boolean closed;
+
+    private Pipeline(List<Stage> stages, java.util.function.Consumer<? super O> sink, boolean ordered) {
+        this.stages = stages;
+        this.sink = sink;
+        this.ordered = ordered;
+        int maxInFlight = 0;
+        for (Stage stage : stages) {
+            maxInFlight += stage.queue.getCapacity() + stage.workers;
+        }
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    public static <T> Builder<T, T> builder() {
+        return new Builder<>();
+    }
+
+    // Spins up the workers of every stage
+    public synchronized void start() {
+        if (started) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        started = true;
+        for (int s = 0; s < stages.size(); s++) {
+            Stage stage = stages.get(s);
+            stage.metrics.markStarted();
+            for (int w = 0; w < stage.workers; w++) {
+                Thread t = new Thread(() -> runWorker(stage), stage.name + "-worker-" + (w + 1));
+                threads.add(t);
+                t.start();
+            }
+        }
+    }
+
+    // Blocks when the first stage queue is full, which is how backpressure reaches the caller
+    // In ordered mode it also blocks while too many items wait behind the oldest unfinished one
+    public void submit(I item) throws InterruptedException {
+        if (item == null) {
+            throw new IllegalArgumentException("Element cannot be null");
+        }
+        if (ordered) {
+            inFlight.acquire();
+        }
+        long seq = -1;
+        boolean queued = false;
+        try {
+            admission.readLock().lockInterruptibly();
+            try {
+                if (!started || closed) {
+                    throw new IllegalStateException("Pipeline is not accepting items");
+                }
+                seq = sequence.getAndIncrement();
+                stages.get(0).queue.enqueue(new Envelope(seq, item));
+                queued = true;
+            } finally {
+                admission.readLock().unlock();
+            }
+        } finally {
+            if (ordered && !queued) {
+                if (seq >= 0) {
+                    // Interrupted after taking a sequence number, ordered output has to skip over its slot
+                    deliver(new Envelope(seq, null));
+                } else {
+                    inFlight.release();
+                }
+            }
+        }
+    }
+
+    // Stops accepting input, in-flight items keep flowing through every stage before the workers exit
+    // Waits for submits that already passed their check to finish queueing
+    public void close() throws InterruptedException {
+        admission.writeLock().lockInterruptibly();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Stage first = stages.get(0);
+            for (int i = 0; i < first.workers; i++) {
+                first.queue.enqueue(POISON);
+            }
+        } finally {
+            admission.writeLock().unlock();
+        }
+    }
+
+    // Waits until every submitted item has reached the sink (or been dropped)
+    public void awaitCompletion() throws InterruptedException {
+        finished.await();
+    }
+
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    // Abandons in-flight items and interrupts every worker
+    public void shutdownNow() {
+        closed = true;
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+    }
+
+    public List<StageMetrics> getStageMetrics() {
+        List<StageMetrics> metrics = new ArrayList<>();
+        for (Stage stage : stages) {
+            metrics.add(stage.metrics);
+        }
+        return metrics;
+    }
+
+    // The stage whose workers are busiest is the one holding the rest of the pipeline back
+    public StageMetrics getBottleneck() {
+        return getStageMetrics().stream()
+                .max(Comparator.comparingDouble(StageMetrics::getUtilization))
+                .orElseThrow();
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder("---- PIPELINE REPORT ----\n");
+        for (StageMetrics m : getStageMetrics()) {
+            sb.append(m).append('\n');
+        }
+        sb.append("Bottleneck stage: ").append(getBottleneck().getName()).append('\n');
+        return sb.toString();
+    }
+
+    private void runWorker(Stage stage) {
+        Stage next = stage.index + 1 < stages.size() ? stages.get(stage.index + 1) : null;
+        try {
+            while (true) {
+                Envelope envelope = stage.queue.dequeue();
+                if (envelope == POISON) {
+                    break;
+                }
+                stage.metrics.recordTake(stage.queue.getSize());
+
+                Object result;
+                long begin = System.nanoTime();
+                try {
+                    result = stage.function.apply(envelope.value);
+                } catch (RuntimeException e) {
+                    System.err.println("[" + stage.name + "] Item failed: " + e.getMessage());
+                    stage.metrics.recordFailed();
+                    result = null;
+                }
+                stage.metrics.recordProcessed(System.nanoTime() - begin);
+
+                // A null result drops the item, ordered output still has to skip over its slot
+                if (result == null) {
+                    stage.metrics.recordDropped();
+                    if (ordered) {
+                        deliver(new Envelope(envelope.seq, null));
+                    }
+                    continue;
+                }
+
+                long blockedFrom = System.nanoTime();
+                Envelope out = new Envelope(envelope.seq, result);
+                if (next != null) {
+                    next.queue.enqueue(out);
+                } else {
+                    deliver(out);
+                }
+                stage.metrics.recordEmitted(System.nanoTime() - blockedFrom);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("[" + Thread.currentThread().getName() + "] Interrupted, abandoning stage");
+        } finally {
+            workerExited(stage, next);
+        }
+    }
+
+    // The last worker out of a stage passes end-of-input downstream, so nothing is cut off mid-flight
+    private void workerExited(Stage stage, Stage next) {
+        if (stage.running.decrementAndGet() > 0) {
+            return;
+        }
+        stage.metrics.markFinished();
+        if (next == null) {
+            finished.countDown();
+            return;
+        }
+        try {
+            for (int i = 0; i < next.workers; i++) {
+                next.queue.enqueue(POISON);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver(Envelope envelope) {
+        if (!ordered) {
+            synchronized (sinkLock) {
+                sink.accept((O) envelope.value);
+            }
+            return;
+        }
+        synchronized (sinkLock) {
+            pending.put(envelope.seq, envelope);
+            Envelope head;
+            while ((head = pending.remove(nextToEmit)) != null) {
+                nextToEmit++;
+                inFlight.release();
+                if (head.value != null) {
+                    sink.accept((O) head.value);
+                }
+            }
+        }
+    }
+
+    // Item plus the position it was submitted at, needed to restore order at the sink
+    private record Envelope(long seq, Object value) {}
+
+    private static final class Stage {
+        final int index;
+        final String name;
+        final Function<Object, Object> function;
+        final int workers;
+        final Queue<Envelope> queue;
+        final StageMetrics metrics;
+        final AtomicInteger running;
+
+        Stage(int index, String name, Function<Object, Object> function, int workers, Queue<Envelope> queue) {
+            this.index = index;
+            this.name = name;
+            this.function = function;
+            this.workers = workers;
+            this.queue = queue;
+            this.metrics = new StageMetrics(name, workers, queue.getCapacity());
+            this.running = new AtomicInteger(workers);
+        }
+    }
+
+    // Stages are declared in order, each one maps the output type of the previous stage
+    public static class Builder<I, O> {
+        private final List<Stage> stages = new ArrayList<>();
+        private boolean ordered;
+
+        private Builder() {
+        }
+
+        public <R> Builder<I, R> stage(String name, Function<? super O, ? extends R> function, int workers) {
+            return stage(name, function, workers, DEFAULT_STAGE_CAPACITY, capacity -> new CustomBlockingQueue<>(capacity, false));
+        }
+
+        public <R> Builder<I, R> stage(String name, Function<? super O, ? extends R> function, int workers, int capacity) {
+            return stage(name, function, workers, capacity, c -> new CustomBlockingQueue<>(c, false));
+        }
+
+        // queueFactory receives the capacity and returns the queue feeding this stage
+        @SuppressWarnings("unchecked")
+        public <R> Builder<I, R> stage(String name, Function<? super O, ? extends R> function, int workers,
+                                       int capacity, IntFunction<? extends Queue<?>> queueFactory) {
+            if (workers <= 0) {
+                throw new IllegalArgumentException("Stage '" + name + "' needs at least one worker");
+            }
+            Queue<Envelope> queue = (Queue<Envelope>) queueFactory.apply(capacity);
+            stages.add(new Stage(stages.size(), name, (Function<Object, Object>) function, workers, queue));
+            return (Builder<I, R>) this;
+        }
+
+        // Emit results in submission order instead of completion order
+        public Builder<I, O> ordered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        public Pipeline<I, O> build(java.util.function.Consumer<? super O> sink) {
+            if (stages.isEmpty()) {
+                throw new IllegalStateException("Pipeline needs at least one stage");
+            }
+            return new Pipeline<>(List.copyOf(stages), sink, ordered);
+        }
+    }
+}
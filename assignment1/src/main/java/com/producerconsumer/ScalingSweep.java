@@ -0,0 +1,269 @@
+package com.producerconsumer;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sweeps producer count, consumer count, capacity and payload size over a grid for every Queue implementation
+// Each cell records throughput, latency percentiles, GC time and allocation rate, one CSV row per cell
+//
+// Usage: java -cp target/classes com.producerconsumer.ScalingSweep
+//            [--producers=1,2,4,8] [--consumers=1,2,4,8] [--capacities=1,16,256] [--payloads=16,256,4096]
+//            [--messages=100000] [--queues=custom,dynamic,shared] [--out=scaling-sweep.csv]
+public class ScalingSweep {
+    // Every payload starts with the enqueue timestamp, so it can't be smaller than a long
+    private static final int TIMESTAMP_BYTES = 8;
+    private static final long CELL_TIMEOUT_MS = 120_000;
+
+    public static final String CSV_HEADER = "queue,producers,consumers,capacity,payload_bytes,messages,elapsed_ms,"
+            + "throughput_msgs_per_s,p50_us,p90_us,p99_us,p999_us,max_us,gc_count,gc_time_ms,allocated_mb,alloc_rate_mb_per_s,status";
+
+    // Queue implementations under test, all created quiet so console output doesn't skew the timings
+    public enum QueueKind {
+        CUSTOM, DYNAMIC, SHARED;
+
+        Queue<byte[]> create(int capacity, int payloadBytes, Path scratch) {
+            switch (this) {
+                case CUSTOM:
+                    return new CustomBlockingQueue<>(capacity, false);
+                case DYNAMIC:
+                    return new DynamicBlockingQueue<>(capacity, false);
+                default:
+                    return SharedMemoryQueue.forBytes(scratch, capacity, payloadBytes, SharedMemoryQueue.WaitMode.BLOCKING);
+            }
+        }
+    }
+
+    public record Result(QueueKind queue, int producers, int consumers, int capacity, int payloadBytes, int messages,
+                         long elapsedNanos, long[] sortedLatencies, long gcCount, long gcTimeMs, long allocatedBytes,
+                         boolean completed) {
+
+        public double throughput() {
+            return elapsedNanos == 0 ? 0.0 : messages * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        public double percentileMicros(double p) {
+            if (sortedLatencies.length == 0) {
+                return 0.0;
+            }
+            int index = (int) Math.ceil(p * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(sortedLatencies.length - 1, index))] / 1000.0;
+        }
+
+        public String toCsv() {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            double allocatedMb = allocatedBytes / (1024.0 * 1024.0);
+            return String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%d,%.3f,%.1f,%.2f,%.2f,%.2f,%.2f,%.2f,%d,%d,%.2f,%.2f,%s",
+                    queue.name().toLowerCase(Locale.ROOT), producers, consumers, capacity, payloadBytes, messages,
+                    elapsedNanos / 1_000_000.0, throughput(),
+                    percentileMicros(0.50), percentileMicros(0.90), percentileMicros(0.99), percentileMicros(0.999),
+                    percentileMicros(1.0), gcCount, gcTimeMs, allocatedMb, seconds == 0 ? 0.0 : allocatedMb / seconds,
+                    completed ? "ok" : "timeout");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] producers = {1, 2, 4, 8};
+        int[] consumers = {1, 2, 4, 8};
+        int[] capacities = {1, 16, 256};
+        int[] payloads = {16, 256, 4096};
+        int messages = 100_000;
+        List<QueueKind> queues = List.of(QueueKind.values());
+        Path out = Paths.get("scaling-sweep.csv");
+
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            switch (kv[0]) {
+                case "producers" -> producers = parseInts(kv[1]);
+                case "consumers" -> consumers = parseInts(kv[1]);
+                case "capacities" -> capacities = parseInts(kv[1]);
+                case "payloads" -> payloads = parseInts(kv[1]);
+                case "messages" -> messages = Integer.parseInt(kv[1]);
+                case "queues" -> queues = Arrays.stream(kv[1].split(","))
+                        .map(q -> QueueKind.valueOf(q.trim().toUpperCase(Locale.ROOT)))
+                        .toList();
+                case "out" -> out = Paths.get(kv[1]);
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        List<Result> results = sweep(queues, producers, consumers, capacities, payloads, messages, out);
+        System.out.println("Sweep complete, " + results.size() + " cells written to " + out.toAbsolutePath());
+    }
+
+    // Runs every cell of the grid, appending rows to the CSV as they finish so a long sweep can be watched live
+    public static List<Result> sweep(List<QueueKind> queues, int[] producers, int[] consumers, int[] capacities,
+                                     int[] payloads, int messages, Path out) throws IOException, InterruptedException {
+        List<Result> results = new ArrayList<>();
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(out))) {
+            writer.println(CSV_HEADER);
+            for (QueueKind queue : queues) {
+                // Short untimed run so the first cell isn't paying for class loading and JIT
+                runCell(queue, 2, 2, 16, 64, Math.min(messages, 20_000));
+
+                for (int payload : payloads) {
+                    for (int capacity : capacities) {
+                        for (int p : producers) {
+                            for (int c : consumers) {
+                                Result result = runCell(queue, p, c, capacity, payload, messages);
+                                results.add(result);
+                                writer.println(result.toCsv());
+                                writer.flush();
+                                System.out.printf("%-8s P=%-2d C=%-2d cap=%-5d payload=%-5d %,12.0f msgs/s  p99=%,.1fus%s%n",
+                                        queue, p, c, result.capacity(), result.payloadBytes(), result.throughput(), result.percentileMicros(0.99),
+                                        result.completed() ? "" : "  TIMEOUT");
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // One cell: producers split the messages between them, consumers split them the same way and time each one
+    public static Result runCell(QueueKind kind, int producers, int consumers, int capacity, int payloadBytes,
+                                 int messages) throws IOException, InterruptedException {
+        int payload = Math.max(TIMESTAMP_BYTES, payloadBytes);
+        Path scratch = kind == QueueKind.SHARED ? Files.createTempFile("sweep", ".ring") : null;
+        Queue<byte[]> queue = kind.create(capacity, payload, scratch);
+        // What the cell actually runs with: the shared ring needs at least two slots, a payload holds a timestamp,
+        // and the dynamic queue's starting capacity before it grows
+        int startCapacity = queue.getCapacity();
+
+        try {
+            long[][] latencies = new long[consumers][];
+            AtomicLong allocated = new AtomicLong();
+            Thread[] threads = new Thread[producers + consumers];
+
+            for (int i = 0; i < producers; i++) {
+                int count = share(messages, producers, i);
+                threads[i] = new Thread(() -> produce(queue, count, payload, allocated), "sweep-producer-" + i);
+            }
+            for (int i = 0; i < consumers; i++) {
+                int index = i;
+                latencies[i] = new long[share(messages, consumers, i)];
+                threads[producers + i] = new Thread(() -> consume(queue, latencies[index], allocated), "sweep-consumer-" + i);
+            }
+
+            long gcCountBefore = gcCount();
+            long gcTimeBefore = gcTimeMs();
+            long start = System.nanoTime();
+
+            for (Thread t : threads) t.start();
+            boolean completed = true;
+            long deadline = System.currentTimeMillis() + CELL_TIMEOUT_MS;
+            for (Thread t : threads) {
+                t.join(Math.max(1, deadline - System.currentTimeMillis()));
+                if (t.isAlive()) {
+                    completed = false;
+                }
+            }
+            if (!completed) {
+                for (Thread t : threads) t.interrupt();
+                for (Thread t : threads) t.join(TimeUnit.SECONDS.toMillis(5));
+            }
+
+            long elapsed = System.nanoTime() - start;
+            long[] merged = Arrays.stream(latencies).flatMapToLong(Arrays::stream).filter(l -> l > 0).sorted().toArray();
+            return new Result(kind, producers, consumers, startCapacity, payload, messages, elapsed, merged,
+                    gcCount() - gcCountBefore, gcTimeMs() - gcTimeBefore, allocated.get(), completed);
+        } finally {
+            if (queue instanceof SharedMemoryQueue<?> shared) {
+                shared.close();
+            }
+            if (scratch != null) {
+                Files.deleteIfExists(scratch);
+            }
+        }
+    }
+
+    private static void produce(Queue<byte[]> queue, int count, int payloadBytes, AtomicLong allocated) {
+        long allocatedBefore = threadAllocatedBytes();
+        try {
+            for (int i = 0; i < count; i++) {
+                byte[] payload = new byte[payloadBytes];
+                writeLong(payload, System.nanoTime());
+                queue.enqueue(payload);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            allocated.addAndGet(threadAllocatedBytes() - allocatedBefore);
+        }
+    }
+
+    private static void consume(Queue<byte[]> queue, long[] latencies, AtomicLong allocated) {
+        long allocatedBefore = threadAllocatedBytes();
+        try {
+            for (int i = 0; i < latencies.length; i++) {
+                byte[] payload = queue.dequeue();
+                latencies[i] = System.nanoTime() - readLong(payload);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            allocated.addAndGet(threadAllocatedBytes() - allocatedBefore);
+        }
+    }
+
+    // Splits total as evenly as possible, the first workers take the remainder
+    private static int share(int total, int workers, int index) {
+        return total / workers + (index < total % workers ? 1 : 0);
+    }
+
+    private static long threadAllocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            return bean.getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long gcTimeMs() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static void writeLong(byte[] bytes, long value) {
+        for (int i = 0; i < TIMESTAMP_BYTES; i++) {
+            bytes[i] = (byte) (value >>> (56 - 8 * i));
+        }
+    }
+
+    private static long readLong(byte[] bytes) {
+        long value = 0;
+        for (int i = 0; i < TIMESTAMP_BYTES; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int[] parseInts(String csv) {
+        return Arrays.stream(csv.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+}
@@ -0,0 +1,292 @@
+package com.producerconsumer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded queue living in a memory-mapped file, so producers and consumers can sit in different JVMs on the same host
+// Every process maps the same file; slots carry a sequence number that is published with release/acquire
+// ordering (bounded MPMC ring), so no lock is ever held across processes once the file is initialised
+//
+// File layout (native byte order):
+//   0   magic
+//   8   capacity (int), 12 slot size (int)
+//   64  head, the next position to consume (own cache line)
+//   128 tail, the next position to produce (own cache line)
+//   192 slots, each [sequence long][length int][payload ...] padded to 8 bytes
+public class SharedMemoryQueue<E> extends Queue<E> implements AutoCloseable {
+    private static final long MAGIC = 0x53484D5155455545L; // "SHMQUEUE"
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SLOT_SIZE_OFFSET = 12;
+    private static final int HEAD_OFFSET = 64;
+    private static final int TAIL_OFFSET = 128;
+    private static final int SLOTS_OFFSET = 192;
+    private static final int SLOT_HEADER = 12;
+
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 256;
+
+    // Spins before a blocking waiter starts parking, and the longest it parks in one go
+    private static final int SPIN_LIMIT = 200;
+    private static final long MAX_PARK_NANOS = 1_000_000;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    // How a thread waits on an empty (or full) ring
+    public enum WaitMode {
+        // Busy spin, lowest latency but burns a core while idle
+        SPIN,
+        // Spin briefly, then yield and park with growing back-off
+        BLOCKING
+    }
+
+    // Turns elements into bytes for the shared slots
+    public interface Codec<E> {
+        byte[] encode(E element);
+
+        E decode(byte[] bytes);
+    }
+
+    public static final Codec<String> STRING_CODEC = new Codec<>() {
+        @Override
+        public byte[] encode(String element) {
+            return element.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    public static final Codec<byte[]> BYTES_CODEC = new Codec<>() {
+        @Override
+        public byte[] encode(byte[] element) {
+            return element;
+        }
+
+        @Override
+        public byte[] decode(byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Codec<E> codec;
+    private final WaitMode waitMode;
+    private final int slotSize;
+    private final int maxMessageSize;
+
+    // Opens the ring at path, creating and initialising the file if no other process has done so yet
+    // When the file already holds a ring, its capacity and message size win over the arguments
+    // A one-slot ring can't tell "published" from "free for the next lap", so capacity is at least 2
+    public SharedMemoryQueue(Path path, int capacity, int maxMessageSize, Codec<E> codec, WaitMode waitMode) {
+        super(capacity <= 0 ? DEFAULT_CAPACITY : Math.max(2, capacity));
+        if (maxMessageSize <= 0) {
+            throw new IllegalArgumentException("Max message size must be positive");
+        }
+        this.codec = codec;
+        this.waitMode = waitMode;
+
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map shared queue file " + path, e);
+        }
+        try {
+            // The file lock only guards initialisation, two processes racing to create the ring
+            FileLock lock = channel.lock();
+            try {
+                MappedByteBuffer header = readHeader();
+                if (header != null && header.getLong(0) == MAGIC) {
+                    this.capacity = header.getInt(CAPACITY_OFFSET);
+                    this.slotSize = header.getInt(SLOT_SIZE_OFFSET);
+                    this.buffer = map();
+                } else {
+                    this.slotSize = align8(SLOT_HEADER + maxMessageSize);
+                    this.buffer = map();
+                    initialise();
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            closeAfterFailure(e);
+            throw new UncheckedIOException("Could not map shared queue file " + path, e);
+        } catch (RuntimeException e) {
+            closeAfterFailure(e);
+            throw e;
+        }
+        this.maxMessageSize = slotSize - SLOT_HEADER;
+    }
+
+    public static SharedMemoryQueue<String> forStrings(Path path, int capacity) {
+        return new SharedMemoryQueue<>(path, capacity, DEFAULT_MAX_MESSAGE_SIZE, STRING_CODEC, WaitMode.BLOCKING);
+    }
+
+    public static SharedMemoryQueue<byte[]> forBytes(Path path, int capacity, int maxMessageSize, WaitMode waitMode) {
+        return new SharedMemoryQueue<>(path, capacity, maxMessageSize, BYTES_CODEC, waitMode);
+    }
+
+    // Claims a slot by moving the tail, writes the payload, then publishes the slot sequence
+    @Override
+    public void enqueue(E element) throws InterruptedException {
+        if (element == null) {
+            throw new IllegalArgumentException("Element cannot be null");
+        }
+        byte[] payload = codec.encode(element);
+        if (payload.length > maxMessageSize) {
+            throw new IllegalArgumentException("Message of " + payload.length + " bytes exceeds slot size of " + maxMessageSize);
+        }
+
+        int idle = 0;
+        while (true) {
+            long pos = (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+            int slot = slotOffset(pos);
+            long seq = (long) LONGS.getAcquire(buffer, slot);
+            long diff = seq - pos;
+            if (diff == 0) {
+                if (LONGS.compareAndSet(buffer, TAIL_OFFSET, pos, pos + 1)) {
+                    buffer.putInt(slot + 8, payload.length);
+                    buffer.put(slot + SLOT_HEADER, payload, 0, payload.length);
+                    LONGS.setRelease(buffer, slot, pos + 1);
+                    return;
+                }
+            } else if (diff < 0) {
+                // Slot still holds an unconsumed message from the previous lap, so the ring is full
+                idle = idle(idle);
+            }
+        }
+    }
+
+    // Claims a published slot by moving the head, copies the payload out, then hands the slot back to producers
+    @Override
+    public E dequeue() throws InterruptedException {
+        int idle = 0;
+        while (true) {
+            long pos = (long) LONGS.getVolatile(buffer, HEAD_OFFSET);
+            int slot = slotOffset(pos);
+            long seq = (long) LONGS.getAcquire(buffer, slot);
+            long diff = seq - (pos + 1);
+            if (diff == 0) {
+                if (LONGS.compareAndSet(buffer, HEAD_OFFSET, pos, pos + 1)) {
+                    int length = buffer.getInt(slot + 8);
+                    byte[] payload = new byte[length];
+                    buffer.get(slot + SLOT_HEADER, payload, 0, length);
+                    LONGS.setRelease(buffer, slot, pos + capacity);
+                    return codec.decode(payload);
+                }
+            } else if (diff < 0) {
+                // Nothing published at the head yet
+                idle = idle(idle);
+            }
+        }
+    }
+
+    @Override
+    public boolean isFull() {
+        return getSize() >= capacity;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getSize() == 0;
+    }
+
+    // Claimed positions, so a message that is still being written already counts
+    @Override
+    public int getSize() {
+        long head = (long) LONGS.getVolatile(buffer, HEAD_OFFSET);
+        long tail = (long) LONGS.getVolatile(buffer, TAIL_OFFSET);
+        return (int) Math.max(0, Math.min(capacity, tail - head));
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    // The mapping itself is released by the JVM once the buffer is unreachable
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    // No queue is handed out when mapping or initialising fails, so nothing else would ever close the channel
+    private void closeAfterFailure(Exception failure) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private int idle(int idle) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (waitMode == WaitMode.SPIN || idle < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else if (idle < SPIN_LIMIT * 2) {
+            Thread.yield();
+        } else {
+            long park = Math.min(MAX_PARK_NANOS, 1_000L << Math.min(10, (idle - SPIN_LIMIT * 2) / 8));
+            LockSupport.parkNanos(park);
+        }
+        return idle + 1;
+    }
+
+    private int slotOffset(long pos) {
+        return SLOTS_OFFSET + (int) (pos % capacity) * slotSize;
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        long length = SLOTS_OFFSET + (long) capacity * slotSize;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Shared queue of " + length + " bytes is too large to map");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        mapped.order(ByteOrder.nativeOrder());
+        return mapped;
+    }
+
+    // Runs under the file lock, the magic is written last so attaching processes never see half a header
+    private void initialise() {
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(SLOT_SIZE_OFFSET, slotSize);
+        LONGS.setVolatile(buffer, HEAD_OFFSET, 0L);
+        LONGS.setVolatile(buffer, TAIL_OFFSET, 0L);
+        for (int i = 0; i < capacity; i++) {
+            LONGS.setVolatile(buffer, slotOffset(i), (long) i);
+        }
+        LONGS.setRelease(buffer, 0, MAGIC);
+        buffer.force();
+    }
+
+    private MappedByteBuffer readHeader() throws IOException {
+        if (channel.size() < SLOTS_OFFSET) {
+            return null;
+        }
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SLOTS_OFFSET);
+        header.order(ByteOrder.nativeOrder());
+        return header;
+    }
+
+    private static int align8(int n) {
+        return (n + 7) & ~7;
+    }
+}
@@ -0,0 +1,175 @@
+package com.producerconsumer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Round-trip latency between two JVMs on this host: shared-memory rings vs loopback TCP
+// The parent sends a message, a child JVM echoes it back, and the parent times the round trip
+//
+// Usage: java -cp target/classes com.producerconsumer.SharedMemoryQueueBenchmark [roundTrips] [payloadBytes] [spin|blocking]
+public class SharedMemoryQueueBenchmark {
+    private static final int RING_CAPACITY = 1024;
+    private static final byte[] STOP = new byte[0];
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("echo-shm")) {
+            echoSharedMemory(Paths.get(args[1]), Paths.get(args[2]), SharedMemoryQueue.WaitMode.valueOf(args[3]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("echo-tcp")) {
+            echoTcp(Integer.parseInt(args[1]));
+            return;
+        }
+
+        int roundTrips = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int payloadBytes = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        SharedMemoryQueue.WaitMode waitMode = args.length > 2 && args[2].equalsIgnoreCase("blocking")
+                ? SharedMemoryQueue.WaitMode.BLOCKING : SharedMemoryQueue.WaitMode.SPIN;
+        int warmup = Math.max(10_000, roundTrips / 10);
+
+        System.out.printf("Round trips: %,d (+%,d warmup), payload: %d bytes, ring wait mode: %s%n%n",
+                roundTrips, warmup, payloadBytes, waitMode);
+
+        long[] shm = benchmarkSharedMemory(roundTrips, warmup, payloadBytes, waitMode);
+        long[] tcp = benchmarkTcp(roundTrips, warmup, payloadBytes);
+
+        System.out.printf("%-16s %10s %10s %10s %10s %10s%n", "transport", "mean(us)", "p50(us)", "p99(us)", "p99.9(us)", "max(us)");
+        printRow("shared-memory", shm);
+        printRow("loopback-tcp", tcp);
+    }
+
+    private static long[] benchmarkSharedMemory(int roundTrips, int warmup, int payloadBytes,
+                                                SharedMemoryQueue.WaitMode waitMode) throws Exception {
+        Path dir = Files.createTempDirectory("shm-bench");
+        Path requests = dir.resolve("requests.ring");
+        Path responses = dir.resolve("responses.ring");
+
+        try (SharedMemoryQueue<byte[]> out = SharedMemoryQueue.forBytes(requests, RING_CAPACITY, payloadBytes, waitMode);
+             SharedMemoryQueue<byte[]> in = SharedMemoryQueue.forBytes(responses, RING_CAPACITY, payloadBytes, waitMode)) {
+            Process child = startChild("echo-shm", requests.toString(), responses.toString(), waitMode.name());
+
+            byte[] payload = new byte[payloadBytes];
+            long[] samples = new long[roundTrips];
+            for (int i = 0; i < warmup + roundTrips; i++) {
+                long start = System.nanoTime();
+                out.enqueue(payload);
+                in.dequeue();
+                long elapsed = System.nanoTime() - start;
+                if (i >= warmup) {
+                    samples[i - warmup] = elapsed;
+                }
+            }
+
+            out.enqueue(STOP);
+            child.waitFor(10, TimeUnit.SECONDS);
+            return samples;
+        } finally {
+            Files.deleteIfExists(requests);
+            Files.deleteIfExists(responses);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static long[] benchmarkTcp(int roundTrips, int warmup, int payloadBytes) throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Process child = startChild("echo-tcp", String.valueOf(server.getLocalPort()));
+            long[] samples = new long[roundTrips];
+
+            try (Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+                byte[] payload = new byte[payloadBytes];
+                for (int i = 0; i < warmup + roundTrips; i++) {
+                    long start = System.nanoTime();
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                    out.flush();
+                    in.readFully(payload, 0, in.readInt());
+                    long elapsed = System.nanoTime() - start;
+                    if (i >= warmup) {
+                        samples[i - warmup] = elapsed;
+                    }
+                }
+
+                out.writeInt(-1);
+                out.flush();
+            }
+            child.waitFor(10, TimeUnit.SECONDS);
+            return samples;
+        }
+    }
+
+    private static void echoSharedMemory(Path requests, Path responses, SharedMemoryQueue.WaitMode waitMode) throws Exception {
+        try (SharedMemoryQueue<byte[]> in = SharedMemoryQueue.forBytes(requests, RING_CAPACITY, 1, waitMode);
+             SharedMemoryQueue<byte[]> out = SharedMemoryQueue.forBytes(responses, RING_CAPACITY, 1, waitMode)) {
+            while (true) {
+                byte[] message = in.dequeue();
+                if (message.length == 0) {
+                    break;
+                }
+                out.enqueue(message);
+            }
+        }
+    }
+
+    private static void echoTcp(int port) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            byte[] buffer = new byte[64 * 1024];
+            while (true) {
+                int length = in.readInt();
+                if (length < 0) {
+                    break;
+                }
+                in.readFully(buffer, 0, length);
+                out.writeInt(length);
+                out.write(buffer, 0, length);
+                out.flush();
+            }
+        }
+    }
+
+    // Second JVM on the same classpath, its output goes straight to this console
+    private static Process startChild(String... args) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String[] command = new String[args.length + 4];
+        command[0] = java;
+        command[1] = "-cp";
+        command[2] = System.getProperty("java.class.path");
+        command[3] = SharedMemoryQueueBenchmark.class.getName();
+        System.arraycopy(args, 0, command, 4, args.length);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    private static void printRow(String name, long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0);
+        System.out.printf("%-16s %10.2f %10.2f %10.2f %10.2f %10.2f%n", name,
+                mean / 1000.0,
+                percentile(sorted, 0.50) / 1000.0,
+                percentile(sorted, 0.99) / 1000.0,
+                percentile(sorted, 0.999) / 1000.0,
+                sorted[sorted.length - 1] / 1000.0);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,132 @@
+package com.producerconsumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters for a single pipeline stage, updated by its workers while the pipeline runs
+public class StageMetrics {
+    private final String name;
+    private final int workers;
+    private final int queueCapacity;
+
+    private final LongAdder itemsIn = new LongAdder();
+    private final LongAdder itemsOut = new LongAdder();
+    private final LongAdder itemsDropped = new LongAdder();
+    private final LongAdder itemsFailed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final LongAdder depthSum = new LongAdder();
+    private final LongAdder depthSamples = new LongAdder();
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    StageMetrics(String name, int workers, int queueCapacity) {
+        this.name = name;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+    }
+
+    void markStarted() {
+        startNanos = System.nanoTime();
+    }
+
+    void markFinished() {
+        endNanos = System.nanoTime();
+    }
+
+    // Depth is sampled by the worker right after it takes an item off the stage queue
+    void recordTake(int depth) {
+        itemsIn.increment();
+        depthSum.add(depth);
+        depthSamples.increment();
+        maxDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    void recordProcessed(long nanos) {
+        busyNanos.add(nanos);
+    }
+
+    void recordEmitted(long blockedFor) {
+        itemsOut.increment();
+        blockedNanos.add(blockedFor);
+    }
+
+    void recordDropped() {
+        itemsDropped.increment();
+    }
+
+    void recordFailed() {
+        itemsFailed.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public long getItemsIn() {
+        return itemsIn.sum();
+    }
+
+    public long getItemsOut() {
+        return itemsOut.sum();
+    }
+
+    public long getItemsDropped() {
+        return itemsDropped.sum();
+    }
+
+    public long getItemsFailed() {
+        return itemsFailed.sum();
+    }
+
+    public long getMaxQueueDepth() {
+        return maxDepth.get();
+    }
+
+    public double getAverageQueueDepth() {
+        long samples = depthSamples.sum();
+        return samples == 0 ? 0.0 : (double) depthSum.sum() / samples;
+    }
+
+    // Wall time since the stage started, up to now if it is still running
+    public long getElapsedNanos() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return end - startNanos;
+    }
+
+    public double getThroughputPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed == 0 ? 0.0 : getItemsIn() * 1_000_000_000.0 / elapsed;
+    }
+
+    // Share of the workers' time spent inside the stage function (1.0 means every worker was always busy)
+    public double getUtilization() {
+        long elapsed = getElapsedNanos();
+        return elapsed == 0 ? 0.0 : (double) busyNanos.sum() / ((double) elapsed * workers);
+    }
+
+    // Time workers spent waiting on a full downstream queue
+    public long getBlockedNanos() {
+        return blockedNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-12s workers=%-2d in=%-8d out=%-8d dropped=%-6d failed=%-6d %,.0f items/s  util=%5.1f%%  depth avg=%.1f max=%d/%d",
+                name, workers, getItemsIn(), getItemsOut(), getItemsDropped(), getItemsFailed(),
+                getThroughputPerSecond(), getUtilization() * 100, getAverageQueueDepth(), getMaxQueueDepth(), queueCapacity);
+    }
+}
@@ -0,0 +1,235 @@
+package com.producerconsumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Pipeline Tests")
+class PipelineTest {
+
+    @Test
+    @DisplayName("Should keep submission order across parallel stages when ordered")
+    void testOrderedOutput() throws InterruptedException {
+        List<Integer> results = new ArrayList<>();
+
+        Pipeline<String, Integer> pipeline = Pipeline.<String>builder()
+                .stage("parse", Integer::parseInt, 4, 8)
+                .stage("square", (Integer x) -> {
+                    // Uneven work so workers finish out of order
+                    sleepQuietly(x % 3);
+                    return x * x;
+                }, 3, 4)
+                .ordered(true)
+                .build(results::add);
+
+        pipeline.start();
+        for (int i = 0; i < 50; i++) {
+            pipeline.submit(String.valueOf(i));
+        }
+        pipeline.close();
+        assertTrue(pipeline.awaitCompletion(10, TimeUnit.SECONDS));
+
+        assertEquals(50, results.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i * i, results.get(i));
+        }
+    }
+
+    @Test
+    @DisplayName("Should deliver every item when unordered")
+    void testUnorderedOutput() throws InterruptedException {
+        List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+
+        Pipeline<Integer, Integer> pipeline = Pipeline.<Integer>builder()
+                .stage("double", (Integer x) -> x * 2, 2, 3, c -> new DynamicBlockingQueue<>(c, false))
+                .build(results::add);
+
+        pipeline.start();
+        for (int i = 1; i <= 100; i++) {
+            pipeline.submit(i);
+        }
+        pipeline.close();
+        assertTrue(pipeline.awaitCompletion(10, TimeUnit.SECONDS));
+
+        assertEquals(100, results.size());
+        assertEquals(10100, results.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    @DisplayName("Should drop null results and failed items without stalling ordered output")
+    void testDroppedAndFailedItems() throws InterruptedException {
+        List<Integer> results = new ArrayList<>();
+
+        Pipeline<Integer, Integer> pipeline = Pipeline.<Integer>builder()
+                .stage("filter", (Integer x) -> x % 2 == 0 ? x : null, 2)
+                .stage("fail", (Integer x) -> {
+                    if (x == 4) {
+                        throw new IllegalStateException("boom");
+                    }
+                    return x;
+                }, 2)
+                .ordered(true)
+                .build(results::add);
+
+        pipeline.start();
+        for (int i = 0; i < 10; i++) {
+            pipeline.submit(i);
+        }
+        pipeline.close();
+        assertTrue(pipeline.awaitCompletion(10, TimeUnit.SECONDS));
+
+        assertEquals(List.of(0, 2, 6, 8), results);
+        List<StageMetrics> metrics = pipeline.getStageMetrics();
+        assertEquals(5, metrics.get(0).getItemsDropped());
+        assertEquals(1, metrics.get(1).getItemsFailed());
+    }
+
+    @Test
+    @DisplayName("Should drain in-flight items on close")
+    void testCloseDrainsInFlightItems() throws InterruptedException {
+        List<String> results = Collections.synchronizedList(new ArrayList<>());
+
+        Pipeline<String, String> pipeline = Pipeline.<String>builder()
+                .stage("slow", (String s) -> {
+                    sleepQuietly(5);
+                    return s.toUpperCase();
+                }, 2, 20)
+                .build(results::add);
+
+        pipeline.start();
+        for (int i = 0; i < 20; i++) {
+            pipeline.submit("item" + i);
+        }
+        // Close straight away while most items are still queued
+        pipeline.close();
+        assertThrows(IllegalStateException.class, () -> pipeline.submit("late"));
+        assertTrue(pipeline.awaitCompletion(10, TimeUnit.SECONDS));
+
+        assertEquals(20, results.size());
+    }
+
+    @Test
+    @DisplayName("Should report the slowest stage as the bottleneck")
+    void testBottleneckReporting() throws InterruptedException {
+        Pipeline<Integer, Integer> pipeline = Pipeline.<Integer>builder()
+                .stage("fast", (Integer x) -> x, 1, 2)
+                .stage("slow", (Integer x) -> {
+                    sleepQuietly(10);
+                    return x;
+                }, 1, 2)
+                .build(x -> { });
+
+        pipeline.start();
+        for (int i = 0; i < 20; i++) {
+            pipeline.submit(i);
+        }
+        pipeline.close();
+        assertTrue(pipeline.awaitCompletion(10, TimeUnit.SECONDS));
+
+        StageMetrics fast = pipeline.getStageMetrics().get(0);
+        assertEquals(20, fast.getItemsIn());
+        assertEquals(20, fast.getItemsOut());
+        // Fast stage spends its time blocked on the full queue in front of the slow stage
+        assertTrue(fast.getBlockedNanos() > 0);
+        assertEquals("slow", pipeline.getBottleneck().getName());
+        assertTrue(pipeline.report().contains("Bottleneck stage: slow"));
+    }
+
+    @Test
+    @DisplayName("Should deliver every item whose submit returned while close runs concurrently")
+    void testConcurrentSubmitAndClose() throws InterruptedException {
+        for (int trial = 0; trial < 100; trial++) {
+            boolean ordered = trial % 2 == 0;
+            AtomicInteger delivered = new AtomicInteger();
+            AtomicInteger accepted = new AtomicInteger();
+            Pipeline<Integer, Integer> pipeline = Pipeline.<Integer>builder()
+                    .stage("pass", (Integer x) -> x, 2, 4)
+                    .ordered(ordered)
+                    .build(x -> delivered.incrementAndGet());
+            pipeline.start();
+
+            List<Thread> submitters = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                submitters.add(new Thread(() -> {
+                    try {
+                        for (int i = 0; ; i++) {
+                            pipeline.submit(i);
+                            accepted.incrementAndGet();
+                        }
+                    } catch (IllegalStateException | InterruptedException e) {
+                        // Closed
+                    }
+                }));
+            }
+            submitters.forEach(Thread::start);
+            sleepQuietly(1);
+            pipeline.close();
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+
+            assertTrue(pipeline.awaitCompletion(10, TimeUnit.SECONDS), "trial " + trial);
+            assertEquals(accepted.get(), delivered.get(), "trial " + trial);
+        }
+    }
+
+    @Test
+    @DisplayName("Should stop accepting items while a slow head item holds up ordered output")
+    void testOrderedInFlightIsBounded() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+        Pipeline<Integer, Integer> pipeline = Pipeline.<Integer>builder()
+                .stage("work", (Integer x) -> {
+                    if (x == 0) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return x;
+                }, 2, 4)
+                .ordered(true)
+                .build(results::add);
+        pipeline.start();
+
+        AtomicInteger accepted = new AtomicInteger();
+        Thread submitter = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100; i++) {
+                    pipeline.submit(i);
+                    accepted.incrementAndGet();
+                }
+                pipeline.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        sleepQuietly(200);
+
+        // Queue capacity 4 plus 2 workers, the rest waits in submit instead of the reorder buffer
+        assertEquals(6, accepted.get());
+        release.countDown();
+        submitter.join(10_000);
+        assertTrue(pipeline.awaitCompletion(10, TimeUnit.SECONDS));
+        assertEquals(100, results.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, results.get(i));
+        }
+    }
+
+    private static void sleepQuietly(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.producerconsumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ScalingSweep Tests")
+class ScalingSweepTest {
+
+    @Test
+    @DisplayName("Should move every message through each queue implementation")
+    void testRunCellForEveryQueue() throws Exception {
+        for (ScalingSweep.QueueKind kind : ScalingSweep.QueueKind.values()) {
+            ScalingSweep.Result result = ScalingSweep.runCell(kind, 2, 3, 4, 32, 600);
+
+            assertTrue(result.completed(), kind + " cell did not finish");
+            assertEquals(600, result.sortedLatencies().length);
+            assertTrue(result.throughput() > 0);
+            assertTrue(result.percentileMicros(0.5) <= result.percentileMicros(0.99));
+        }
+    }
+
+    @Test
+    @DisplayName("Should record the capacity and payload the queue actually ran with")
+    void testResultRecordsEffectiveParameters() throws Exception {
+        ScalingSweep.Result shared = ScalingSweep.runCell(ScalingSweep.QueueKind.SHARED, 1, 1, 1, 4, 50);
+        ScalingSweep.Result custom = ScalingSweep.runCell(ScalingSweep.QueueKind.CUSTOM, 1, 1, 1, 16, 50);
+
+        assertEquals(2, shared.capacity());
+        assertEquals(8, shared.payloadBytes());
+        assertEquals(1, custom.capacity());
+        assertEquals(16, custom.payloadBytes());
+    }
+
+    @Test
+    @DisplayName("Should write one CSV row per grid cell")
+    void testSweepWritesCsv() throws Exception {
+        Path out = Files.createTempFile("sweep", ".csv");
+        try {
+            List<ScalingSweep.Result> results = ScalingSweep.sweep(
+                    List.of(ScalingSweep.QueueKind.CUSTOM, ScalingSweep.QueueKind.DYNAMIC),
+                    new int[]{1, 2}, new int[]{1}, new int[]{1, 8}, new int[]{16}, 200, out);
+
+            List<String> lines = Files.readAllLines(out);
+            assertEquals(8, results.size());
+            assertEquals(9, lines.size());
+            assertEquals(ScalingSweep.CSV_HEADER, lines.get(0));
+            assertTrue(lines.get(1).startsWith("custom,1,1,1,16,200,"));
+            assertTrue(lines.get(8).endsWith(",ok"));
+        } finally {
+            Files.deleteIfExists(out);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.producerconsumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+@DisplayName("SharedMemoryQueue Tests")
+class SharedMemoryQueueTest {
+
+    private Path file;
+    private SharedMemoryQueue<String> queue;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = Files.createTempFile("shared-queue", ".ring");
+        queue = SharedMemoryQueue.forStrings(file, 5);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        queue.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    @DisplayName("Should create ring with correct capacity")
+    void testQueueCreation() {
+        assertEquals(5, queue.getCapacity());
+        assertEquals(0, queue.getSize());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should maintain FIFO order across ring wrap-around")
+    void testFIFOOrderAcrossWrap() throws InterruptedException {
+        for (int lap = 0; lap < 4; lap++) {
+            for (int i = 0; i < 5; i++) {
+                queue.enqueue("Lap" + lap + "-Item" + i);
+            }
+            assertTrue(queue.isFull());
+            for (int i = 0; i < 5; i++) {
+                assertEquals("Lap" + lap + "-Item" + i, queue.dequeue());
+            }
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Should round a single-slot ring up to two slots")
+    void testMinimumCapacity() throws Exception {
+        Path single = Files.createTempFile("shared-queue-single", ".ring");
+        try (SharedMemoryQueue<String> small = SharedMemoryQueue.forStrings(single, 1)) {
+            assertEquals(2, small.getCapacity());
+            small.enqueue("First");
+            small.enqueue("Second");
+            assertTrue(small.isFull());
+            assertEquals("First", small.dequeue());
+            assertEquals("Second", small.dequeue());
+        } finally {
+            Files.deleteIfExists(single);
+        }
+    }
+
+    @Test
+    @DisplayName("Should reject null and oversized messages")
+    void testRejectsInvalidMessages() {
+        assertThrows(IllegalArgumentException.class, () -> queue.enqueue(null));
+        assertThrows(IllegalArgumentException.class, () -> queue.enqueue("x".repeat(queue.getMaxMessageSize() + 1)));
+    }
+
+    @Test
+    @DisplayName("Should close the file when the ring is too large to map")
+    void testClosesFileWhenMappingFails() throws IOException {
+        Path descriptors = Path.of("/proc/self/fd");
+        assumeTrue(Files.isDirectory(descriptors));
+        Path large = Files.createTempFile("shared-queue-large", ".ring");
+        try {
+            long open = countEntries(descriptors);
+            for (int i = 0; i < 20; i++) {
+                assertThrows(IllegalArgumentException.class,
+                        () -> SharedMemoryQueue.forBytes(large, Integer.MAX_VALUE, 1024, SharedMemoryQueue.WaitMode.SPIN));
+            }
+            assertTrue(countEntries(descriptors) < open + 20);
+        } finally {
+            Files.deleteIfExists(large);
+        }
+    }
+
+    private static long countEntries(Path directory) throws IOException {
+        try (var entries = Files.list(directory)) {
+            return entries.count();
+        }
+    }
+
+    @Test
+    @DisplayName("Should see messages through a second mapping of the same file")
+    void testSecondMappingSharesRing() throws Exception {
+        // A second instance over the same file stands in for another process
+        try (SharedMemoryQueue<String> other = SharedMemoryQueue.forStrings(file, 99)) {
+            // Attaching keeps the capacity the ring was created with
+            assertEquals(5, other.getCapacity());
+
+            queue.enqueue("Hello");
+            queue.enqueue("World");
+            assertEquals(2, other.getSize());
+            assertEquals("Hello", other.dequeue());
+            assertEquals("World", other.dequeue());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Should block producer when ring is full")
+    void testProducerBlocking() throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            queue.enqueue("Item" + i);
+        }
+
+        Thread producer = new Thread(() -> {
+            try {
+                queue.enqueue("BlockedItem");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        producer.start();
+        Thread.sleep(200);
+        assertTrue(producer.isAlive());
+
+        assertEquals("Item0", queue.dequeue());
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+        assertEquals(5, queue.getSize());
+    }
+
+    @Test
+    @DisplayName("Should wake consumer on another mapping when an item arrives")
+    void testConsumerBlocking() throws Exception {
+        try (SharedMemoryQueue<String> other = SharedMemoryQueue.forStrings(file, 5)) {
+            String[] received = new String[1];
+            Thread consumer = new Thread(() -> {
+                try {
+                    received[0] = other.dequeue();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            consumer.start();
+            Thread.sleep(200);
+            assertTrue(consumer.isAlive());
+
+            queue.enqueue("UnblockItem");
+            consumer.join(1000);
+            assertFalse(consumer.isAlive());
+            assertEquals("UnblockItem", received[0]);
+        }
+    }
+
+    @Test
+    @DisplayName("Should deliver every item exactly once with producers and consumers on separate mappings")
+    void testMultipleProducersAndConsumers() throws Exception {
+        try (SharedMemoryQueue<String> producerSide = SharedMemoryQueue.forStrings(file, 5);
+             SharedMemoryQueue<String> consumerSide = SharedMemoryQueue.forStrings(file, 5)) {
+            Set<String> received = Collections.synchronizedSet(new HashSet<>());
+
+            Thread[] threads = new Thread[8];
+            for (int i = 0; i < 4; i++) {
+                String name = "P" + (i + 1);
+                threads[i] = new Thread(() -> {
+                    try {
+                        for (int n = 0; n < 250; n++) {
+                            producerSide.enqueue(name + "-" + n);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            for (int i = 0; i < 4; i++) {
+                threads[4 + i] = new Thread(() -> {
+                    try {
+                        for (int n = 0; n < 250; n++) {
+                            received.add(consumerSide.dequeue());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            for (Thread t : threads) t.start();
+            for (Thread t : threads) {
+                t.join(10000);
+                assertFalse(t.isAlive(), "Thread deadlock detected!");
+            }
+
+            assertEquals(1000, received.size());
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Should work with the existing Producer and Consumer")
+    void testWithProducerConsumer() throws InterruptedException {
+        Thread p = new Thread(new Producer(queue, 20, 0, "P1"));
+        Thread c = new Thread(new Consumer(queue, 20, 0, "C1"));
+
+        p.start();
+        c.start();
+        p.join(5000);
+        c.join(5000);
+
+        assertTrue(queue.isEmpty());
+    }
+}
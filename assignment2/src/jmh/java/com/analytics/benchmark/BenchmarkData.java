@@ -0,0 +1,30 @@
+package com.analytics.benchmark;
+
+import com.analytics.util.SalesDataGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+// Generated input shared by the benchmarks, written once per size into the temp directory and reused by later forks
+// and runs. Always seed 42 with the default dirty-row ratios, so every run measures the same bytes
+final class BenchmarkData {
+
+    static final long SEED = 42;
+
+    private BenchmarkData() {
+    }
+
+    static Path csv(long rows) throws IOException {
+        Path csv = Paths.get(System.getProperty("java.io.tmpdir"), "analytics-bench-" + rows + "-" + SEED + ".csv");
+        if (!Files.exists(csv)) {
+            // Written next to it and moved into place, so a run that was stopped halfway doesn't leave a short file
+            Path partial = Files.createTempFile(csv.getParent(), "analytics-bench", ".partial");
+            new SalesDataGenerator(SEED, SalesDataGenerator.DirtyRatios.DEFAULT).write(partial, rows);
+            Files.move(partial, csv, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return csv;
+    }
+}
@@ -0,0 +1,89 @@
+package com.analytics.benchmark;
+
+import com.analytics.exception.CsvParsingException;
+import com.analytics.exception.DataValidationException;
+import com.analytics.model.GlobalStats;
+import com.analytics.model.RawSale;
+import com.analytics.service.DataIngestionService;
+import com.analytics.service.ImputationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The two halves of the two-pass mode: the stats pass over a whole file, and imputeAndMap per row
+// imputeAndMap runs with cleaning logs off, so it measures the imputation and not the log queue
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImputationBenchmark {
+
+    private static final int ROWS_PER_CALL = 1 << 16;
+
+    @Param("1000000")
+    public long rows;
+
+    private final ImputationService imputer = new ImputationService();
+    private Path csv;
+    private GlobalStats stats;
+    // Rows that parse and have a valid ID and date, so imputeAndMap never throws on them
+    private RawSale[] sales;
+
+    @Setup
+    public void setUp() throws IOException {
+        csv = BenchmarkData.csv(rows);
+        stats = imputer.calculateStats(csv);
+
+        DataIngestionService parser = new DataIngestionService();
+        List<RawSale> usable = new ArrayList<>();
+        List<String> lines = Files.readAllLines(BenchmarkData.csv(ROWS_PER_CALL));
+        for (String line : lines.subList(1, lines.size())) {
+            try {
+                RawSale raw = parser.parseLine(line);
+                imputer.imputeAndMap(raw, stats, false);
+                usable.add(raw);
+            } catch (CsvParsingException | DataValidationException e) {
+                // left out
+            }
+        }
+        // The few rejected rows are made up for by starting over from the first usable one
+        sales = new RawSale[ROWS_PER_CALL];
+        for (int i = 0; i < sales.length; i++) {
+            sales[i] = usable.get(i % usable.size());
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public GlobalStats calculateStats() throws IOException {
+        return imputer.calculateStats(csv);
+    }
+
+    // Per row
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(ROWS_PER_CALL)
+    public void imputeAndMap(Blackhole blackhole) {
+        for (RawSale raw : sales) {
+            blackhole.consume(imputer.imputeAndMap(raw, stats, false));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.analytics.benchmark;
+
+import com.analytics.exception.CsvParsingException;
+import com.analytics.service.DataIngestionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// DataIngestionService.parseLine per line, over generated lines with the usual share of dirty ones
+// Empty lines and lines with a column missing throw, as they do during ingestion
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseLineBenchmark {
+
+    private static final int LINES = 1 << 16;
+
+    private final DataIngestionService parser = new DataIngestionService();
+    private String[] lines;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> all = Files.readAllLines(BenchmarkData.csv(LINES));
+        lines = all.subList(1, all.size()).toArray(String[]::new);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void parseLine(Blackhole blackhole) {
+        for (String line : lines) {
+            try {
+                blackhole.consume(parser.parseLine(line));
+            } catch (CsvParsingException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.analytics.benchmark;
+
+import com.analytics.service.AnalyticsService;
+import com.analytics.service.IngestionMode;
+import com.analytics.util.AnalyticsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// The whole processSalesData run per ingestion mode: reading, imputation, both logs and the printed report
+// The report goes to a discarded stream. The logs still go to DataIngestionErrors.log and DataCleaning.log in the
+// working directory and are flushed in every call, since writing them is part of the run
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProcessSalesDataBenchmark {
+
+    @Param({"TWO_PASS", "SINGLE_PASS", "MAPPED", "PARALLEL", "PIPELINED"})
+    public IngestionMode mode;
+
+    @Param("1000000")
+    public long rows;
+
+    private final AnalyticsService service = new AnalyticsService();
+    private Path csv;
+    private PrintStream stdout;
+
+    @Setup
+    public void setUp() throws IOException {
+        csv = BenchmarkData.csv(rows);
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void processSalesData() throws IOException {
+        service.processSalesData(csv, mode);
+        AnalyticsLogger.flush();
+    }
+}
@@ -0,0 +1,100 @@
+package com.analytics.benchmark;
+
+import com.analytics.ReferenceReports;
+import com.analytics.model.ColumnarSalesStore;
+import com.analytics.model.Sale;
+import com.analytics.model.SalesReport;
+import com.analytics.service.AnalyticsService;
+import com.analytics.service.IngestionMode;
+import com.analytics.service.SalesAggregator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// The report aggregations over cleaned rows already in memory: each of the eight reports as its own groupingBy
+// pipeline, all eight that way, and all eight in SalesAggregator's single fused pass
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReportBenchmark {
+
+    @Param("1000000")
+    public long rows;
+
+    // As the modes leave them
+    private ColumnarSalesStore columns;
+    // As the original pipelines saw them
+    private List<Sale> records;
+
+    @Setup
+    public void setUp() throws IOException {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            columns = new AnalyticsService().loadSales(BenchmarkData.csv(rows), IngestionMode.MAPPED);
+        } finally {
+            System.setOut(stdout);
+        }
+        records = new ArrayList<>(columns);
+    }
+
+    @State(Scope.Benchmark)
+    public static class OneReport {
+        @Param({"revenueByRegion", "monthlyRevenue", "unitsByProduct", "paymentMethodCounts", "avgUnitPriceByCategory",
+                "revenueByRegionAndCategory", "valueBuckets", "avgOrderValueByDay"})
+        public String report;
+    }
+
+    @Benchmark
+    public Object streamPipeline(OneReport one) {
+        return switch (one.report) {
+            case "revenueByRegion" -> records.stream()
+                    .collect(Collectors.groupingBy(Sale::region, Collectors.summingDouble(Sale::totalAmount)));
+            case "monthlyRevenue" -> records.stream().collect(Collectors.groupingBy(
+                    s -> SalesReport.monthKey(s.date().getYear(), s.date().getMonthValue()),
+                    Collectors.summingDouble(Sale::totalAmount)));
+            case "unitsByProduct" -> records.stream()
+                    .collect(Collectors.groupingBy(Sale::product, Collectors.summingInt(Sale::quantity)));
+            case "paymentMethodCounts" -> records.stream()
+                    .collect(Collectors.groupingBy(Sale::paymentMethod, Collectors.counting()));
+            case "avgUnitPriceByCategory" -> records.stream()
+                    .collect(Collectors.groupingBy(Sale::category, Collectors.averagingDouble(Sale::unitPrice)));
+            case "revenueByRegionAndCategory" -> records.stream().collect(Collectors.groupingBy(Sale::region,
+                    Collectors.groupingBy(Sale::category, Collectors.summingDouble(Sale::totalAmount))));
+            case "valueBuckets" -> records.stream()
+                    .collect(Collectors.groupingBy(s -> SalesReport.valueBucket(s.totalAmount()), Collectors.counting()));
+            case "avgOrderValueByDay" -> records.stream()
+                    .collect(Collectors.groupingBy(s -> s.date().getDayOfWeek(), Collectors.averagingDouble(Sale::totalAmount)));
+            default -> throw new IllegalArgumentException("No report called " + one.report);
+        };
+    }
+
+    @Benchmark
+    public SalesReport allWithStreams() {
+        return ReferenceReports.aggregateWithStreams(records);
+    }
+
+    @Benchmark
+    public SalesReport allFused() {
+        return SalesAggregator.aggregate(columns);
+    }
+}
@@ -1,18 +1,227 @@
 package com.analytics;
 
+import com.analytics.model.MemoryBudget;
+import com.analytics.model.ReportSection;
+import com.analytics.model.SalesQuery;
+import com.analytics.server.AnalyticsServer;
 import com.analytics.service.AnalyticsService;
+import com.analytics.service.IngestionMode;
+import com.analytics.service.RollupCache;
 import com.analytics.exception.SalesAnalyticsException;
+import com.analytics.util.AnalyticsLogger;
+import com.analytics.util.CsvFiles;
+import com.analytics.util.OptionNames;
+import com.analytics.util.PipelineMetrics;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class Main {
+    private static final List<String> QUERY_OPTIONS = List.of(
+            "--group-by=", "--measures=", "--from=", "--to=", "--regions=", "--categories=", "--payment-methods=");
+
+    // The options that pick or change what a run does, named as in the error message
+    private enum Option {
+        SERVE("--serve"), WATCH("--watch"), QUERY("queries"), APPROXIMATE("--approximate"), ROLLUPS("--rollups"),
+        COLUMNS("--columns"), MEMORY_BUDGET("--memory-budget"), SEVERAL_FILES("several input files"),
+        COMPRESSED("compressed input"), MODE("--mode"), REPORTS("--reports"), EXACT_MONEY("--money=exact");
+
+        private final String label;
+
+        Option(String label) {
+            this.label = label;
+        }
+    }
+
+    // Which options work together, every pair not listed here is rejected because the run would ignore one of them
+    private static final Map<Option, Set<Option>> COMPATIBLE = new EnumMap<>(Option.class);
+
+    static {
+        for (Option option : Option.values()) {
+            COMPATIBLE.put(option, EnumSet.noneOf(Option.class));
+        }
+        // Queries take a single uncompressed CSV, always sum in doubles and may spill their groups
+        compatible(Option.QUERY, Option.MEMORY_BUDGET);
+        // The column file is written from any ingestion mode. Compressed files have only one reader, so no --mode
+        compatible(Option.COLUMNS, Option.MODE, Option.COMPRESSED, Option.EXACT_MONEY);
+        // The streamed and multi-file reports scan every file the same way, so --mode doesn't apply to them
+        compatible(Option.MEMORY_BUDGET, Option.SEVERAL_FILES, Option.COMPRESSED, Option.REPORTS, Option.EXACT_MONEY);
+        compatible(Option.SEVERAL_FILES, Option.COMPRESSED, Option.REPORTS, Option.EXACT_MONEY);
+        compatible(Option.COMPRESSED, Option.REPORTS, Option.EXACT_MONEY);
+        compatible(Option.MODE, Option.REPORTS, Option.EXACT_MONEY);
+        compatible(Option.REPORTS, Option.EXACT_MONEY);
+        // The sketches keep no sums, every other run that reports revenue can sum it in paise
+        compatible(Option.EXACT_MONEY, Option.SERVE, Option.WATCH, Option.ROLLUPS);
+    }
+
+    private static void compatible(Option option, Option... others) {
+        for (Option other : others) {
+            COMPATIBLE.get(option).add(other);
+            COMPATIBLE.get(other).add(option);
+        }
+    }
+
     public static void main(String[] args) {
         System.out.println("Sales Analytics Service on CSV --- ");
 
         Path csvPath = Paths.get("src/main/resources/sales_data.csv");
+        String input = null;
+        IngestionMode mode = IngestionMode.TWO_PASS;
+
+        Duration watchInterval = null;
+        Path columnFile = null;
+        Path rollupFile = null;
+        SalesQuery query = null;
+        boolean approximate = false;
+        boolean exactMoney = false;
+        String memoryBudget = null;
+        Integer servePort = null;
+        Path spillDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+        boolean spillDirectoryGiven = false;
+        Set<Option> given = EnumSet.noneOf(Option.class);
+        Set<ReportSection> sections = null;
+
+        // Optional: --input=FILE|DIR|GLOB reads another CSV, every *.csv in a directory or the files a glob matches
+        //           such as 'exports/sales-*.csv'; several files are scanned in parallel and give one report.
+        //           Files ending in .gz are read compressed
+        // Optional: --mode=two_pass|single_pass|mapped|parallel|pipelined
+        // Optional: --columns=FILE keeps the cleaned rows in a binary column file and reuses it while the CSV is unchanged
+        // Optional: --rollups=FILE keeps the stats and aggregates between runs and only reads rows appended since the last one
+        // Optional: ad-hoc query instead of the report, any of --group-by=region,month --measures=sum:revenue,count
+        //           --from=2023-01-01 --to=2023-12-31 --regions=North,South --categories=Books --payment-methods=Cash
+        // Optional: --reports=revenueByRegion,monthlyRevenue prints only those report sections and skips decoding the
+        //           columns none of them read
+        // Optional: --approximate prints sketch estimates (top products, distinct counts, value quantiles) in fixed memory
+        // Optional: --money=exact sums revenue in whole paise, exact and independent of row order (default --money=double)
+        // Optional: --memory-budget=SIZE such as 64m streams the report without loading the rows and spills query groups
+        //           and rows waiting for imputation to --spill-dir=DIR (the temp directory by default) past SIZE
+        // Optional: --watch[=seconds] keeps following the file as rows are appended, 5 seconds between refreshes by default
+        // Optional: --serve[=port] keeps the file loaded and answers /report, /report/<name>, /stats and /query?group-by=...
+        //           as JSON on localhost (port 8080 by default), reading appended rows every second
+        // Optional: --metrics counts bytes, rows, errors and imputations and times each stage, shown over JMX while
+        //           running and printed at the end (same as -Danalytics.metrics=true)
+        for (String arg : args) {
+            try {
+                if (arg.startsWith("--input=")) {
+                    input = arg.substring("--input=".length());
+                } else if (arg.startsWith("--mode=")) {
+                    mode = OptionNames.parse(IngestionMode.class, arg.substring("--mode=".length()), "mode");
+                    given.add(Option.MODE);
+                } else if (arg.startsWith("--columns=")) {
+                    columnFile = Paths.get(arg.substring("--columns=".length()));
+                    given.add(Option.COLUMNS);
+                } else if (arg.startsWith("--rollups=")) {
+                    rollupFile = Paths.get(arg.substring("--rollups=".length()));
+                    given.add(Option.ROLLUPS);
+                } else if (QUERY_OPTIONS.stream().anyMatch(arg::startsWith)) {
+                    query = (query == null ? SalesQuery.all() : query)
+                            .withOption(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+                    given.add(Option.QUERY);
+                } else if (arg.startsWith("--reports=")) {
+                    sections = EnumSet.noneOf(ReportSection.class);
+                    for (String name : arg.substring("--reports=".length()).split(",")) {
+                        sections.add(ReportSection.byComponentName(name));
+                    }
+                    given.add(Option.REPORTS);
+                } else if (arg.equals("--approximate")) {
+                    approximate = true;
+                    given.add(Option.APPROXIMATE);
+                } else if (arg.equals("--money=exact") || arg.equals("--money=double")) {
+                    exactMoney = arg.equals("--money=exact");
+                    if (exactMoney) {
+                        given.add(Option.EXACT_MONEY);
+                    } else {
+                        given.remove(Option.EXACT_MONEY);
+                    }
+                } else if (arg.startsWith("--memory-budget=")) {
+                    memoryBudget = arg.substring("--memory-budget=".length());
+                    given.add(Option.MEMORY_BUDGET);
+                } else if (arg.startsWith("--spill-dir=")) {
+                    spillDirectory = Paths.get(arg.substring("--spill-dir=".length()));
+                    spillDirectoryGiven = true;
+                } else if (arg.equals("--serve")) {
+                    servePort = 8080;
+                    given.add(Option.SERVE);
+                } else if (arg.startsWith("--serve=")) {
+                    servePort = Integer.parseInt(arg.substring("--serve=".length()));
+                    given.add(Option.SERVE);
+                } else if (arg.equals("--metrics")) {
+                    // PipelineMetrics reads this once when it is loaded, and nothing has loaded it yet
+                    System.setProperty("analytics.metrics", "true");
+                } else if (arg.equals("--watch")) {
+                    watchInterval = Duration.ofSeconds(5);
+                    given.add(Option.WATCH);
+                } else if (arg.startsWith("--watch=")) {
+                    watchInterval = Duration.ofMillis((long) (Double.parseDouble(arg.substring("--watch=".length())) * 1000));
+                    given.add(Option.WATCH);
+                } else {
+                    System.err.println("Unknown option: " + arg);
+                    System.exit(1);
+                }
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                // A value that doesn't parse, e.g. --mode=fast or --measures=avg:price
+                System.err.println("Invalid option " + arg + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        List<Path> csvPaths = List.of(csvPath);
+        if (input != null) {
+            try {
+                csvPaths = CsvFiles.resolve(input);
+            } catch (IOException e) {
+                System.err.println("I/O ERROR: " + e.getMessage());
+                System.exit(1);
+            }
+            if (csvPaths.isEmpty()) {
+                System.err.println("No CSV files found for " + input);
+                System.exit(1);
+            }
+            csvPath = csvPaths.get(0);
+        }
+
+        if (csvPaths.size() > 1) {
+            given.add(Option.SEVERAL_FILES);
+        }
+        if (csvPaths.stream().anyMatch(p -> p.getFileName().toString().endsWith(".gz"))) {
+            given.add(Option.COMPRESSED);
+        }
+        for (Option option : given) {
+            for (Option other : given) {
+                if (option.compareTo(other) < 0 && !COMPATIBLE.get(option).contains(other)) {
+                    System.err.println(option.label + " can't be combined with " + other.label);
+                    System.exit(1);
+                }
+            }
+        }
+        if (spillDirectoryGiven && memoryBudget == null) {
+            System.err.println("--spill-dir only applies with --memory-budget");
+            System.exit(1);
+        }
+
+        MemoryBudget budget = null;
+        if (memoryBudget != null) {
+            try {
+                budget = MemoryBudget.parse(memoryBudget, spillDirectory);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid option --memory-budget=" + memoryBudget + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (sections == null) {
+            sections = ReportSection.ALL;
+        }
 
         if (!Files.exists(csvPath)) {
             System.err.println("File Not Found: 'sales_data.csv' not found at " + csvPath.toAbsolutePath() + " please check file path");
@@ -20,8 +229,39 @@ public class Main {
         }
 
         try {
-            AnalyticsService engine = new AnalyticsService();
-            engine.processSalesData(csvPath);
+            if (servePort != null) {
+                AnalyticsServer server = new AnalyticsServer(csvPath, exactMoney,
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), servePort), Duration.ofSeconds(1));
+                server.start();
+                System.out.println("Serving " + csvPath + " on http://localhost:" + server.port() + "/report, press Ctrl+C to stop");
+                return;
+            }
+            AnalyticsService engine = new AnalyticsService(exactMoney);
+            if (watchInterval != null) {
+                System.out.println("Watching " + csvPath + " for new rows, press Ctrl+C to stop");
+                engine.watchSalesData(csvPath, watchInterval);
+                return;
+            }
+            if (query != null && budget != null) {
+                engine.processQuery(csvPath, query, budget);
+            } else if (query != null) {
+                engine.processQuery(csvPath, query);
+            } else if (approximate) {
+                engine.processSalesDataApproximately(csvPath);
+            } else if (rollupFile != null) {
+                engine.processSalesData(csvPath, new RollupCache(rollupFile, exactMoney));
+            } else if (columnFile != null) {
+                engine.processSalesData(csvPath, mode, columnFile);
+            } else if (budget != null) {
+                engine.processSalesData(csvPaths, budget, sections);
+            } else if (csvPaths.size() > 1) {
+                engine.processSalesData(csvPaths, MemoryBudget.UNLIMITED, sections);
+            } else {
+                engine.processSalesData(csvPath, mode, sections);
+            }
+            // Log lines are written in the background, make sure they are all on disk before saying so
+            AnalyticsLogger.flush();
+            PipelineMetrics.printSummary();
             System.out.println("Processing complete! For more detailed logs on ingestion errors and cleaning, check 'DataIngestionErrors.log' and 'DataCleaning.log' files");
         } catch (IOException e) {
             System.err.println("I/O ERROR: " + e.getMessage());
@@ -34,4 +274,4 @@ public class Main {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
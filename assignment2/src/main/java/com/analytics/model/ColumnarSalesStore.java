@@ -0,0 +1,241 @@
+package com.analytics.model;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+// Cleaned sales held column by column instead of as one Sale object per row
+// IDs, quantity, price and the date (as epoch day) are primitive arrays, the four text columns are int codes
+// into a StringDictionary each, so a row costs about 56 bytes instead of a Sale, a LocalDate and their references
+// It is still a List<Sale>, get() builds a Sale on the fly, so existing stream code runs against it unchanged
+public class ColumnarSalesStore extends AbstractList<Sale> implements SalesColumns, RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    // Category code of a row that was reserved with add(null) and not set yet
+    private static final int EMPTY_ROW = -1;
+
+    private final StringDictionary categories = new StringDictionary();
+    private final StringDictionary regions = new StringDictionary();
+    private final StringDictionary products = new StringDictionary();
+    private final StringDictionary paymentMethods = new StringDictionary();
+
+    private long[] transactionIds;
+    private long[] productIds;
+    private long[] paymentIds;
+    private int[] epochDays;
+    private int[] quantities;
+    private double[] unitPrices;
+    private int[] categoryCodes;
+    private int[] regionCodes;
+    private int[] productCodes;
+    private int[] paymentMethodCodes;
+    private int size;
+
+    public ColumnarSalesStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ColumnarSalesStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        transactionIds = new long[capacity];
+        productIds = new long[capacity];
+        paymentIds = new long[capacity];
+        epochDays = new int[capacity];
+        quantities = new int[capacity];
+        unitPrices = new double[capacity];
+        categoryCodes = new int[capacity];
+        regionCodes = new int[capacity];
+        productCodes = new int[capacity];
+        paymentMethodCodes = new int[capacity];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Sale get(int row) {
+        checkIndex(row);
+        if (categoryCodes[row] == EMPTY_ROW) {
+            return null;
+        }
+        return new Sale(
+                transactionIds[row], epochDays[row], category(row), productIds[row], product(row),
+                region(row), paymentIds[row], paymentMethod(row), quantities[row], unitPrices[row]
+        );
+    }
+
+    // A null sale reserves the row so it can be filled in later with set()
+    @Override
+    public boolean add(Sale sale) {
+        ensureCapacity(size + 1);
+        size++;
+        modCount++;
+        write(size - 1, sale);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Sale sale) {
+        if (index != size) {
+            throw new UnsupportedOperationException("Rows can only be appended");
+        }
+        add(sale);
+    }
+
+    @Override
+    public Sale set(int row, Sale sale) {
+        Sale previous = get(row);
+        write(row, sale);
+        return previous;
+    }
+
+    // Appends every row of another store, copying columns in bulk and translating its dictionary codes
+    public void appendAll(ColumnarSalesStore other) {
+        int[] categoryMap = categories.remap(other.categories);
+        int[] regionMap = regions.remap(other.regions);
+        int[] productMap = products.remap(other.products);
+        int[] paymentMethodMap = paymentMethods.remap(other.paymentMethods);
+
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.transactionIds, 0, transactionIds, size, other.size);
+        System.arraycopy(other.productIds, 0, productIds, size, other.size);
+        System.arraycopy(other.paymentIds, 0, paymentIds, size, other.size);
+        System.arraycopy(other.epochDays, 0, epochDays, size, other.size);
+        System.arraycopy(other.quantities, 0, quantities, size, other.size);
+        System.arraycopy(other.unitPrices, 0, unitPrices, size, other.size);
+        for (int i = 0; i < other.size; i++) {
+            int category = other.categoryCodes[i];
+            categoryCodes[size + i] = category == EMPTY_ROW ? EMPTY_ROW : categoryMap[category];
+            regionCodes[size + i] = category == EMPTY_ROW ? 0 : regionMap[other.regionCodes[i]];
+            productCodes[size + i] = category == EMPTY_ROW ? 0 : productMap[other.productCodes[i]];
+            paymentMethodCodes[size + i] = category == EMPTY_ROW ? 0 : paymentMethodMap[other.paymentMethodCodes[i]];
+        }
+        size += other.size;
+        modCount++;
+    }
+
+    // Primitive accessors so aggregations can read the columns without building Sale objects
+
+    public long transactionId(int row) {
+        return transactionIds[row];
+    }
+
+    public long productId(int row) {
+        return productIds[row];
+    }
+
+    public long paymentId(int row) {
+        return paymentIds[row];
+    }
+
+    public int epochDay(int row) {
+        return epochDays[row];
+    }
+
+    public LocalDate date(int row) {
+        return LocalDate.ofEpochDay(epochDays[row]);
+    }
+
+    public int quantity(int row) {
+        return quantities[row];
+    }
+
+    public double unitPrice(int row) {
+        return unitPrices[row];
+    }
+
+    public double totalAmount(int row) {
+        return quantities[row] * unitPrices[row];
+    }
+
+    public int categoryCode(int row) {
+        return categoryCodes[row];
+    }
+
+    public int regionCode(int row) {
+        return regionCodes[row];
+    }
+
+    public int productCode(int row) {
+        return productCodes[row];
+    }
+
+    public int paymentMethodCode(int row) {
+        return paymentMethodCodes[row];
+    }
+
+    public String category(int row) {
+        return categories.decode(categoryCodes[row]);
+    }
+
+    public String region(int row) {
+        return regions.decode(regionCodes[row]);
+    }
+
+    public String product(int row) {
+        return products.decode(productCodes[row]);
+    }
+
+    public String paymentMethod(int row) {
+        return paymentMethods.decode(paymentMethodCodes[row]);
+    }
+
+    public StringDictionary categories() {
+        return categories;
+    }
+
+    public StringDictionary regions() {
+        return regions;
+    }
+
+    public StringDictionary products() {
+        return products;
+    }
+
+    public StringDictionary paymentMethods() {
+        return paymentMethods;
+    }
+
+    private void write(int row, Sale sale) {
+        if (sale == null) {
+            categoryCodes[row] = EMPTY_ROW;
+            return;
+        }
+        transactionIds[row] = sale.transactionId();
+        productIds[row] = sale.productId();
+        paymentIds[row] = sale.paymentId();
+        epochDays[row] = sale.epochDay();
+        quantities[row] = sale.quantity();
+        unitPrices[row] = sale.unitPrice();
+        categoryCodes[row] = categories.encode(sale.category());
+        regionCodes[row] = regions.encode(sale.region());
+        productCodes[row] = products.encode(sale.product());
+        paymentMethodCodes[row] = paymentMethods.encode(sale.paymentMethod());
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= transactionIds.length) {
+            return;
+        }
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, transactionIds.length * 2L));
+        transactionIds = Arrays.copyOf(transactionIds, capacity);
+        productIds = Arrays.copyOf(productIds, capacity);
+        paymentIds = Arrays.copyOf(paymentIds, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        quantities = Arrays.copyOf(quantities, capacity);
+        unitPrices = Arrays.copyOf(unitPrices, capacity);
+        categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+        regionCodes = Arrays.copyOf(regionCodes, capacity);
+        productCodes = Arrays.copyOf(productCodes, capacity);
+        paymentMethodCodes = Arrays.copyOf(paymentMethodCodes, capacity);
+    }
+
+    private void checkIndex(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+        }
+    }
+}
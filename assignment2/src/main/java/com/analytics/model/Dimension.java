@@ -0,0 +1,32 @@
+package com.analytics.model;
+
+// What a query can group sales by
+public enum Dimension {
+    REGION,
+    CATEGORY,
+    PRODUCT,
+    PAYMENT_METHOD,
+    // yyyy-MM, as in the monthly revenue report
+    MONTH,
+    DAY_OF_WEEK,
+    // The transaction value buckets of the histogram report
+    VALUE_BUCKET,
+    // yyyy-MM-dd
+    DATE,
+    // One group per payment, far more groups than fit in memory on a big enough file
+    PAYMENT_ID;
+
+    public String valueOf(Sale sale) {
+        return switch (this) {
+            case REGION -> sale.region();
+            case CATEGORY -> sale.category();
+            case PRODUCT -> sale.product();
+            case PAYMENT_METHOD -> sale.paymentMethod();
+            case MONTH -> SalesReport.monthKey(sale.date().getYear(), sale.date().getMonthValue());
+            case DAY_OF_WEEK -> sale.date().getDayOfWeek().name();
+            case VALUE_BUCKET -> SalesReport.valueBucket(sale.totalAmount());
+            case DATE -> sale.date().toString();
+            case PAYMENT_ID -> Long.toString(sale.paymentId());
+        };
+    }
+}
@@ -0,0 +1,68 @@
+package com.analytics.model;
+
+import com.analytics.util.OptionNames;
+
+import java.util.Locale;
+
+// One number a query computes per group, like sum(revenue) or count
+public record Measure(Function function, Field field) {
+
+    public enum Function { COUNT, SUM, AVG, MIN, MAX }
+
+    public enum Field {
+        // quantity * unit price
+        REVENUE,
+        QUANTITY,
+        UNIT_PRICE;
+
+        public double valueOf(Sale sale) {
+            return switch (this) {
+                case REVENUE -> sale.totalAmount();
+                case QUANTITY -> sale.quantity();
+                case UNIT_PRICE -> sale.unitPrice();
+            };
+        }
+    }
+
+    public Measure {
+        if (function == null || (field == null && function != Function.COUNT)) {
+            throw new IllegalArgumentException("Every measure except count needs a field");
+        }
+        if (function == Function.COUNT) {
+            field = null;
+        }
+    }
+
+    public static Measure count() {
+        return new Measure(Function.COUNT, null);
+    }
+
+    public static Measure sum(Field field) {
+        return new Measure(Function.SUM, field);
+    }
+
+    public static Measure avg(Field field) {
+        return new Measure(Function.AVG, field);
+    }
+
+    public static Measure min(Field field) {
+        return new Measure(Function.MIN, field);
+    }
+
+    public static Measure max(Field field) {
+        return new Measure(Function.MAX, field);
+    }
+
+    // "count" or "function:field", e.g. "sum:revenue" or "avg:unit_price"
+    public static Measure parse(String text) {
+        String[] parts = text.split(":", 2);
+        Function function = OptionNames.parse(Function.class, parts[0], "measure");
+        return new Measure(function, parts.length > 1 ? OptionNames.parse(Field.class, parts[1], "measure field") : null);
+    }
+
+    // Column heading, e.g. sum(revenue)
+    public String label() {
+        String name = function.name().toLowerCase(Locale.ROOT);
+        return field == null ? name : name + "(" + field.name().toLowerCase(Locale.ROOT) + ")";
+    }
+}
@@ -0,0 +1,45 @@
+package com.analytics.model;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+// How much heap an out-of-core run may hold on to, and where what doesn't fit gets written
+// Sizes are rough: each structure turns the budget into a number of entries with an estimate of its entry size
+public record MemoryBudget(long bytes, Path spillDirectory) {
+
+    public static final MemoryBudget UNLIMITED =
+            new MemoryBudget(Long.MAX_VALUE, Path.of(System.getProperty("java.io.tmpdir")));
+
+    public MemoryBudget {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("A memory budget has to be positive");
+        }
+    }
+
+    // "512k", "64m", "2g" or a plain number of bytes
+    public static MemoryBudget parse(String text, Path spillDirectory) {
+        String size = text.trim().toLowerCase(Locale.ROOT);
+        int shift = switch (size.isEmpty() ? ' ' : size.charAt(size.length() - 1)) {
+            case 'k' -> 10;
+            case 'm' -> 20;
+            case 'g' -> 30;
+            default -> 0;
+        };
+        long number = Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1));
+        return new MemoryBudget(number << shift, spillDirectory);
+    }
+
+    public boolean isUnlimited() {
+        return bytes == Long.MAX_VALUE;
+    }
+
+    // How many entries of about bytesPerEntry fit, at least one
+    public int maxEntries(int bytesPerEntry) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes / bytesPerEntry));
+    }
+
+    // An equal share for each of `ways` structures or threads
+    public MemoryBudget divide(int ways) {
+        return isUnlimited() ? this : new MemoryBudget(Math.max(1, bytes / ways), spillDirectory);
+    }
+}
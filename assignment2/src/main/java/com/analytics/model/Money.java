@@ -0,0 +1,35 @@
+package com.analytics.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Amounts in whole minor units (paise), for exact money arithmetic in long
+// Sums of minor units are exact whatever order they are added or merged in, which summing doubles never is
+public final class Money {
+
+    public static final int MINOR_PER_MAJOR = 100;
+
+    private Money() {
+    }
+
+    // The amount rounded half-up to whole paise
+    // A price parsed from text with at most two decimals converts back to exactly those paise, since the double
+    // is within a rounding error of them. Anything else goes through its shortest decimal form, so 1.005 gives 101
+    // like the text would rather than 100 like the double's binary value
+    public static long toMinorUnits(double amount) {
+        if (!Double.isFinite(amount)) {
+            throw new ArithmeticException("Not a money amount: " + amount);
+        }
+        double scaled = amount * MINOR_PER_MAJOR;
+        long rounded = Math.round(scaled);
+        if (Math.abs(scaled - rounded) <= 4 * Math.ulp(scaled)) {
+            return rounded;
+        }
+        return new BigDecimal(Double.toString(amount)).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    // The closest double to the amount in rupees, which %.2f prints back as exactly these paise
+    public static double toMajorUnits(long minor) {
+        return minor / (double) MINOR_PER_MAJOR;
+    }
+}
@@ -0,0 +1,10 @@
+package com.analytics.model;
+
+import java.util.List;
+
+// Result of a SalesQuery: one row per group, sorted by the group values
+// Each row holds the group-by values in query order and the measures in query order
+public record QueryResult(List<Dimension> groupBy, List<Measure> measures, List<Row> rows) {
+
+    public record Row(List<String> key, List<Double> values) {}
+}
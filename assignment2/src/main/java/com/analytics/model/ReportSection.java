@@ -0,0 +1,55 @@
+package com.analytics.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+// The eight parts of the analytics report, named like the SalesReport components, with the columns each one reads
+public enum ReportSection {
+    REVENUE_BY_REGION("revenueByRegion", SalesColumn.REGION, SalesColumn.QUANTITY, SalesColumn.UNIT_PRICE),
+    MONTHLY_REVENUE("monthlyRevenue", SalesColumn.DATE, SalesColumn.QUANTITY, SalesColumn.UNIT_PRICE),
+    UNITS_BY_PRODUCT("unitsByProduct", SalesColumn.PRODUCT, SalesColumn.QUANTITY),
+    PAYMENT_METHOD_COUNTS("paymentMethodCounts", SalesColumn.PAYMENT_METHOD),
+    AVG_UNIT_PRICE_BY_CATEGORY("avgUnitPriceByCategory", SalesColumn.CATEGORY, SalesColumn.UNIT_PRICE),
+    REVENUE_BY_REGION_AND_CATEGORY("revenueByRegionAndCategory",
+            SalesColumn.REGION, SalesColumn.CATEGORY, SalesColumn.QUANTITY, SalesColumn.UNIT_PRICE),
+    VALUE_BUCKETS("valueBuckets", SalesColumn.QUANTITY, SalesColumn.UNIT_PRICE),
+    AVG_ORDER_VALUE_BY_DAY("avgOrderValueByDay", SalesColumn.DATE, SalesColumn.QUANTITY, SalesColumn.UNIT_PRICE);
+
+    public static final Set<ReportSection> ALL = Collections.unmodifiableSet(EnumSet.allOf(ReportSection.class));
+
+    private final String componentName;
+    private final Set<SalesColumn> columns;
+
+    ReportSection(String componentName, SalesColumn first, SalesColumn... rest) {
+        this.componentName = componentName;
+        this.columns = EnumSet.of(first, rest);
+    }
+
+    public String componentName() {
+        return componentName;
+    }
+
+    public Set<SalesColumn> columns() {
+        return columns;
+    }
+
+    public static ReportSection byComponentName(String name) {
+        for (ReportSection section : values()) {
+            if (section.componentName.equalsIgnoreCase(name.trim())) {
+                return section;
+            }
+        }
+        throw new IllegalArgumentException("No report called " + name + ", expected one of " + ALL.stream()
+                .map(ReportSection::componentName).toList());
+    }
+
+    // Everything the sections read, plus the ID and date every row is validated on, so the same rows are rejected
+    // whichever sections run
+    public static Set<SalesColumn> columnsFor(Collection<ReportSection> sections) {
+        Set<SalesColumn> columns = EnumSet.of(SalesColumn.TRANSACTION_ID, SalesColumn.DATE);
+        sections.forEach(section -> columns.addAll(section.columns));
+        return columns;
+    }
+}
@@ -4,9 +4,10 @@ import java.time.LocalDate;
 
 // Correct formats of the data types are represented here
 // Converted from Strings to these after cleaning the data and bucketizing into correct types
+// The date is kept as its epoch day, rows are decoded straight to it and date() builds the LocalDate when asked
 public record Sale(
         long transactionId,
-        LocalDate date,
+        int epochDay,
         String category,
         long productId,
         String product,
@@ -16,6 +17,16 @@ public record Sale(
         int quantity,
         double unitPrice
 ) {
+    public Sale(long transactionId, LocalDate date, String category, long productId, String product, String region,
+                long paymentId, String paymentMethod, int quantity, double unitPrice) {
+        this(transactionId, Math.toIntExact(date.toEpochDay()), category, productId, product, region, paymentId,
+                paymentMethod, quantity, unitPrice);
+    }
+
+    public LocalDate date() {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
     public double totalAmount() {
         return quantity * unitPrice;
     }
@@ -0,0 +1,49 @@
+package com.analytics.model;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+// The columns of a sales CSV, found by their header names rather than where they sit in the line
+public enum SalesColumn {
+    TRANSACTION_ID("Transaction ID"),
+    DATE("Date"),
+    CATEGORY("Category"),
+    PRODUCT_ID("Product ID"),
+    PRODUCT("Product"),
+    REGION("Region"),
+    PAYMENT_ID("Payment ID"),
+    PAYMENT_METHOD("Payment method"),
+    QUANTITY("Quantity"),
+    UNIT_PRICE("unitPrice");
+
+    public static final Set<SalesColumn> ALL = Collections.unmodifiableSet(EnumSet.allOf(SalesColumn.class));
+
+    private final String headerName;
+
+    SalesColumn(String headerName) {
+        this.headerName = headerName;
+    }
+
+    // As in the header of sales_data.csv
+    public String headerName() {
+        return headerName;
+    }
+
+    // Case, spaces, dashes and underscores don't matter, so "unit_price" and "PAYMENT METHOD" are found too.
+    // null for a column the engine doesn't read
+    public static SalesColumn byHeaderName(String name) {
+        String key = normalize(name);
+        for (SalesColumn column : values()) {
+            if (normalize(column.headerName).equals(key)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT).replaceAll("[\\s_-]", "");
+    }
+}
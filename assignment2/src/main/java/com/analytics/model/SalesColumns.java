@@ -0,0 +1,36 @@
+package com.analytics.model;
+
+// Read access to sales kept column by column, row by row index without building Sale objects
+// Text columns are int codes into one StringDictionary per column
+public interface SalesColumns {
+
+    int size();
+
+    long transactionId(int row);
+
+    long productId(int row);
+
+    long paymentId(int row);
+
+    int epochDay(int row);
+
+    int quantity(int row);
+
+    double unitPrice(int row);
+
+    int categoryCode(int row);
+
+    int regionCode(int row);
+
+    int productCode(int row);
+
+    int paymentMethodCode(int row);
+
+    StringDictionary categories();
+
+    StringDictionary regions();
+
+    StringDictionary products();
+
+    StringDictionary paymentMethods();
+}
@@ -0,0 +1,132 @@
+package com.analytics.model;
+
+import com.analytics.util.OptionNames;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+// An ad-hoc question over the sales: which rows (date range, regions, categories, payment methods),
+// what to group them by and what to compute per group
+// Empty filter sets and null dates mean no filter. Queries are built up from all() with the with-style methods
+public record SalesQuery(
+        LocalDate from,
+        LocalDate to,
+        Set<String> regions,
+        Set<String> categories,
+        Set<String> paymentMethods,
+        List<Dimension> groupBy,
+        List<Measure> measures
+) {
+    // Group values are packed into one long key, 21 bits each
+    public static final int MAX_GROUP_BY = 3;
+
+    public SalesQuery {
+        regions = Set.copyOf(regions);
+        categories = Set.copyOf(categories);
+        paymentMethods = Set.copyOf(paymentMethods);
+        groupBy = List.copyOf(groupBy);
+        measures = List.copyOf(measures);
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("Query range starts after it ends: " + from + " > " + to);
+        }
+        if (groupBy.size() > MAX_GROUP_BY) {
+            throw new IllegalArgumentException("A query can group by at most " + MAX_GROUP_BY + " dimensions");
+        }
+        if (measures.isEmpty()) {
+            throw new IllegalArgumentException("A query needs at least one measure");
+        }
+    }
+
+    // Every sale in one group, counted
+    public static SalesQuery all() {
+        return new SalesQuery(null, null, Set.of(), Set.of(), Set.of(), List.of(), List.of(Measure.count()));
+    }
+
+    // Both ends are inclusive, null leaves that end open
+    public SalesQuery between(LocalDate from, LocalDate to) {
+        return new SalesQuery(from, to, regions, categories, paymentMethods, groupBy, measures);
+    }
+
+    public SalesQuery inRegions(String... regions) {
+        return new SalesQuery(from, to, Set.copyOf(Arrays.asList(regions)), categories, paymentMethods, groupBy, measures);
+    }
+
+    public SalesQuery inCategories(String... categories) {
+        return new SalesQuery(from, to, regions, Set.copyOf(Arrays.asList(categories)), paymentMethods, groupBy, measures);
+    }
+
+    public SalesQuery withPaymentMethods(String... paymentMethods) {
+        return new SalesQuery(from, to, regions, categories, Set.copyOf(Arrays.asList(paymentMethods)), groupBy, measures);
+    }
+
+    public SalesQuery groupBy(Dimension... groupBy) {
+        return new SalesQuery(from, to, regions, categories, paymentMethods, List.of(groupBy), measures);
+    }
+
+    public SalesQuery measures(Measure... measures) {
+        return new SalesQuery(from, to, regions, categories, paymentMethods, groupBy, List.of(measures));
+    }
+
+    // One option as the command line and the server take it, e.g. "group-by" with "region,month"
+    public SalesQuery withOption(String name, String value) {
+        String[] values = value.split(",");
+        return switch (name) {
+            case "group-by" -> groupBy(Arrays.stream(values)
+                    .map(v -> OptionNames.parse(Dimension.class, v, "dimension")).toArray(Dimension[]::new));
+            case "measures" -> measures(Arrays.stream(values).map(Measure::parse).toArray(Measure[]::new));
+            case "from" -> between(LocalDate.parse(value), to);
+            case "to" -> between(from, LocalDate.parse(value));
+            case "regions" -> inRegions(values);
+            case "categories" -> inCategories(values);
+            case "payment-methods" -> withPaymentMethods(values);
+            default -> throw new IllegalArgumentException("Unknown query option: " + name);
+        };
+    }
+
+    // The columns the query reads: its filters, group-bys and measures, plus the ID and date every row is validated on
+    public Set<SalesColumn> columns() {
+        Set<SalesColumn> columns = EnumSet.of(SalesColumn.TRANSACTION_ID, SalesColumn.DATE);
+        if (!regions.isEmpty()) columns.add(SalesColumn.REGION);
+        if (!categories.isEmpty()) columns.add(SalesColumn.CATEGORY);
+        if (!paymentMethods.isEmpty()) columns.add(SalesColumn.PAYMENT_METHOD);
+        for (Dimension dimension : groupBy) {
+            switch (dimension) {
+                case REGION -> columns.add(SalesColumn.REGION);
+                case CATEGORY -> columns.add(SalesColumn.CATEGORY);
+                case PRODUCT -> columns.add(SalesColumn.PRODUCT);
+                case PAYMENT_METHOD -> columns.add(SalesColumn.PAYMENT_METHOD);
+                case PAYMENT_ID -> columns.add(SalesColumn.PAYMENT_ID);
+                case VALUE_BUCKET -> columns.addAll(List.of(SalesColumn.QUANTITY, SalesColumn.UNIT_PRICE));
+                case MONTH, DAY_OF_WEEK, DATE -> { }
+            }
+        }
+        for (Measure measure : measures) {
+            if (measure.field() != null) {
+                switch (measure.field()) {
+                    case REVENUE -> columns.addAll(List.of(SalesColumn.QUANTITY, SalesColumn.UNIT_PRICE));
+                    case QUANTITY -> columns.add(SalesColumn.QUANTITY);
+                    case UNIT_PRICE -> columns.add(SalesColumn.UNIT_PRICE);
+                }
+            }
+        }
+        return columns;
+    }
+
+    public boolean matchesDate(LocalDate date) {
+        return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+    }
+
+    public boolean matchesEpochDay(long epochDay) {
+        return (from == null || epochDay >= from.toEpochDay()) && (to == null || epochDay <= to.toEpochDay());
+    }
+
+    public boolean matches(Sale sale) {
+        return matchesEpochDay(sale.epochDay())
+                && (regions.isEmpty() || regions.contains(sale.region()))
+                && (categories.isEmpty() || categories.contains(sale.category()))
+                && (paymentMethods.isEmpty() || paymentMethods.contains(sale.paymentMethod()));
+    }
+}
@@ -0,0 +1,31 @@
+package com.analytics.model;
+
+import java.time.DayOfWeek;
+import java.util.Map;
+
+// The eight aggregates behind the analytics report, in the same map shapes the Collectors pipelines produce
+// so every way of building the report prints exactly the same lines
+public record SalesReport(
+        Map<String, Double> revenueByRegion,
+        Map<String, Double> monthlyRevenue,
+        Map<String, Integer> unitsByProduct,
+        Map<String, Long> paymentMethodCounts,
+        Map<String, Double> avgUnitPriceByCategory,
+        Map<String, Map<String, Double>> revenueByRegionAndCategory,
+        Map<String, Long> valueBuckets,
+        Map<DayOfWeek, Double> avgOrderValueByDay
+) {
+    public static final String LOW_VALUE = "Low Value (<Rs. 50)";
+    public static final String MID_VALUE = "Mid Value (Rs. 50-Rs. 150)";
+    public static final String HIGH_VALUE = "High Value (>Rs. 150)";
+
+    public static String valueBucket(double amount) {
+        if (amount < 50.00) return LOW_VALUE;
+        else if (amount <= 150.00) return MID_VALUE;
+        else return HIGH_VALUE;
+    }
+
+    public static String monthKey(int year, int month) {
+        return year + "-" + (month < 10 ? "0" : "") + month;
+    }
+}
@@ -0,0 +1,65 @@
+package com.analytics.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Maps each distinct String of a column to a dense int code, in the order the values are first seen
+public class StringDictionary {
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    public int encode(String value) {
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    // -1 when the value has never been encoded
+    public int codeOf(String value) {
+        return codes.getOrDefault(value, -1);
+    }
+
+    public String decode(int code) {
+        return values.get(code);
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    // Values in code order, reading them back gives every value its old code
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    public static StringDictionary readFrom(DataInput in) throws IOException {
+        StringDictionary dictionary = new StringDictionary();
+        int size = in.readInt();
+        for (int code = 0; code < size; code++) {
+            dictionary.encode(in.readUTF());
+        }
+        return dictionary;
+    }
+
+    // Code in this dictionary for every code of the other one, used when appending another store's rows
+    public int[] remap(StringDictionary other) {
+        int[] mapping = new int[other.size()];
+        for (int code = 0; code < mapping.length; code++) {
+            mapping[code] = encode(other.decode(code));
+        }
+        return mapping;
+    }
+}
@@ -0,0 +1,230 @@
+package com.analytics.server;
+
+import com.analytics.model.Measure;
+import com.analytics.model.QueryResult;
+import com.analytics.model.SalesQuery;
+import com.analytics.model.SalesReport;
+import com.analytics.service.QueryEngine;
+import com.analytics.service.TailingAnalytics;
+import com.analytics.util.Json;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Keeps one CSV loaded and answers the report and ad-hoc queries as JSON over HTTP, for dashboards that ask every
+// few seconds. JVM start-up, parsing and JIT warm-up are paid once instead of on every run.
+// A refresher thread reads the rows appended since the last refresh like --watch and encodes the report right away,
+// so a report request only sends bytes that are ready. Queries run over the rows kept in columns, and the answer
+// to the same query string is kept until a refresh brings new rows.
+//   GET /report          the eight reports
+//   GET /report/<name>   one of them, named like the SalesReport components, e.g. /report/revenueByRegion
+//   GET /stats           row count and the imputation stats
+//   GET /query?...       a query with the command line's query options, e.g. ?group-by=region&measures=sum:revenue
+public final class AnalyticsServer implements Closeable {
+
+    private static final int CACHED_QUERIES = 256;
+
+    static {
+        // The JDK server writes the headers and the body separately, and with Nagle on the body then waits about
+        // 40 ms for the client's delayed ACK on every keep-alive request. Read once, when the first server is made
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final TailingAnalytics analytics;
+    private final QueryEngine engine = new QueryEngine();
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService refresher;
+    private final Duration interval;
+    // Guarded by this, like analytics
+    private final Map<String, byte[]> queries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > CACHED_QUERIES;
+        }
+    };
+    private volatile Snapshot snapshot;
+
+    // The JSON answers of the last refresh
+    private record Snapshot(byte[] report, Map<String, byte[]> reports, byte[] stats) {}
+
+    // Reads the whole file before returning, port 0 picks a free port
+    public AnalyticsServer(Path csvPath, boolean exactMoney, InetSocketAddress address, Duration interval)
+            throws IOException {
+        this.analytics = new TailingAnalytics(csvPath, exactMoney, true);
+        this.interval = interval;
+        refresh();
+        this.server = HttpServer.create(address, 0);
+        this.handlers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.refresher = Executors.newSingleThreadScheduledExecutor();
+        server.createContext("/", this::handle);
+        server.setExecutor(handlers);
+    }
+
+    public void start() {
+        server.start();
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (IOException e) {
+                System.err.println("I/O ERROR while refreshing: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // Thrown out of the task it would cancel every later refresh and leave the last report served
+                // forever, e.g. after the file was replaced by one with an unusable header. The next refresh retries
+                System.err.println("ERROR while refreshing: " + e.getMessage());
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // Reads the appended rows now rather than at the next refresh, returns how many there were
+    public synchronized int refresh() throws IOException {
+        int added = analytics.poll();
+        if (added == 0 && snapshot != null) {
+            return 0;
+        }
+
+        SalesReport report = analytics.report();
+        Map<String, Object> parts = new LinkedHashMap<>();
+        parts.put("revenueByRegion", report.revenueByRegion());
+        parts.put("monthlyRevenue", report.monthlyRevenue());
+        parts.put("unitsByProduct", report.unitsByProduct());
+        parts.put("paymentMethodCounts", report.paymentMethodCounts());
+        parts.put("avgUnitPriceByCategory", report.avgUnitPriceByCategory());
+        parts.put("revenueByRegionAndCategory", report.revenueByRegionAndCategory());
+        parts.put("valueBuckets", report.valueBuckets());
+        parts.put("avgOrderValueByDay", report.avgOrderValueByDay());
+
+        Map<String, byte[]> reports = new LinkedHashMap<>();
+        parts.forEach((name, part) -> reports.put(name, utf8(Json.write(part))));
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rows", analytics.rowCount());
+        stats.put("stats", analytics.stats());
+        snapshot = new Snapshot(utf8(Json.write(parts)), reports, utf8(Json.write(stats)));
+        queries.clear();
+        return added;
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                answer(exchange);
+            } catch (RuntimeException e) {
+                // Thrown out of the handler it would close the connection without any response
+                System.err.println("ERROR while answering " + exchange.getRequestURI() + ": " + e.getMessage());
+                send(exchange, 500, error(e.getMessage()));
+            }
+        }
+    }
+
+    private void answer(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            send(exchange, 405, error("Only GET is supported"));
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        Snapshot current = snapshot;
+        byte[] body;
+        if (path.equals("/query")) {
+            try {
+                body = query(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException | IllegalStateException | DateTimeParseException e) {
+                // Bad options, or a grouping with more distinct values than a query can hold
+                send(exchange, 400, error(e.getMessage()));
+                return;
+            }
+        } else if (path.startsWith("/report/")) {
+            body = current.reports().get(path.substring("/report/".length()));
+        } else {
+            body = switch (path) {
+                case "/report" -> current.report();
+                case "/stats" -> current.stats();
+                default -> null;
+            };
+        }
+        if (body == null) {
+            send(exchange, 404, error("Nothing at " + path));
+            return;
+        }
+        send(exchange, 200, body);
+    }
+
+    private synchronized byte[] query(String rawQuery) {
+        String key = rawQuery == null ? "" : rawQuery;
+        byte[] cached = queries.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        SalesQuery query = SalesQuery.all();
+        for (String option : key.split("&")) {
+            if (option.isEmpty()) {
+                continue;
+            }
+            int equals = option.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Query option without a value: " + option);
+            }
+            query = query.withOption(decode(option.substring(0, equals)), decode(option.substring(equals + 1)));
+        }
+        byte[] body = utf8(Json.write(toJson(analytics.query(engine, query))));
+        queries.put(key, body);
+        return body;
+    }
+
+    // Measures by their labels and the rows as key and values, like the printed query result
+    private static Map<String, Object> toJson(QueryResult result) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("groupBy", result.groupBy().stream().map(d -> d.name().toLowerCase()).toList());
+        json.put("measures", result.measures().stream().map(Measure::label).toList());
+        json.put("rows", result.rows());
+        return json;
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] error(String message) {
+        return utf8(Json.write(Map.of("error", String.valueOf(message))));
+    }
+
+    private static String decode(String text) {
+        return URLDecoder.decode(text, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -2,54 +2,442 @@ package com.analytics.service;
 
 import com.analytics.exception.CsvParsingException;
 import com.analytics.exception.DataValidationException;
+import com.analytics.model.ColumnarSalesStore;
 import com.analytics.model.GlobalStats;
+import com.analytics.model.Measure;
+import com.analytics.model.MemoryBudget;
+import com.analytics.model.QueryResult;
 import com.analytics.model.RawSale;
+import com.analytics.model.ReportSection;
 import com.analytics.model.Sale;
+import com.analytics.model.SalesColumn;
+import com.analytics.model.SalesQuery;
+import com.analytics.model.SalesReport;
+import com.analytics.sketch.HeavyHitters;
+import com.analytics.sketch.SalesSketches;
 import com.analytics.util.AnalyticsLogger;
+import com.analytics.util.PipelineMetrics;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.DayOfWeek;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class AnalyticsService {
 
-    private final ImputationService imputer = new ImputationService();
-    private final DataIngestionService parser = new DataIngestionService();
+    // Revenue in whole paise instead of compensated double sums, see SalesAggregator.exactMoney()
+    private final boolean exactMoney;
+
+    public AnalyticsService() {
+        this(false);
+    }
+
+    public AnalyticsService(boolean exactMoney) {
+        this.exactMoney = exactMoney;
+    }
 
     public void processSalesData(Path csvPath) throws IOException {
-        System.out.println("Phase 1: Analyzing data distribution");
+        processSalesData(csvPath, IngestionMode.TWO_PASS);
+    }
+
+    public void processSalesData(Path csvPath, IngestionMode mode) throws IOException {
+        processSalesData(csvPath, mode, ReportSection.ALL);
+    }
+
+    // Only the given report sections are printed, and only the columns they read are decoded and imputed
+    public void processSalesData(Path csvPath, IngestionMode mode, Set<ReportSection> sections) throws IOException {
+        runAnalytics(load(csvPath, mode, ReportSection.columnsFor(sections)).sales(), sections);
+    }
+
+    // Same report, but the cleaned rows are kept in a binary column file for the next run
+    // While the column file was built from this CSV as it is now, the CSV isn't read at all
+    public void processSalesData(Path csvPath, IngestionMode mode, Path columnFile) throws IOException {
+        SalesColumnFile cached = openIfBuiltFrom(csvPath, columnFile);
+        if (cached != null) {
+            // Nothing is read, so the logs of the run that built the column file stay as they are
+            AnalyticsLogger.continueExistingLogs();
+            System.out.println("Loaded " + cached.size() + " cleaned rows from " + columnFile);
+            printStats(cached.stats(), CsvHeader.STANDARD);
+            runAnalytics(cached, ReportSection.ALL);
+            return;
+        }
+
+        // Taken before the rows are read, so a file that changes while they are has a different source next time
+        SalesColumnFile.Source source = SalesColumnFile.Source.of(csvPath);
+        // The column file keeps every column of the cleaned rows
+        CleanedSales cleaned = load(csvPath, mode, SalesColumn.ALL);
+        SalesColumnFile.write(columnFile, cleaned.sales(), cleaned.stats(), source);
+        runAnalytics(cleaned.sales(), ReportSection.ALL);
+    }
+
+    // The column file if it holds the rows of this CSV as it is now, null when it has to be written again
+    private static SalesColumnFile openIfBuiltFrom(Path csvPath, Path columnFile) throws IOException {
+        if (!Files.exists(columnFile)) {
+            return null;
+        }
+        try {
+            SalesColumnFile cached = SalesColumnFile.open(columnFile);
+            return cached.source().matches(csvPath) ? cached : null;
+        } catch (IOException e) {
+            // A damaged or older file is only a slower run
+            System.err.println("Ignoring unreadable column file " + columnFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // One report over several CSV shards, such as a directory of daily exports
+    public void processSalesData(List<Path> csvPaths) throws IOException {
+        processSalesData(csvPaths, MemoryBudget.UNLIMITED);
+    }
+
+    // Out of core: rows go straight into the aggregates and are never collected, so the input can be far larger
+    // than the heap. Only the rows waiting for imputation are kept, and they spill to disk past the budget
+    public void processSalesData(List<Path> csvPaths, MemoryBudget budget) throws IOException {
+        processSalesData(csvPaths, budget, ReportSection.ALL);
+    }
+
+    public void processSalesData(List<Path> csvPaths, MemoryBudget budget, Set<ReportSection> sections)
+            throws IOException {
+        printReport(aggregateShards(csvPaths, budget, ReportSection.columnsFor(sections)), sections);
+    }
+
+    public SalesReport aggregateShards(List<Path> csvPaths) throws IOException {
+        return aggregateShards(csvPaths, MemoryBudget.UNLIMITED);
+    }
+
+    // Each shard is scanned once, one per core at a time, into its own stats, aggregate and rows waiting for imputation
+    // Those are merged in path order as they come in, so the result doesn't depend on which shard finished first,
+    // and the waiting rows are imputed at the end with stats over all the shards rather than their own file's
+    public SalesReport aggregateShards(List<Path> csvPaths, MemoryBudget budget) throws IOException {
+        return aggregateShards(csvPaths, budget, SalesColumn.ALL);
+    }
+
+    // Sections that aren't asked for come out empty or zero when their columns aren't in the given set
+    public SalesReport aggregateShards(List<Path> csvPaths, MemoryBudget budget, Set<SalesColumn> columns)
+            throws IOException {
+        if (csvPaths.isEmpty()) {
+            throw new IllegalArgumentException("No CSV files to read");
+        }
+        phase(1, "Analyzing data distribution" + (csvPaths.size() > 1 ? " in " + csvPaths.size() + " files" : ""));
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        // Every shard being read holds its own share, the merged one collects the rest
+        MemoryBudget shardBudget = budget.divide(threads + 1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ShardAggregate merged = null;
+        try {
+            List<Future<ShardAggregate>> shards = new ArrayList<>();
+            for (Path csvPath : csvPaths) {
+                shards.add(pool.submit(() -> ShardAggregate.scan(csvPath, columns, exactMoney, shardBudget)));
+            }
+            for (Future<ShardAggregate> shard : shards) {
+                ShardAggregate scanned = await(shard);
+                if (merged == null) {
+                    merged = scanned;
+                    merged.logErrors();
+                } else {
+                    merged.append(scanned);
+                }
+            }
+        } finally {
+            // Stops the shards still being read when one failed
+            pool.shutdownNow();
+        }
+
+        GlobalStats stats = merged.stats();
+        printStats(stats, merged.header());
+
+        phase(2, "Processing stream and imputing missing values");
+        return merged.finish(stats).toReport();
+    }
+
+    private static ShardAggregate await(Future<ShardAggregate> shard) throws IOException {
+        try {
+            return shard.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the CSV files");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Report from rollups kept between runs, only rows the cache hasn't seen yet are read
+    public void processSalesData(Path csvPath, RollupCache rollups) throws IOException {
+        RollupCache.Result result = rollups.load(csvPath);
+        TailingAnalytics analytics = result.analytics();
+        switch (result.outcome()) {
+            case UNCHANGED -> System.out.println("Rollups are up to date: " + analytics.rowCount() + " rows");
+            case APPENDED -> System.out.println("Rollups extended with " + result.newRows() + " appended rows: "
+                    + analytics.rowCount() + " rows in total");
+            case REBUILT -> System.out.println("Rollups built from " + analytics.rowCount() + " rows");
+        }
+        printStats(analytics.stats(), CsvHeader.STANDARD);
+
+        // report() notes which imputations it has logged, so the cache is saved after it
+        SalesReport report = analytics.report();
+        if (result.outcome() != RollupCache.Outcome.UNCHANGED) {
+            rollups.save(csvPath, analytics);
+        }
+        printReport(report, ReportSection.ALL);
+    }
+
+    // Low-memory alternative to the report: the two-pass stream feeds fixed-size sketches and no row is kept
+    // Parsing, imputation and both logs are exactly those of the two-pass mode
+    public void processSalesDataApproximately(Path csvPath) throws IOException {
+        phase(1, "Analyzing data distribution");
+        ImputationService imputer = imputerFor(csvPath, SalesColumn.ALL);
+        GlobalStats stats = imputer.calculateStats(csvPath);
+        printStats(stats, CsvHeader.STANDARD);
+
+        phase(2, "Processing stream and imputing missing values");
+        SalesSketches sketches = new SalesSketches();
+        PipelineMetrics.bytesRead(Files.size(csvPath));
+        try (Stream<String> lines = Files.lines(csvPath).skip(1)) {
+            clean(lines, stats, imputer).forEach(sketches::accept);
+        }
+        printSketches(sketches);
+    }
+
+    // Answers an ad-hoc query with one scan of the CSV, the filters are applied while the rows are read
+    public void processQuery(Path csvPath, SalesQuery query) throws IOException {
+        processQuery(csvPath, query, MemoryBudget.UNLIMITED);
+    }
+
+    public void processQuery(Path csvPath, SalesQuery query, MemoryBudget budget) throws IOException {
+        printQueryResult(new QueryEngine(budget).run(query, csvPath));
+    }
+
+    // The cleaned rows together with the stats their missing values were filled in with
+    private record CleanedSales(ColumnarSalesStore sales, GlobalStats stats) {}
+
+    // Follows a CSV that keeps growing and prints the report again after every interval that brought new rows
+    // Only the appended lines are read each time, and it runs until the thread is interrupted
+    public void watchSalesData(Path csvPath, Duration interval) throws IOException {
+        TailingAnalytics tail = new TailingAnalytics(csvPath, exactMoney);
+        while (!Thread.currentThread().isInterrupted()) {
+            int added = tail.poll();
+            if (added > 0) {
+                System.out.println("\nRefresh: " + added + " new rows, " + tail.rowCount() + " rows in total");
+                printStats(tail.stats(), CsvHeader.STANDARD);
+                printReport(tail.report(), ReportSection.ALL);
+            }
+
+            try {
+                Thread.sleep(interval.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Parses, validates and imputes every row, in file order, without running the report
+    // Rows are kept in a ColumnarSalesStore rather than as separate Sale objects
+    public ColumnarSalesStore loadSales(Path csvPath, IngestionMode mode) throws IOException {
+        return load(csvPath, mode, SalesColumn.ALL).sales();
+    }
+
+    // Columns are found by the header of the file, the ones outside the given set are skipped
+    private CleanedSales load(Path csvPath, IngestionMode mode, Set<SalesColumn> columns) throws IOException {
+        ImputationService imputer = imputerFor(csvPath, columns);
+        if (GzipCsvReader.isGzip(csvPath)) {
+            return loadGzip(csvPath, imputer);
+        }
+        return switch (mode) {
+            case TWO_PASS -> loadTwoPass(csvPath, imputer);
+            case SINGLE_PASS -> loadSinglePass(csvPath, imputer);
+            case MAPPED -> loadMapped(csvPath, imputer);
+            case PARALLEL -> loadParallel(csvPath, imputer);
+            case PIPELINED -> loadPipelined(csvPath, imputer);
+        };
+    }
+
+    private static ImputationService imputerFor(Path csvPath, Set<SalesColumn> columns) throws IOException {
+        return new ImputationService(CsvHeader.read(csvPath).project(columns));
+    }
+
+    private CleanedSales loadTwoPass(Path csvPath, ImputationService imputer) throws IOException {
+        phase(1, "Analyzing data distribution");
         GlobalStats stats = imputer.calculateStats(csvPath);
+        printStats(stats, imputer.parser().header());
+
+        phase(2, "Processing stream and imputing missing values");
 
-        System.out.println("Mean for price: " + String.format("%.2f", stats.meanPrice()));
-        System.out.println("Mode for category: " + stats.modeCategory());
-        System.out.println("Mode for region: " + stats.modeRegion());
+        PipelineMetrics.bytesRead(Files.size(csvPath));
+        try (Stream<String> lines = Files.lines(csvPath).skip(1)) {
+            return new CleanedSales(clean(lines, stats, imputer)
+                    .collect(Collectors.toCollection(ColumnarSalesStore::new)), stats);
+        }
+    }
+
+    // Phase 2 of the two-pass mode, bad rows are logged and dropped
+    private Stream<Sale> clean(Stream<String> lines, GlobalStats stats, ImputationService imputer) {
+        return lines
+                .map(line -> {
+                    RawSale raw = tryParse(line, imputer);
+                    return raw == null ? null : tryImpute(raw, line, stats, imputer);
+                })
+                .filter(Objects::nonNull);
+    }
 
-        System.out.println("Phase 2: Processing stream and imputing missing values");
+    // One scan builds the stats and maps every clean row straight away
+    // Rows that need the mean or a mode are held back with their list slot and imputed once the scan is done,
+    // so the result and both log files come out exactly as in the two-pass mode
+    private CleanedSales loadSinglePass(Path csvPath, ImputationService imputer) throws IOException {
+        phase(1, "Analyzing data distribution");
 
+        SinglePassCollector collector = new SinglePassCollector(imputer);
+        PipelineMetrics.bytesRead(Files.size(csvPath));
         try (Stream<String> lines = Files.lines(csvPath).skip(1)) {
+            lines.forEach(collector::acceptLine);
+        }
+        return finishSinglePass(collector, imputer);
+    }
 
-            List<Sale> validSales = lines
-                    .map(this::tryParse)
-                    .filter(Objects::nonNull)
-                    .map(raw -> tryImpute(raw, stats))
-                    .filter(Objects::nonNull)
-                    .toList();
+    // Single pass over the memory-mapped file, clean rows are decoded straight from the bytes
+    // Anything the byte decoder isn't sure about goes through the usual String parser so errors and logs don't change
+    private CleanedSales loadMapped(Path csvPath, ImputationService imputer) throws IOException {
+        phase(1, "Analyzing data distribution");
 
-            runAnalytics(validSales);
+        SinglePassCollector collector = new SinglePassCollector(imputer);
+        new MappedCsvParser().forEachRow(csvPath, collector::acceptRow);
+        return finishSinglePass(collector, imputer);
+    }
+
+    // The mapped scan split into line-aligned byte ranges that are parsed, validated and mapped on a fork-join pool
+    // Each chunk buffers its stats, rows and ingestion errors, then the chunks are appended in file order
+    // and the deferred rows imputed sequentially, so the output and logs match the sequential modes
+    private CleanedSales loadParallel(Path csvPath, ImputationService imputer) throws IOException {
+        phase(1, "Analyzing data distribution");
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        // A few chunks per worker so one slow range doesn't leave the others idle
+        long[] boundaries = MappedCsvParser.chunkBoundaries(csvPath, pool.getParallelism() * 4);
+
+        List<SinglePassCollector> chunks;
+        try {
+            chunks = pool.invoke(new ChunkTask(csvPath, imputer, boundaries, 0, boundaries.length - 1));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        SinglePassCollector collector = new SinglePassCollector(imputer);
+        for (SinglePassCollector chunk : chunks) {
+            collector.append(chunk);
+        }
+        return finishSinglePass(collector, imputer);
+    }
+
+    // Splits the chunk range in half until a single chunk is left, results come back in file order
+    private static class ChunkTask extends RecursiveTask<List<SinglePassCollector>> {
+        // Tasks are never serialized, ForkJoinTask only happens to be Serializable
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path csvPath;
+        private final transient ImputationService imputer;
+        private final long[] boundaries;
+        private final int first;
+        private final int last;
+
+        ChunkTask(Path csvPath, ImputationService imputer, long[] boundaries, int first, int last) {
+            this.csvPath = csvPath;
+            this.imputer = imputer;
+            this.boundaries = boundaries;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected List<SinglePassCollector> compute() {
+            if (last - first == 1) {
+                SinglePassCollector chunk = SinglePassCollector.forChunk(imputer);
+                try {
+                    // Only the chunk at the start of the file has the header
+                    new MappedCsvParser().forEachRow(csvPath, boundaries[first], boundaries[last], first == 0, chunk::acceptRow);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return List.of(chunk);
+            }
+
+            int middle = (first + last) >>> 1;
+            ChunkTask left = new ChunkTask(csvPath, imputer, boundaries, first, middle);
+            left.fork();
+            List<SinglePassCollector> right = new ChunkTask(csvPath, imputer, boundaries, middle, last).compute();
+
+            List<SinglePassCollector> all = new ArrayList<>(left.join());
+            all.addAll(right);
+            return all;
+        }
+    }
+
+    // Reading, parsing and appending overlap, each on threads of their own, see PipelinedCsvReader
+    private CleanedSales loadPipelined(Path csvPath, ImputationService imputer) throws IOException {
+        phase(1, "Analyzing data distribution");
+        return finishSinglePass(new PipelinedCsvReader(imputer).collect(csvPath), imputer);
+    }
+
+    // A .csv.gz is read in one pass whatever the mode, it can't be mapped and a second pass would inflate it again
+    private CleanedSales loadGzip(Path gzPath, ImputationService imputer) throws IOException {
+        phase(1, "Analyzing data distribution");
+        return finishSinglePass(new GzipCsvReader(imputer).collect(gzPath), imputer);
+    }
+
+    private CleanedSales finishSinglePass(SinglePassCollector collector, ImputationService imputer) {
+        GlobalStats stats = collector.stats();
+        printStats(stats, imputer.parser().header());
+
+        phase(2, "Processing stream and imputing missing values");
+        return new CleanedSales(collector.finish(stats), stats);
+    }
+
+    // Prints the phase heading, and with metrics on the phase is timed until the next stage begins
+    private static void phase(int number, String heading) {
+        System.out.println("Phase " + number + ": " + heading);
+        PipelineMetrics.beginStage("Phase " + number);
+    }
+
+    // Only the stats of columns that were read, the others weren't looked at
+    private void printStats(GlobalStats stats, CsvHeader header) {
+        if (header.reads(SalesColumn.UNIT_PRICE)) {
+            System.out.println("Mean for price: " + String.format("%.2f", stats.meanPrice()));
+        }
+        if (header.reads(SalesColumn.CATEGORY)) {
+            System.out.println("Mode for category: " + stats.modeCategory());
+        }
+        if (header.reads(SalesColumn.REGION)) {
+            System.out.println("Mode for region: " + stats.modeRegion());
         }
     }
 
     // Stream won't stop while parsing and continues by logging the errors
-    private RawSale tryParse(String line) {
+    private RawSale tryParse(String line, ImputationService imputer) {
+        PipelineMetrics.rowRead();
         try {
-            return parser.parseLine(line);
+            return imputer.parser().parseLine(line);
         } catch (CsvParsingException e) {
+            PipelineMetrics.parseError();
             // Log the exception and continue
             AnalyticsLogger.logIngestionError(line, e.getMessage());
             return null;
@@ -57,107 +445,144 @@ public class AnalyticsService {
     }
 
     // Exception handling done with custom exception
-    private Sale tryImpute(RawSale raw, GlobalStats stats) {
+    private Sale tryImpute(RawSale raw, String line, GlobalStats stats, ImputationService imputer) {
         try {
             return imputer.imputeAndMap(raw, stats);
         } catch (DataValidationException e) {
+            PipelineMetrics.validationReject();
             // LOG the exception and continue
-            AnalyticsLogger.logIngestionError(raw.toString(), e.getMessage());
+            AnalyticsLogger.logIngestionError(imputer.parser().describe(raw, line), e.getMessage());
             return null;
         }
     }
 
-    private void runAnalytics(List<Sale> sales) {
-        System.out.println("\n---- SALES ANALYTICS REPORT ----\n");
+    // All eight reports come from one fused pass over the sales, then the requested ones get printed
+    private void runAnalytics(List<Sale> sales, Set<ReportSection> sections) {
+        PipelineMetrics.beginStage("Aggregation");
+        SalesReport report = SalesAggregator.aggregate(sales, exactMoney);
+        printReport(report, sections);
+    }
+
+    private void printQueryResult(QueryResult result) {
+        System.out.println("\n---- QUERY RESULT ----\n");
+
+        List<String> headings = new ArrayList<>();
+        result.groupBy().forEach(d -> headings.add(d.name().toLowerCase()));
+        result.measures().forEach(m -> headings.add(m.label()));
+        System.out.println(String.join(" | ", headings));
+
+        for (QueryResult.Row row : result.rows()) {
+            List<String> cells = new ArrayList<>(row.key());
+            for (int i = 0; i < row.values().size(); i++) {
+                double value = row.values().get(i);
+                cells.add(result.measures().get(i).function() == Measure.Function.COUNT
+                        ? String.format("%d", (long) value)
+                        : String.format("%,.2f", value));
+            }
+            System.out.println(String.join(" | ", cells));
+        }
+        System.out.println("\n" + result.rows().size() + " groups");
+    }
 
+    private void printSketches(SalesSketches sketches) {
+        System.out.println("\n---- APPROXIMATE SALES ANALYTICS ----\n");
 
-        System.out.println("1. Total Revenue by Region:");
-        Map<String, Double> revenueByRegion = sales.stream()
-                .collect(Collectors.groupingBy(
-                        Sale::region,
-                        Collectors.summingDouble(Sale::totalAmount)
-                ));
-        revenueByRegion.forEach((k, v) -> System.out.printf("%-2s : Rs. %,.2f%n", k, v));
 
+        System.out.println("1. Top " + SalesSketches.TOP_PRODUCTS + " Selling Products (estimated):");
+        for (HeavyHitters.Estimate e : sketches.topProducts()) {
+            System.out.printf("%-2s : ~%,d units%n", e.key(), e.count());
+        }
 
-        System.out.println("\n2. Monthly Revenue Trends:");
-        Map<String, Double> monthlySales = sales.stream()
-                .collect(Collectors.groupingBy(
-                        s -> s.date().getYear() + "-" + String.format("%02d", s.date().getMonthValue()),
-                        Collectors.summingDouble(Sale::totalAmount)
-                ));
-        monthlySales.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .forEach(e -> System.out.printf("%-2s : Rs. %,.2f%n", e.getKey(), e.getValue()));
 
+        System.out.println("\n2. Distinct Counts (estimated):");
+        System.out.printf("Products : ~%,d%n", sketches.distinctProducts());
+        System.out.printf("Payment IDs : ~%,d%n", sketches.distinctPaymentIds());
+        System.out.printf("Transactions : ~%,d%n", sketches.distinctTransactions());
 
-        System.out.println("\n3. Top 3 Selling Products:");
-        sales.stream()
-                .collect(Collectors.groupingBy(Sale::product, Collectors.summingInt(Sale::quantity)))
-                .entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .limit(3)
-                .forEach(e -> System.out.printf("%-2s : %d units%n", e.getKey(), e.getValue()));
 
+        System.out.println("\n3. Transaction Value Quantiles (estimated, " + sketches.count() + " transactions):");
+        for (double q : new double[]{0.25, 0.5, 0.75, 0.9, 0.99}) {
+            System.out.printf("p%-2d : Rs. %,.2f%n", Math.round(q * 100), sketches.orderValueQuantile(q));
+        }
+    }
 
-        System.out.println("\n4. Payment Method Usage:");
-        Map<String, Long> paymentStats = sales.stream()
-                .collect(Collectors.groupingBy(Sale::paymentMethod, Collectors.counting()));
-        paymentStats.forEach((k, v) -> System.out.printf("%-2s : %d transactions%n", k, v));
+    // Sections keep their numbers when others are left out
+    private void printReport(SalesReport report, Set<ReportSection> sections) {
+        System.out.println("\n---- SALES ANALYTICS REPORT ----\n");
 
 
-        System.out.println("\n5. Avg Unit Price by Category:");
-        sales.stream()
-                .collect(Collectors.groupingBy(Sale::category, Collectors.averagingDouble(Sale::unitPrice)))
-                .forEach((k, v) -> System.out.printf("%-2s : Rs. %,.2f%n", k, v));
+        if (sections.contains(ReportSection.REVENUE_BY_REGION)) {
+            PipelineMetrics.beginStage("Report revenueByRegion");
+            System.out.println("1. Total Revenue by Region:");
+            report.revenueByRegion().forEach((k, v) -> System.out.printf("%-2s : Rs. %,.2f%n", k, v));
+        }
 
 
+        if (sections.contains(ReportSection.MONTHLY_REVENUE)) {
+            PipelineMetrics.beginStage("Report monthlyRevenue");
+            System.out.println("\n2. Monthly Revenue Trends:");
+            report.monthlyRevenue().entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(e -> System.out.printf("%-2s : Rs. %,.2f%n", e.getKey(), e.getValue()));
+        }
 
-        System.out.println("\n6. Regional Market Share (Top category per region):");
-        Map<String, Map<String, Double>> regionalCategoryStats = sales.stream()
-                .collect(Collectors.groupingBy(
-                        Sale::region,
-                        Collectors.groupingBy(Sale::category, Collectors.summingDouble(Sale::totalAmount))
-                ));
 
+        if (sections.contains(ReportSection.UNITS_BY_PRODUCT)) {
+            PipelineMetrics.beginStage("Report unitsByProduct");
+            System.out.println("\n3. Top 3 Selling Products:");
+            report.unitsByProduct().entrySet().stream()
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                    .limit(3)
+                    .forEach(e -> System.out.printf("%-2s : %d units%n", e.getKey(), e.getValue()));
+        }
 
-        regionalCategoryStats.forEach((region, catMap) -> {
-            // Find the category with the highest revenue in this region
-            var topEntry = catMap.entrySet().stream()
-                    .max(Map.Entry.comparingByValue());
 
-            topEntry.ifPresent(e ->
-                    System.out.printf("%-2s : Top Category is %-12s (Rs. %,.2f)%n", region, e.getKey(), e.getValue()));
-        });
+        if (sections.contains(ReportSection.PAYMENT_METHOD_COUNTS)) {
+            PipelineMetrics.beginStage("Report paymentMethodCounts");
+            System.out.println("\n4. Payment Method Usage:");
+            report.paymentMethodCounts().forEach((k, v) -> System.out.printf("%-2s : %d transactions%n", k, v));
+        }
 
 
-        System.out.println("\n7. Transaction Value Distribution (histograms):");
-        Map<String, Long> valueBuckets = sales.stream()
-                .collect(Collectors.groupingBy(
-                        s -> {
-                            double amt = s.totalAmount();
-                            if (amt < 50.00) return "Low Value (<Rs. 50)";
-                            else if (amt <= 150.00) return "Mid Value (Rs. 50-Rs. 150)";
-                            else return "High Value (>Rs. 150)";
-                        },
-                        Collectors.counting()
-                ));
+        if (sections.contains(ReportSection.AVG_UNIT_PRICE_BY_CATEGORY)) {
+            PipelineMetrics.beginStage("Report avgUnitPriceByCategory");
+            System.out.println("\n5. Avg Unit Price by Category:");
+            report.avgUnitPriceByCategory().forEach((k, v) -> System.out.printf("%-2s : Rs. %,.2f%n", k, v));
+        }
+
 
 
-        Stream.of("Low Value (<Rs. 50)", "Mid Value (Rs. 50-Rs. 150)", "High Value (>Rs. 150)")
-                .filter(valueBuckets::containsKey)
-                .forEach(bucket -> System.out.printf("%-2s : %d transactions%n", bucket, valueBuckets.get(bucket)));
+        if (sections.contains(ReportSection.REVENUE_BY_REGION_AND_CATEGORY)) {
+            PipelineMetrics.beginStage("Report revenueByRegionAndCategory");
+            System.out.println("\n6. Regional Market Share (Top category per region):");
+            report.revenueByRegionAndCategory().forEach((region, catMap) -> {
+                // Find the category with the highest revenue in this region
+                var topEntry = catMap.entrySet().stream()
+                        .max(Map.Entry.comparingByValue());
 
+                topEntry.ifPresent(e ->
+                        System.out.printf("%-2s : Top Category is %-12s (Rs. %,.2f)%n", region, e.getKey(), e.getValue()));
+            });
+        }
 
-        System.out.println("\n8. Day-of-Week Profitability (heatmap):");
-        Map<DayOfWeek, Double> dayStats = sales.stream()
-                .collect(Collectors.groupingBy(
-                        s -> s.date().getDayOfWeek(),
-                        Collectors.averagingDouble(Sale::totalAmount)
-                ));
 
-        dayStats.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey()) // Sort Mon -> Sun
-                .forEach(e -> System.out.printf("%-2s : Avg Order Value Rs. %,.2f%n", e.getKey(), e.getValue()));
+        if (sections.contains(ReportSection.VALUE_BUCKETS)) {
+            PipelineMetrics.beginStage("Report valueBuckets");
+            System.out.println("\n7. Transaction Value Distribution (histograms):");
+            Map<String, Long> valueBuckets = report.valueBuckets();
+            Stream.of(SalesReport.LOW_VALUE, SalesReport.MID_VALUE, SalesReport.HIGH_VALUE)
+                    .filter(valueBuckets::containsKey)
+                    .forEach(bucket -> System.out.printf("%-2s : %d transactions%n", bucket, valueBuckets.get(bucket)));
+        }
+
+
+        if (sections.contains(ReportSection.AVG_ORDER_VALUE_BY_DAY)) {
+            PipelineMetrics.beginStage("Report avgOrderValueByDay");
+            System.out.println("\n8. Day-of-Week Profitability (heatmap):");
+            report.avgOrderValueByDay().entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey()) // Sort Mon -> Sun
+                    .forEach(e -> System.out.printf("%-2s : Avg Order Value Rs. %,.2f%n", e.getKey(), e.getValue()));
+        }
+        PipelineMetrics.endStage();
     }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.analytics.service;
+
+import com.analytics.exception.CsvParsingException;
+import com.analytics.model.SalesColumn;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+// Where each column sits in the lines of one CSV, taken from its header line, and which of them get read
+// Columns outside the projection are never cut out of a line or decoded, the rows get "" or 0 for them.
+// A header that names none of the known columns is taken to be in the order of sales_data.csv
+public final class CsvHeader {
+
+    private static final int NOT_READ = -1;
+
+    // The layout of sales_data.csv, every column read
+    public static final CsvHeader STANDARD = standard();
+
+    // By SalesColumn ordinal, NOT_READ for a column the file doesn't have or the projection leaves out
+    private final int[] fields;
+    // How many fields a line needs, as many as the header has
+    private final int fieldCount;
+    // The header as read from the file, before any projection
+    private final CsvHeader file;
+
+    private CsvHeader(int[] fields, int fieldCount, CsvHeader file) {
+        this.fields = fields;
+        this.fieldCount = fieldCount;
+        this.file = file == null ? this : file;
+    }
+
+    public static CsvHeader parse(String headerLine) {
+        String[] names = headerLine.split(",", -1);
+        int[] fields = new int[SalesColumn.values().length];
+        Arrays.fill(fields, NOT_READ);
+        boolean known = false;
+        for (int i = 0; i < names.length; i++) {
+            SalesColumn column = SalesColumn.byHeaderName(names[i]);
+            if (column != null && fields[column.ordinal()] == NOT_READ) {
+                fields[column.ordinal()] = i;
+                known = true;
+            }
+        }
+        return known ? new CsvHeader(fields, names.length, null) : STANDARD;
+    }
+
+    // The header line of a .csv or .csv.gz, STANDARD for an empty file
+    public static CsvHeader read(Path csvPath) throws IOException {
+        try (BufferedReader reader = GzipCsvReader.isGzip(csvPath)
+                ? new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(csvPath)), StandardCharsets.UTF_8))
+                : Files.newBufferedReader(csvPath, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            return line == null ? STANDARD : parse(line);
+        }
+    }
+
+    // Only the given columns are read. Every one of them has to be in the file
+    public CsvHeader project(Set<SalesColumn> columns) {
+        int[] projectedFields = new int[fields.length];
+        Arrays.fill(projectedFields, NOT_READ);
+        for (SalesColumn column : columns) {
+            if (fields[column.ordinal()] == NOT_READ) {
+                throw new CsvParsingException("CsvParsingError: The CSV header has no '" + column.headerName() + "' column");
+            }
+            projectedFields[column.ordinal()] = fields[column.ordinal()];
+        }
+        return Arrays.equals(projectedFields, file.fields) ? file : new CsvHeader(projectedFields, fieldCount, file);
+    }
+
+    // Every column, as rows that are kept or written out need
+    public CsvHeader projectAll() {
+        return project(SalesColumn.ALL);
+    }
+
+    public boolean reads(SalesColumn column) {
+        return fields[column.ordinal()] != NOT_READ;
+    }
+
+    // Position of the column in a line, -1 when it isn't read
+    public int field(SalesColumn column) {
+        return fields[column.ordinal()];
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    // Every column the file has, this header if the projection left none out
+    public CsvHeader fileHeader() {
+        return file;
+    }
+
+    private static CsvHeader standard() {
+        int[] fields = new int[SalesColumn.values().length];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = i;
+        }
+        return new CsvHeader(fields, fields.length, null);
+    }
+}
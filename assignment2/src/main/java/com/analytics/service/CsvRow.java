@@ -0,0 +1,221 @@
+package com.analytics.service;
+
+import com.analytics.util.IsoDates;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+
+// Cursor over one line of a mapped CSV, handed out by MappedCsvParser and reused for every row
+// Fields are kept as trimmed byte ranges and only decoded when asked for, nothing here allocates for a clean row
+public final class CsvRow {
+
+    // Returned by the number decoders when a field isn't in the plain form they handle
+    public static final long NOT_DECODED = Long.MIN_VALUE;
+
+    private static final int MAX_FIELDS = 64;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private final int[] starts = new int[MAX_FIELDS];
+    private final int[] ends = new int[MAX_FIELDS];
+    private final StringCache strings = new StringCache();
+    private ByteBuffer buffer;
+    private int lineStart;
+    private int lineEnd;
+    private int fieldCount;
+    private boolean ascii;
+
+    void reset(ByteBuffer buffer, int lineStart, int lineEnd, boolean ascii) {
+        this.buffer = buffer;
+        this.lineStart = lineStart;
+        this.lineEnd = lineEnd;
+        this.ascii = ascii;
+        this.fieldCount = 0;
+    }
+
+    // Returns false once there are more fields than the cursor tracks, the row then has to take the String path
+    boolean addField(int start, int end) {
+        if (fieldCount == MAX_FIELDS) {
+            return false;
+        }
+        // Same as String.trim, anything up to and including a space
+        while (start < end && (buffer.get(start) & 0xFF) <= ' ') start++;
+        while (end > start && (buffer.get(end - 1) & 0xFF) <= ' ') end--;
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+        return true;
+    }
+
+    void markUntracked() {
+        fieldCount = -1;
+    }
+
+    // -1 when the line had too many fields to track
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public boolean isAscii() {
+        return ascii;
+    }
+
+    public int length(int field) {
+        return ends[field] - starts[field];
+    }
+
+    // The whole line as Files.lines would have returned it
+    public String line() {
+        ByteBuffer slice = buffer.slice(lineStart, lineEnd - lineStart);
+        try {
+            CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(slice);
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Trimmed field text, repeated values come back as the same String instance
+    public String string(int field) {
+        return strings.get(buffer, starts[field], ends[field]);
+    }
+
+    // Optional sign and up to 18 digits, so it can't overflow, otherwise NOT_DECODED
+    public long parseLong(int field) {
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        int digits = end - i;
+        if (digits == 0 || digits > 18) {
+            return NOT_DECODED;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int d = buffer.get(i) - '0';
+            if (d < 0 || d > 9) {
+                return NOT_DECODED;
+            }
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    // Same as parseLong but NOT_DECODED for anything outside the int range
+    public long parseInt(int field) {
+        long value = parseLong(field);
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? value : NOT_DECODED;
+    }
+
+    // Plain decimals like 12, -3.5 or .25 with at most 15 digits, otherwise NaN
+    // With a mantissa below 2^53 and a power of ten that is exact as a double, one division is correctly rounded,
+    // so this gives the same double as Double.parseDouble
+    public double parseDouble(int field) {
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            int d = b - '0';
+            if (d < 0 || d > 9 || ++digits > 15) {
+                return Double.NaN;
+            }
+            mantissa = mantissa * 10 + d;
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    // yyyy-MM-dd only, IsoDates.INVALID for anything else including dates that don't exist
+    public int parseEpochDay(int field) {
+        int i = starts[field];
+        if (length(field) != 10 || buffer.get(i + 4) != '-' || buffer.get(i + 7) != '-') {
+            return IsoDates.INVALID;
+        }
+        int year = digits(i, 4);
+        int month = digits(i + 5, 2);
+        int day = digits(i + 8, 2);
+        return IsoDates.isValid(year, month, day) ? IsoDates.epochDay(year, month, day) : IsoDates.INVALID;
+    }
+
+    private int digits(int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = buffer.get(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    // Small open-addressing table from field bytes to String, so a column with a handful of distinct
+    // values doesn't allocate a new String per row. Once full it just stops caching
+    private static final class StringCache {
+        private static final int SIZE = 1024;
+        private final byte[][] keys = new byte[SIZE][];
+        private final String[] values = new String[SIZE];
+        private int count;
+
+        String get(ByteBuffer buffer, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+            while (keys[slot] != null) {
+                if (matches(keys[slot], buffer, start, end)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & (SIZE - 1);
+            }
+
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            if (count < SIZE / 2) {
+                keys[slot] = bytes;
+                values[slot] = value;
+                count++;
+            }
+            return value;
+        }
+
+        private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+            if (key.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length; i++) {
+                if (key[i] != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -2,35 +2,92 @@ package com.analytics.service;
 
 import com.analytics.exception.CsvParsingException;
 import com.analytics.model.RawSale;
+import com.analytics.model.SalesColumn;
 
 public class DataIngestionService {
 
-    private static final String CSV_DELIMITER = ",";
+    private static final char CSV_DELIMITER = ',';
+    private static final SalesColumn[] COLUMNS = SalesColumn.values();
+
+    private final CsvHeader header;
+    // Column read from each field of a line, null for the fields that are skipped
+    private final SalesColumn[] columnAt;
+    // Reads every column of the file, for the log lines of rejected rows
+    private final DataIngestionService fileParser;
+
+    public DataIngestionService() {
+        this(CsvHeader.STANDARD);
+    }
+
+    // Fields are found where the header puts them, and only the columns it reads are cut out and trimmed
+    public DataIngestionService(CsvHeader header) {
+        this.header = header;
+        int last = -1;
+        for (SalesColumn column : COLUMNS) {
+            last = Math.max(last, header.field(column));
+        }
+        this.columnAt = new SalesColumn[last + 1];
+        for (SalesColumn column : COLUMNS) {
+            if (header.reads(column)) {
+                columnAt[header.field(column)] = column;
+            }
+        }
+        this.fileParser = header.fileHeader() == header ? this : new DataIngestionService(header.fileHeader());
+    }
+
+    public CsvHeader header() {
+        return header;
+    }
 
     // Throws custom CsvParsingException here if there is any errors here
+    // Splits like String.split(",", -1) and trims like String.trim, columns that aren't read are left ""
     public RawSale parseLine(String line) {
         if (line == null || line.isBlank()) {
             throw new CsvParsingException("CsvParsingError: Line here is either null or empty and couldn't be parsed!");
         }
 
-        String[] parts = line.split(CSV_DELIMITER, -1);
+        String[] values = new String[COLUMNS.length];
+        int fields = 0;
+        int start = 0;
+        while (true) {
+            int end = line.indexOf(CSV_DELIMITER, start);
+            if (fields < columnAt.length && columnAt[fields] != null) {
+                values[columnAt[fields].ordinal()] = line.substring(start, end < 0 ? line.length() : end).trim();
+            }
+            fields++;
+            if (end < 0) {
+                break;
+            }
+            start = end + 1;
+        }
 
-        // We expect 10 columns based on the schema
-        if (parts.length < 10) {
-            throw new CsvParsingException("CsvParsingError: Based on sample CSV schema generated, 10 columns are required: Expected 10 but found : " + parts.length);
+        // We expect as many columns as the header has, 10 based on the schema
+        if (fields < header.fieldCount()) {
+            throw new CsvParsingException("CsvParsingError: Based on sample CSV schema generated, " + header.fieldCount()
+                    + " columns are required: Expected " + header.fieldCount() + " but found : " + fields);
         }
 
         return new RawSale(
-                parts[0].trim(),
-                parts[1].trim(),
-                parts[2].trim(),
-                parts[3].trim(),
-                parts[4].trim(),
-                parts[5].trim(),
-                parts[6].trim(),
-                parts[7].trim(),
-                parts[8].trim(),
-                parts[9].trim()
+                value(values, SalesColumn.TRANSACTION_ID),
+                value(values, SalesColumn.DATE),
+                value(values, SalesColumn.CATEGORY),
+                value(values, SalesColumn.PRODUCT_ID),
+                value(values, SalesColumn.PRODUCT),
+                value(values, SalesColumn.REGION),
+                value(values, SalesColumn.PAYMENT_ID),
+                value(values, SalesColumn.PAYMENT_METHOD),
+                value(values, SalesColumn.QUANTITY),
+                value(values, SalesColumn.UNIT_PRICE)
         );
     }
+
+    // How a row that failed validation is written to the ingestion log: with every column, also the skipped ones
+    public String describe(RawSale raw, String line) {
+        return fileParser == this ? raw.toString() : fileParser.parseLine(line).toString();
+    }
+
+    private static String value(String[] values, SalesColumn column) {
+        String value = values[column.ordinal()];
+        return value == null ? "" : value;
+    }
 }
@@ -0,0 +1,137 @@
+package com.analytics.service;
+
+import com.analytics.model.MemoryBudget;
+import com.analytics.model.RawSale;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+
+// Raw rows waiting for imputation, held in memory up to the budget and written to a temporary file past it
+// Rows come back in the order they were added, each with the position in the input it was added at. Nothing touches
+// the disk while they fit
+final class DeferredRows implements Closeable {
+
+    // A RawSale is ten short Strings
+    private static final int BYTES_PER_ROW = 512;
+
+    private final int maxInMemory;
+    private final Path spillDirectory;
+    private final List<RawSale> rows = new ArrayList<>();
+    private long[] positions = new long[16];
+    private Path spillFile;
+    private DataOutputStream spill;
+    private long spilled;
+
+    DeferredRows(MemoryBudget budget) {
+        this.maxInMemory = budget.maxEntries(BYTES_PER_ROW);
+        this.spillDirectory = budget.spillDirectory();
+    }
+
+    // A row that only needs to come back in order, its position is its place among these
+    void add(RawSale raw) {
+        add(raw, size());
+    }
+
+    void add(RawSale raw, long position) {
+        if (rows.size() < maxInMemory) {
+            if (rows.size() == positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[rows.size()] = position;
+            rows.add(raw);
+            return;
+        }
+        try {
+            if (spill == null) {
+                spillFile = Files.createTempFile(spillDirectory, "deferred-rows", ".bin");
+                spill = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile), 1 << 16));
+            }
+            spill.writeLong(position);
+            write(spill, raw);
+            spilled++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Adds the rows of a later part of the input after these and frees its spill file, their positions start at offset
+    void addAll(DeferredRows later, long offset) throws IOException {
+        later.forEach((raw, position) -> add(raw, offset + position));
+        later.close();
+    }
+
+    long size() {
+        return rows.size() + spilled;
+    }
+
+    void forEach(Consumer<RawSale> action) throws IOException {
+        forEach((raw, position) -> action.accept(raw));
+    }
+
+    void forEach(ObjLongConsumer<RawSale> action) throws IOException {
+        for (int i = 0; i < rows.size(); i++) {
+            action.accept(rows.get(i), positions[i]);
+        }
+        if (spill == null) {
+            return;
+        }
+        spill.flush();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile), 1 << 16))) {
+            for (long i = 0; i < spilled; i++) {
+                long position = in.readLong();
+                action.accept(read(in), position);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        rows.clear();
+        if (spill != null) {
+            spill.close();
+            Files.deleteIfExists(spillFile);
+            spill = null;
+            spilled = 0;
+        }
+    }
+
+    static void write(DataOutputStream out, RawSale raw) throws IOException {
+        for (String field : new String[]{raw.transactionId(), raw.date(), raw.category(), raw.productId(), raw.product(),
+                raw.region(), raw.paymentId(), raw.paymentMethod(), raw.quantity(), raw.unitPrice()}) {
+            writeString(out, field);
+        }
+    }
+
+    static RawSale read(DataInputStream in) throws IOException {
+        return new RawSale(readString(in), readString(in), readString(in), readString(in), readString(in),
+                readString(in), readString(in), readString(in), readString(in), readString(in));
+    }
+
+    // Length, then the UTF-8 bytes. writeUTF can't take more than 64 KB and nothing limits how long a CSV field is
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,290 @@
+package com.analytics.service;
+
+import com.analytics.service.LineBlocks.Block;
+import com.analytics.util.PipelineMetrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+// Reads a gzip-compressed CSV (.csv.gz) straight from the compressed file, nothing is written out to disk
+// A file of one gzip member is inflated on a thread of its own, which hands blocks of whole lines through a small
+// bounded queue to parser tasks on the fork-join pool, so inflating and parsing overlap. A file of several members
+// (concatenated .gz files, bgzip output) is cut at member boundaries instead and every range is inflated and parsed
+// as a task of its own. Either way the chunks are appended in file order like in the parallel mode, and the rows
+// go through the same byte parser as the mapped modes, so rows, stats and both logs match the uncompressed file
+final class GzipCsvReader {
+
+    private static final int QUEUED_BLOCKS = 4;
+    // How far past a split point to look for the start of a member
+    private static final int SEARCH_WINDOW = 1 << 18;
+
+    private final ImputationService imputer;
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    GzipCsvReader(ImputationService imputer) {
+        this.imputer = imputer;
+    }
+
+    static boolean isGzip(Path path) {
+        return path.getFileName().toString().endsWith(".gz");
+    }
+
+    // Every row after the header, handled in the calling thread, for callers that already read several files at once
+    static void forEachRow(Path gzPath, Consumer<CsvRow> handler) throws IOException {
+        PipelineMetrics.bytesRead(Files.size(gzPath));
+        MappedCsvParser csv = new MappedCsvParser();
+        try (GzipMemberReader in = new GzipMemberReader(gzPath, 0, Long.MAX_VALUE)) {
+            LineBlocks blocks = new LineBlocks(in);
+            boolean first = true;
+            for (Block block = blocks.next(); block != null; block = blocks.next()) {
+                csv.forEachRow(block.buffer(), block.length(), first, handler);
+                first = false;
+            }
+            csv.forEachRow(ByteBuffer.wrap(blocks.remainder()), blocks.remainder().length, first, handler);
+        }
+    }
+
+    // A collector holding every row of the file, ready to be finished like the single-pass modes
+    SinglePassCollector collect(Path gzPath) throws IOException {
+        PipelineMetrics.bytesRead(Files.size(gzPath));
+        SinglePassCollector collector = new SinglePassCollector(imputer);
+        long[] starts = memberStarts(gzPath, Math.max(2, pool.getParallelism() * 2));
+        if (starts.length > 1) {
+            collectRanges(gzPath, starts, collector);
+        } else {
+            collectPipelined(gzPath, collector);
+        }
+        return collector;
+    }
+
+    private void collectPipelined(Path gzPath, SinglePassCollector collector) throws IOException {
+        Inflating inflating = new Inflating(gzPath);
+        Thread thread = Thread.ofPlatform().name("gzip-inflater").daemon().start(inflating);
+        // Parsed blocks waiting to be appended, bounded so a slow consumer doesn't let blocks pile up
+        Deque<ForkJoinTask<SinglePassCollector>> parsing = new ArrayDeque<>();
+        try {
+            boolean first = true;
+            for (Block block = inflating.take(); block != Inflating.END; block = inflating.take()) {
+                Block parsed = block;
+                boolean skipHeader = first;
+                parsing.add(pool.submit(() -> parse(parsed, skipHeader)));
+                first = false;
+                if (parsing.size() > pool.getParallelism()) {
+                    collector.append(parsing.poll().join());
+                }
+            }
+            while (!parsing.isEmpty()) {
+                collector.append(parsing.poll().join());
+            }
+            inflating.rethrow();
+        } finally {
+            thread.interrupt();
+        }
+    }
+
+    private SinglePassCollector parse(Block block, boolean skipHeader) {
+        SinglePassCollector chunk = SinglePassCollector.forChunk(imputer);
+        new MappedCsvParser().forEachRow(block.buffer(), block.length(), skipHeader, chunk::acceptRow);
+        return chunk;
+    }
+
+    // Inflates the whole file into blocks of whole lines, the last block being the unterminated last line if any
+    private static final class Inflating implements Runnable {
+        static final Block END = new Block(new byte[0], 0);
+
+        private final Path gzPath;
+        private final BlockingQueue<Block> blocks = new ArrayBlockingQueue<>(QUEUED_BLOCKS);
+        private volatile Exception failure;
+
+        Inflating(Path gzPath) {
+            this.gzPath = gzPath;
+        }
+
+        @Override
+        public void run() {
+            try (GzipMemberReader in = new GzipMemberReader(gzPath, 0, Long.MAX_VALUE)) {
+                LineBlocks lineBlocks = new LineBlocks(in);
+                for (Block block = lineBlocks.next(); block != null; block = lineBlocks.next()) {
+                    blocks.put(block);
+                }
+                byte[] remainder = lineBlocks.remainder();
+                if (remainder.length > 0) {
+                    blocks.put(new Block(remainder, remainder.length));
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                // The reading side gave up
+                return;
+            }
+            try {
+                blocks.put(END);
+            } catch (InterruptedException e) {
+                // Same here
+            }
+        }
+
+        Block take() throws InterruptedIOException {
+            try {
+                return blocks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while inflating");
+            }
+        }
+
+        void rethrow() throws IOException {
+            if (failure instanceof IOException io) {
+                throw io;
+            }
+            if (failure instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+        }
+    }
+
+    // Ranges are read at the same time. One is only used if it starts where the one before it ended, anything else
+    // began at a false match inside compressed data, and a gap that no range starts at is read here
+    private void collectRanges(Path gzPath, long[] starts, SinglePassCollector collector) throws IOException {
+        List<ForkJoinTask<Range>> tasks = new ArrayList<>();
+        for (int i = 0; i < starts.length; i++) {
+            long start = starts[i];
+            long limit = i + 1 < starts.length ? starts[i + 1] : Long.MAX_VALUE;
+            tasks.add(pool.submit(() -> {
+                try {
+                    return readRange(gzPath, start, limit);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+
+        MappedCsvParser csv = new MappedCsvParser();
+        // Bytes after the last line break so far, the start of a line that goes on in the next range
+        byte[] tail = new byte[0];
+        boolean headerPending = true;
+        long position = 0;
+        int next = 0;
+        while (true) {
+            while (next < starts.length && starts[next] < position) {
+                tasks.get(next++).cancel(true);
+            }
+            Range range;
+            if (next < starts.length && starts[next] == position) {
+                range = join(tasks.get(next++));
+            } else {
+                range = readRange(gzPath, position, next < starts.length ? starts[next] : Long.MAX_VALUE);
+            }
+
+            if (range.headEndsLine()) {
+                byte[] line = concat(tail, range.head());
+                if (line.length > 0) {
+                    csv.forEachRow(ByteBuffer.wrap(line), line.length, headerPending, collector::acceptRow);
+                    headerPending = false;
+                }
+                collector.append(range.chunk());
+                tail = range.tail();
+            } else {
+                tail = concat(tail, range.head());
+            }
+            position = range.end();
+            if (range.endOfData()) {
+                break;
+            }
+        }
+        if (tail.length > 0) {
+            csv.forEachRow(ByteBuffer.wrap(tail), tail.length, headerPending, collector::acceptRow);
+        }
+        for (int i = next; i < tasks.size(); i++) {
+            tasks.get(i).cancel(true);
+        }
+    }
+
+    // head is the bytes up to and including the first \n, which finish a line the range before started.
+    // When the range has no \n at all, head is all of it and headEndsLine is false
+    private record Range(byte[] head, boolean headEndsLine, SinglePassCollector chunk, byte[] tail, long end,
+                         boolean endOfData) {}
+
+    // Inflates the members from start on up to the first member end at or past limit and parses the whole lines
+    private Range readRange(Path gzPath, long start, long limit) throws IOException {
+        SinglePassCollector chunk = SinglePassCollector.forChunk(imputer);
+        MappedCsvParser csv = new MappedCsvParser();
+        try (GzipMemberReader in = new GzipMemberReader(gzPath, start, limit)) {
+            LineBlocks blocks = new LineBlocks(in);
+            byte[] head = null;
+            for (Block block = blocks.next(); block != null; block = blocks.next()) {
+                int from = 0;
+                if (head == null) {
+                    from = indexOf(block.bytes(), (byte) '\n') + 1;
+                    head = Arrays.copyOf(block.bytes(), from);
+                }
+                ByteBuffer lines = ByteBuffer.wrap(block.bytes()).slice(from, block.length() - from);
+                csv.forEachRow(lines, block.length() - from, false, chunk::acceptRow);
+            }
+            long end = in.position();
+            if (head == null) {
+                return new Range(blocks.remainder(), false, chunk, new byte[0], end, end < limit);
+            }
+            return new Range(head, true, chunk, blocks.remainder(), end, end < limit);
+        }
+    }
+
+    // 0 and, past every size/parts bytes, the first offset that holds what looks like a gzip member header
+    static long[] memberStarts(Path gzPath, int parts) throws IOException {
+        try (FileChannel channel = FileChannel.open(gzPath, StandardOpenOption.READ)) {
+            long step = channel.size() / parts;
+            byte[] window = new byte[SEARCH_WINDOW];
+            List<Long> starts = new ArrayList<>(List.of(0L));
+            for (int part = 1; part < parts && step > 0; part++) {
+                long from = Math.max(part * step, starts.getLast() + 1);
+                int read = Math.max(0, channel.read(ByteBuffer.wrap(window), from));
+                for (int i = 0; i < read; i++) {
+                    if (GzipMemberReader.isMemberHeader(window, i, read - i)) {
+                        starts.add(from + i);
+                        break;
+                    }
+                }
+            }
+            return starts.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    private static Range join(ForkJoinTask<Range> task) throws IOException {
+        try {
+            return task.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
+
+    private static int indexOf(byte[] bytes, byte target) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,195 @@
+package com.analytics.service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// The gzip members of a file from a given offset on, inflated one after the other
+// Unlike GZIPInputStream it knows the compressed offset each member ended at, so a file of several members can be
+// shared out between readers. read() returns -1 at the first member end at or past the limit, at the end of the file,
+// or where the bytes after a member don't start another one (GZIPInputStream ignores trailing garbage the same way)
+final class GzipMemberReader extends InputStream {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final FileChannel channel;
+    private final long limit;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    // Compressed bytes input[inputStart, inputEnd) are read from the file but not used yet
+    private final byte[] input = new byte[1 << 16];
+    private int inputStart;
+    private int inputEnd;
+    // File offset of input[inputEnd]
+    private long inputPosition;
+    private boolean inMember;
+    private boolean ended;
+    private int members;
+    private long memberSize;
+
+    GzipMemberReader(Path gzPath, long start, long limit) throws IOException {
+        this.channel = FileChannel.open(gzPath, StandardOpenOption.READ);
+        this.limit = limit;
+        this.inputPosition = start;
+    }
+
+    // File offset of the next compressed byte, just after the last member once read() has returned -1
+    long position() {
+        return inputPosition - (inputEnd - inputStart);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (!ended) {
+            if (!inMember && !startMember()) {
+                ended = true;
+                break;
+            }
+
+            int inflated;
+            try {
+                inflated = inflater.inflate(buffer, offset, length);
+            } catch (DataFormatException e) {
+                throw new ZipException("Corrupt gzip data before byte " + inputPosition + ": " + e.getMessage());
+            }
+            if (inflated > 0) {
+                crc.update(buffer, offset, inflated);
+                memberSize += inflated;
+                return inflated;
+            }
+
+            if (inflater.finished()) {
+                inputStart = inputEnd - inflater.getRemaining();
+                finishMember();
+            } else if (inflater.needsDictionary()) {
+                throw new ZipException("Gzip member needs a preset dictionary");
+            } else if (inflater.needsInput()) {
+                inputStart = inputEnd;
+                if (!fill()) {
+                    throw new EOFException("Gzip member cut short at byte " + inputPosition);
+                }
+                inflater.setInput(input, inputStart, inputEnd - inputStart);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    // Reads the header of the next member, false when there isn't one to read
+    private boolean startMember() throws IOException {
+        if (members > 0 && position() >= limit) {
+            return false;
+        }
+        while (inputEnd - inputStart < 10 && fill()) {
+            // the fixed part of the header
+        }
+        if (!isMemberHeader(input, inputStart, inputEnd - inputStart)) {
+            if (members == 0) {
+                throw new ZipException("Not in gzip format at byte " + position());
+            }
+            return false;
+        }
+
+        int flags = input[inputStart + 3] & 0xff;
+        inputStart += 10;
+        if ((flags & FEXTRA) != 0) {
+            skip(readByte() | readByte() << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            while (readByte() != 0) {
+                // file name
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readByte() != 0) {
+                // comment
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skip(2);
+        }
+
+        inflater.reset();
+        inflater.setInput(input, inputStart, inputEnd - inputStart);
+        crc.reset();
+        memberSize = 0;
+        inMember = true;
+        return true;
+    }
+
+    // ID1 ID2, deflate as the method and no reserved flag bits
+    static boolean isMemberHeader(byte[] bytes, int from, int available) {
+        return available >= 10
+                && (bytes[from] & 0xff) == 0x1f && (bytes[from + 1] & 0xff) == 0x8b
+                && bytes[from + 2] == 8 && (bytes[from + 3] & 0xe0) == 0;
+    }
+
+    // CRC-32 and length modulo 2^32 of what was inflated, both little-endian
+    private void finishMember() throws IOException {
+        long expectedCrc = readInt();
+        long expectedSize = readInt();
+        if (expectedCrc != crc.getValue() || expectedSize != (memberSize & 0xffffffffL)) {
+            throw new ZipException("Corrupt gzip member ending at byte " + position() + ": CRC or length mismatch");
+        }
+        inMember = false;
+        members++;
+    }
+
+    private long readInt() throws IOException {
+        return readByte() | readByte() << 8 | readByte() << 16 | (long) readByte() << 24;
+    }
+
+    private int readByte() throws IOException {
+        if (inputStart == inputEnd && !fill()) {
+            throw new EOFException("Gzip member cut short at byte " + inputPosition);
+        }
+        return input[inputStart++] & 0xff;
+    }
+
+    private void skip(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readByte();
+        }
+    }
+
+    // Moves the unused bytes to the front and reads more after them, false at the end of the file
+    private boolean fill() throws IOException {
+        if (inputStart > 0) {
+            System.arraycopy(input, inputStart, input, 0, inputEnd - inputStart);
+            inputEnd -= inputStart;
+            inputStart = 0;
+        }
+        int read = channel.read(ByteBuffer.wrap(input, inputEnd, input.length - inputEnd), inputPosition);
+        if (read <= 0) {
+            return false;
+        }
+        inputEnd += read;
+        inputPosition += read;
+        return true;
+    }
+}
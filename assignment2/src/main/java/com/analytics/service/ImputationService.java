@@ -5,7 +5,11 @@ import com.analytics.exception.DataValidationException;
 import com.analytics.model.GlobalStats;
 import com.analytics.model.RawSale;
 import com.analytics.model.Sale;
+import com.analytics.model.SalesColumn;
 import com.analytics.util.AnalyticsLogger;
+import com.analytics.util.IsoDates;
+import com.analytics.util.NumericText;
+import com.analytics.util.PipelineMetrics;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -17,98 +21,166 @@ import java.util.stream.Stream;
 
 public class ImputationService {
 
-    private final DataIngestionService parser = new DataIngestionService();
+    private final DataIngestionService parser;
+    // Where the header puts each column, -1 for the ones that aren't read. Those are neither decoded nor imputed,
+    // rows get "" for their text, 0 for quantity and price and -1 for the IDs
+    private final int categoryField;
+    private final int productIdField;
+    private final int productField;
+    private final int regionField;
+    private final int paymentIdField;
+    private final int paymentMethodField;
+    private final int quantityField;
+    private final int priceField;
+    private final int transactionIdField;
+    private final int dateField;
+    private final int fieldCount;
+
+    public ImputationService() {
+        this(CsvHeader.STANDARD);
+    }
+
+    public ImputationService(CsvHeader header) {
+        this.parser = new DataIngestionService(header);
+        this.transactionIdField = header.field(SalesColumn.TRANSACTION_ID);
+        this.dateField = header.field(SalesColumn.DATE);
+        this.categoryField = header.field(SalesColumn.CATEGORY);
+        this.productIdField = header.field(SalesColumn.PRODUCT_ID);
+        this.productField = header.field(SalesColumn.PRODUCT);
+        this.regionField = header.field(SalesColumn.REGION);
+        this.paymentIdField = header.field(SalesColumn.PAYMENT_ID);
+        this.paymentMethodField = header.field(SalesColumn.PAYMENT_METHOD);
+        this.quantityField = header.field(SalesColumn.QUANTITY);
+        this.priceField = header.field(SalesColumn.UNIT_PRICE);
+        this.fieldCount = header.fieldCount();
+        if (transactionIdField < 0 || dateField < 0) {
+            throw new CsvParsingException("CsvParsingError: Rows are validated on their Transaction ID and Date, "
+                    + "the CSV header needs both columns");
+        }
+    }
+
+    // Parses lines with the same header and projection
+    public DataIngestionService parser() {
+        return parser;
+    }
 
     // Calculates global mean and mode for imputation in one pass
     // Handles errros by simply skipping over them
     public GlobalStats calculateStats(Path csvPath) throws IOException {
         // Skip the header of CSV file
+        PipelineMetrics.bytesRead(Files.size(csvPath));
         try (Stream<String> lines = Files.lines(csvPath).skip(1)) {
 
-            DoubleSummaryStatistics priceStats = new DoubleSummaryStatistics();
-            Map<String, Long> categoryFreq = new HashMap<>();
-            Map<String, Long> regionFreq = new HashMap<>();
+            StatsAccumulator accumulator = new StatsAccumulator();
 
             lines.forEach(line -> {
                 try {
-                    RawSale raw = parser.parseLine(line);
-                    // Price
-                    if (isValidDouble(raw.unitPrice())) {
-                        priceStats.accept(Double.parseDouble(raw.unitPrice()));
-                    }
-                    
-                    // Category
-                    if (!raw.category().isBlank()) {
-                        categoryFreq.merge(raw.category(), 1L, Long::sum);
-                    }
-                    
-                    // Region
-                    if (!raw.region().isBlank()) {
-                        regionFreq.merge(raw.region(), 1L, Long::sum);
-                    }
+                    accumulator.accept(parser.parseLine(line));
                 } catch (CsvParsingException e) {
                     // No need to log here because Pass 2 will log to the relevant log file
                 }
             });
 
-            double meanPrice = priceStats.getCount() > 0 ? priceStats.getAverage() : 0.0;
-            String modeCategory = getMode(categoryFreq);
-            String modeRegion = getMode(regionFreq);
-
-            return new GlobalStats(meanPrice, modeCategory, modeRegion, "Cash", 1);
+            return accumulator.toGlobalStats();
         }
     }
-    
 
-    public Sale imputeAndMap(RawSale raw, GlobalStats stats) {
+    // Maps a row that has every field it needs, or returns null when it would need the global stats
+    // Throws the same DataValidationException as imputeAndMap for a bad ID or date, so a row can be
+    // rejected or mapped before the stats exist, parsing each number only once
+    public Sale mapIfComplete(RawSale raw) {
+        long txId = parseTransactionId(raw);
+        int date = parseEpochDay(raw);
 
-        long txId;
-        try {
-            txId = Long.parseLong(raw.transactionId());
-        } catch (NumberFormatException e) {
-            throw new DataValidationException("Invalid Transaction ID: " + raw.transactionId());
+        if ((categoryField >= 0 && raw.category().isBlank()) || (regionField >= 0 && raw.region().isBlank())) {
+            return null;
         }
 
-        LocalDate date;
-        try {
-            date = LocalDate.parse(raw.date());
-        } catch (DateTimeParseException e) {
-            throw new DataValidationException("Invalid ISO Date format: " + raw.date());
+        double price = priceField < 0 ? 0 : parsePrice(raw.unitPrice());
+        long qty = quantityField < 0 ? 0 : NumericText.parseInt(raw.quantity());
+        if ((Double.isNaN(price) && !isValidDouble(raw.unitPrice())) || qty == NumericText.NOT_A_NUMBER) {
+            return null;
         }
 
+        return new Sale(
+                txId, date, raw.category(), productIdField < 0 ? -1 : parseLongSafe(raw.productId(), -1), raw.product(),
+                raw.region(), paymentIdField < 0 ? -1 : parseLongSafe(raw.paymentId(), -1), raw.paymentMethod(),
+                (int) qty, price
+        );
+    }
+
+    // Byte-level version of mapIfComplete for MappedCsvParser rows
+    // Only handles plain ASCII rows whose every field decodes on the fast path, anything else returns null
+    // and has to go through parseLine and the String checks so odd values behave exactly as before
+    public Sale mapIfSimple(CsvRow row) {
+        if (row.fieldCount() < fieldCount || !row.isAscii()) {
+            return null;
+        }
+
+        long txId = row.parseLong(transactionIdField);
+        int date = row.parseEpochDay(dateField);
+        long prodId = productIdField < 0 ? -1 : row.parseLong(productIdField);
+        long payId = paymentIdField < 0 ? -1 : row.parseLong(paymentIdField);
+        long qty = quantityField < 0 ? 0 : row.parseInt(quantityField);
+        double price = priceField < 0 ? 0 : row.parseDouble(priceField);
+        if (txId == CsvRow.NOT_DECODED || date == IsoDates.INVALID || prodId == CsvRow.NOT_DECODED || payId == CsvRow.NOT_DECODED
+                || qty == CsvRow.NOT_DECODED || Double.isNaN(price)
+                || (categoryField >= 0 && row.length(categoryField) == 0) || (regionField >= 0 && row.length(regionField) == 0)) {
+            return null;
+        }
+
+        return new Sale(
+                txId, date, string(row, categoryField), prodId, string(row, productField),
+                string(row, regionField), payId, string(row, paymentMethodField), (int) qty, price
+        );
+    }
+
+    private static String string(CsvRow row, int field) {
+        return field < 0 ? "" : row.string(field);
+    }
+
+    public Sale imputeAndMap(RawSale raw, GlobalStats stats) {
+        return imputeAndMap(raw, stats, true);
+    }
+
+    // logCleaning = false for a row that is imputed again with newer stats and was already logged once
+    public Sale imputeAndMap(RawSale raw, GlobalStats stats, boolean logCleaning) {
+
+        long txId = parseTransactionId(raw);
+        int date = parseEpochDay(raw);
+
         // Impute categories
         String finalCategory = raw.category();
-        if (finalCategory.isBlank()) {
+        if (categoryField >= 0 && finalCategory.isBlank()) {
             finalCategory = stats.modeCategory();
-            AnalyticsLogger.logDataCleaning(String.valueOf(txId), "Category", "MISSING", finalCategory);
+            if (logCleaning) cleaned(txId, "Category", "MISSING", finalCategory);
         }
 
         // Impute regions
         String finalRegion = raw.region();
-        if (finalRegion.isBlank()) {
+        if (regionField >= 0 && finalRegion.isBlank()) {
             finalRegion = stats.modeRegion();
-            AnalyticsLogger.logDataCleaning(String.valueOf(txId), "Region", "MISSING", finalRegion);
+            if (logCleaning) cleaned(txId, "Region", "MISSING", finalRegion);
         }
 
-        // Impute prices
-        double finalPrice;
-        if (isValidDouble(raw.unitPrice())) {
-            finalPrice = Double.parseDouble(raw.unitPrice());
-        } else {
+        // Impute prices, the grammar check only runs for text that didn't decode to a number
+        double finalPrice = priceField < 0 ? 0 : parsePrice(raw.unitPrice());
+        if (Double.isNaN(finalPrice) && !isValidDouble(raw.unitPrice())) {
             finalPrice = stats.meanPrice();
-            AnalyticsLogger.logDataCleaning(String.valueOf(txId), "UnitPrice", raw.unitPrice(), String.format("%.2f", finalPrice));
+            if (logCleaning) cleaned(txId, "UnitPrice", raw.unitPrice(), String.format("%.2f", finalPrice));
         }
 
         // Impute quantity
         int finalQty = 1;
-        try {
-            finalQty = Integer.parseInt(raw.quantity());
-        } catch (NumberFormatException e) {
-            AnalyticsLogger.logDataCleaning(String.valueOf(txId), "Quantity", raw.quantity(), "1 (Default)");
+        long qty = quantityField < 0 ? 0 : NumericText.parseInt(raw.quantity());
+        if (qty != NumericText.NOT_A_NUMBER) {
+            finalQty = (int) qty;
+        } else {
+            if (logCleaning) cleaned(txId, "Quantity", raw.quantity(), "1 (Default)");
         }
 
-        long prodId = parseLongSafe(raw.productId(), -1);
-        long payId = parseLongSafe(raw.paymentId(), -1);
+        long prodId = productIdField < 0 ? -1 : parseLongSafe(raw.productId(), -1);
+        long payId = paymentIdField < 0 ? -1 : parseLongSafe(raw.paymentId(), -1);
 
         return new Sale(
                 txId, date, finalCategory, prodId, raw.product(),
@@ -116,29 +188,45 @@ public class ImputationService {
         );
     }
 
-    // Simple validity check for double for cost column
-    private boolean isValidDouble(String str) {
-        if (str == null || str.isBlank()) return false;
-        try {
-            Double.parseDouble(str);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+    // Every imputed value is logged to DataCleaning.log and counted by field
+    private static void cleaned(long txId, String field, String original, String imputed) {
+        AnalyticsLogger.logDataCleaning(String.valueOf(txId), field, original, imputed);
+        PipelineMetrics.imputed(field);
+    }
+
+    private long parseTransactionId(RawSale raw) {
+        long txId = NumericText.parseLong(raw.transactionId());
+        if (txId == NumericText.NOT_A_NUMBER && !NumericText.isLong(raw.transactionId())) {
+            throw new DataValidationException("Invalid Transaction ID: " + raw.transactionId());
         }
+        return txId;
     }
 
-    private long parseLongSafe(String str, long defaultVal) {
+    // Well-formed dates are decoded directly, LocalDate.parse only sees the ones that are probably invalid
+    private int parseEpochDay(RawSale raw) {
+        int epochDay = IsoDates.parseEpochDay(raw.date());
+        if (epochDay != IsoDates.INVALID) {
+            return epochDay;
+        }
         try {
-            return Long.parseLong(str);
-        } catch (NumberFormatException e) {
-            return defaultVal;
+            return Math.toIntExact(LocalDate.parse(raw.date()).toEpochDay());
+        } catch (DateTimeParseException e) {
+            throw new DataValidationException("Invalid ISO Date format: " + raw.date());
         }
     }
 
-    private String getMode(Map<String, Long> freqMap) {
-        return freqMap.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElse("Unknown");
+    // Simple validity check for double for cost column
+    static boolean isValidDouble(String str) {
+        return NumericText.isDouble(str);
+    }
+
+    // NaN both for a price that has to be imputed and for the text "NaN", isValidDouble tells them apart
+    static double parsePrice(String str) {
+        return NumericText.parseDouble(str);
+    }
+
+    private long parseLongSafe(String str, long defaultVal) {
+        long value = NumericText.parseLong(str);
+        return value != NumericText.NOT_A_NUMBER || NumericText.isLong(str) ? value : defaultVal;
     }
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.analytics.service;
+
+// How processSalesData reads the CSV
+// TWO_PASS scans once for the stats and again to clean, SINGLE_PASS does both in one scan
+// MAPPED is a single pass over the memory-mapped file that decodes clean rows without building Strings
+// PARALLEL is the mapped pass split into line-aligned chunks on the common fork-join pool
+// PIPELINED reads the file on one thread while parser threads decode the blocks it has read so far
+public enum IngestionMode {
+    TWO_PASS,
+    SINGLE_PASS,
+    MAPPED,
+    PARALLEL,
+    PIPELINED
+}
@@ -0,0 +1,61 @@
+package com.analytics.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Cuts a stream into blocks that end just after a \n, growing a block when one line doesn't fit
+// Every block is a fresh array, so blocks can be handed to other threads while the next one is read
+final class LineBlocks {
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private final InputStream in;
+    private byte[] carry = new byte[0];
+    private boolean ended;
+
+    LineBlocks(InputStream in) {
+        this.in = in;
+    }
+
+    // null once the stream has ended, remainder() then has what came after the last \n
+    Block next() throws IOException {
+        byte[] block = Arrays.copyOf(carry, Math.max(BLOCK_SIZE, carry.length * 2));
+        int length = carry.length;
+        while (!ended) {
+            int read = in.readNBytes(block, length, block.length - length);
+            length += read;
+            ended = length < block.length;
+            int end = lastIndexOf(block, length, (byte) '\n') + 1;
+            if (end > 0) {
+                carry = Arrays.copyOfRange(block, end, length);
+                return new Block(block, end);
+            }
+            if (!ended) {
+                block = Arrays.copyOf(block, block.length * 2);
+            }
+        }
+        carry = Arrays.copyOf(block, length);
+        return null;
+    }
+
+    byte[] remainder() {
+        return carry;
+    }
+
+    private static int lastIndexOf(byte[] bytes, int length, byte target) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    record Block(byte[] bytes, int length) {
+        ByteBuffer buffer() {
+            return ByteBuffer.wrap(bytes, 0, length);
+        }
+    }
+}
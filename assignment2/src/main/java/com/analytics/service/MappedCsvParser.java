@@ -0,0 +1,251 @@
+package com.analytics.service;
+
+import com.analytics.exception.CsvParsingException;
+import com.analytics.util.PipelineMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Reads a CSV straight out of a memory-mapped file, no Strings are created unless a row asks for one
+// Line ends and commas are found eight bytes at a time with the usual SWAR zero-byte trick
+// Line splitting follows Files.lines: \n, \r\n and a lone \r all end a line, and a trailing line end adds no empty row
+public class MappedCsvParser {
+
+    // A single mapping can't go past 2 GB, big files are mapped in pieces that end on a line break
+    private static final long MAX_SEGMENT = 1L << 30;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+    private static final long NEWLINES = ONES * '\n';
+    private static final long RETURNS = ONES * '\r';
+    private static final long COMMAS = ONES * ',';
+
+    private final long maxSegment;
+
+    public MappedCsvParser() {
+        this(MAX_SEGMENT);
+    }
+
+    // Smaller segments are only useful for exercising the segment boundary handling
+    MappedCsvParser(long maxSegment) {
+        this.maxSegment = maxSegment;
+    }
+
+    // Calls the handler once per line after the header, the row is only valid until the handler returns
+    public void forEachRow(Path csvPath, Consumer<CsvRow> handler) throws IOException {
+        forEachRow(csvPath, 0, -1, true, handler);
+    }
+
+    // Rows in the byte range [from, to), to = -1 for end of file; the range must start at the beginning of a line
+    public void forEachRow(Path csvPath, long from, long to, boolean skipHeader, Consumer<CsvRow> handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long end = to < 0 ? channel.size() : Math.min(to, channel.size());
+            PipelineMetrics.bytesRead(Math.max(0, end - from));
+            CsvRow row = new CsvRow();
+            boolean skip = skipHeader;
+            long position = from;
+
+            while (position < end) {
+                long length = Math.min(maxSegment, end - position);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+                int limit = (int) length;
+                if (position + length < end) {
+                    limit = lastLineBreak(mapped, limit);
+                }
+                int consumed = scanSegment(mapped, limit, row, skip, handler);
+                skip = false;
+                position += consumed;
+            }
+        }
+    }
+
+    // Rows of an in-memory block of whole lines, bytes 0 to limit of the buffer
+    void forEachRow(ByteBuffer buffer, int limit, boolean skipHeader, Consumer<CsvRow> handler) {
+        scanSegment(buffer.order(ByteOrder.LITTLE_ENDIAN), limit, new CsvRow(), skipHeader, handler);
+    }
+
+    // Splits the file into about `chunks` byte ranges, every boundary sits just after a \n so each range holds
+    // whole lines. Returns the boundaries, starting at 0 and ending at the file size, without empty ranges
+    public static long[] chunkBoundaries(Path csvPath, int chunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long step = Math.max(1, size / Math.max(1, chunks));
+            ByteBuffer window = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+
+            List<Long> boundaries = new ArrayList<>();
+            boundaries.add(0L);
+            long position = step;
+            while (position < size) {
+                long boundary = nextLineStart(channel, position, window);
+                if (boundary >= size) {
+                    break;
+                }
+                if (boundary > boundaries.get(boundaries.size() - 1)) {
+                    boundaries.add(boundary);
+                }
+                position = Math.max(boundary, position) + step;
+            }
+            boundaries.add(size);
+            return boundaries.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    // Position just after the last \n in the file, or 0 if there isn't one. Everything before it is complete lines,
+    // so a line that is still being appended to is left alone
+    public static long lastLineEnd(Path csvPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            ByteBuffer window = ByteBuffer.allocate(8192);
+            long end = channel.size();
+            while (end > 0) {
+                long start = Math.max(0, end - window.capacity());
+                window.clear().limit((int) (end - start));
+                int read = 0;
+                while (window.hasRemaining()) {
+                    int n = channel.read(window, start + read);
+                    if (n <= 0) {
+                        break;
+                    }
+                    read += n;
+                }
+                for (int i = read - 1; i >= 0; i--) {
+                    if (window.get(i) == '\n') {
+                        return start + i + 1;
+                    }
+                }
+                end = start;
+            }
+            return 0;
+        }
+    }
+
+    // Position just after the first \n at or after from, or the file size if there isn't one
+    private static long nextLineStart(FileChannel channel, long from, ByteBuffer window) throws IOException {
+        long position = from;
+        while (true) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            int newline = find(window, 0, read, NEWLINES, (byte) '\n');
+            if (newline < read) {
+                return position + newline + 1;
+            }
+            position += read;
+        }
+    }
+
+    // Returns how many bytes of the segment were turned into rows
+    private int scanSegment(ByteBuffer buffer, int limit, CsvRow row, boolean skipFirst, Consumer<CsvRow> handler) {
+        int position = 0;
+        boolean skip = skipFirst;
+        while (position < limit) {
+            int lineEnd = findLineEnd(buffer, position, limit);
+            if (skip) {
+                skip = false;
+            } else {
+                splitFields(buffer, position, lineEnd, row);
+                handler.accept(row);
+            }
+
+            position = lineEnd + 1;
+            if (lineEnd < limit && buffer.get(lineEnd) == '\r' && position < limit && buffer.get(position) == '\n') {
+                position++;
+            }
+        }
+        return limit;
+    }
+
+    private void splitFields(ByteBuffer buffer, int lineStart, int lineEnd, CsvRow row) {
+        row.reset(buffer, lineStart, lineEnd, isAscii(buffer, lineStart, lineEnd));
+        int fieldStart = lineStart;
+        while (true) {
+            int comma = find(buffer, fieldStart, lineEnd, COMMAS, (byte) ',');
+            if (!row.addField(fieldStart, comma)) {
+                row.markUntracked();
+                return;
+            }
+            if (comma == lineEnd) {
+                return;
+            }
+            fieldStart = comma + 1;
+        }
+    }
+
+    // Index of the next \n or \r, or limit
+    static int findLineEnd(ByteBuffer buffer, int from, int limit) {
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = buffer.getLong(i);
+            long hits = zeroBytes(word ^ NEWLINES) | zeroBytes(word ^ RETURNS);
+            if (hits != 0) {
+                return i + (Long.numberOfTrailingZeros(hits) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    // Index of the next occurrence of target in [from, limit), or limit
+    static int find(ByteBuffer buffer, int from, int limit, long pattern, byte target) {
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long hits = zeroBytes(buffer.getLong(i) ^ pattern);
+            if (hits != 0) {
+                return i + (Long.numberOfTrailingZeros(hits) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            if (buffer.get(i) == target) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    // High bit set in every byte of word that is zero. Bytes above the first zero can be flagged by the borrow,
+    // so only the lowest hit is reliable, which is all the callers use
+    private static long zeroBytes(long word) {
+        return (word - ONES) & ~word & HIGHS;
+    }
+
+    private static boolean isAscii(ByteBuffer buffer, int from, int limit) {
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            if ((buffer.getLong(i) & HIGHS) != 0) {
+                return false;
+            }
+        }
+        for (; i < limit; i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Cuts a segment just after its last \n so no line is split between two mappings
+    private static int lastLineBreak(ByteBuffer buffer, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        throw new CsvParsingException("CsvParsingError: No line break found within " + limit + " bytes, line is too long to map");
+    }
+}
@@ -0,0 +1,181 @@
+package com.analytics.service;
+
+import com.analytics.service.LineBlocks.Block;
+import com.analytics.util.PipelineMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+// Reads a plain CSV in three stages that run at the same time: a reader thread cuts the file into blocks of whole
+// lines, parser threads turn each block into a chunk collector with the byte parser of the mapped modes, and the
+// calling thread appends the chunks in file order like in the parallel mode, so rows, stats and both logs match.
+// The stages are joined by bounded queues, and the reader waits for a permit before every block that is only given
+// back once the block has been appended. However far the parsers get ahead of a slow block, at most IN_FLIGHT blocks
+// are held, so memory stays flat whatever the size of the file
+final class PipelinedCsvReader {
+
+    // Blocks per parser thread between the reader and the appending thread, queued, parsed or waiting their turn
+    private static final int IN_FLIGHT = 4;
+
+    private final ImputationService imputer;
+    private final int parsers;
+
+    PipelinedCsvReader(ImputationService imputer) {
+        this(imputer, Runtime.getRuntime().availableProcessors());
+    }
+
+    PipelinedCsvReader(ImputationService imputer, int parsers) {
+        this.imputer = imputer;
+        this.parsers = parsers;
+    }
+
+    // A collector holding every row of the file, ready to be finished like the single-pass modes
+    SinglePassCollector collect(Path csvPath) throws IOException {
+        PipelineMetrics.bytesRead(Files.size(csvPath));
+        Semaphore permits = new Semaphore(parsers * IN_FLIGHT);
+        BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(parsers * 2);
+        BlockingQueue<Parsed> parsed = new ArrayBlockingQueue<>(parsers * 2);
+
+        Reading reading = new Reading(csvPath, batches, permits);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(Thread.ofPlatform().name("csv-reader").daemon().start(reading));
+        for (int i = 0; i < parsers; i++) {
+            threads.add(Thread.ofPlatform().name("csv-parser-" + (i + 1)).daemon().start(() -> parse(batches, parsed)));
+        }
+
+        SinglePassCollector collector = new SinglePassCollector(imputer);
+        try {
+            // Chunks that finished before the one in front of them
+            Map<Long, SinglePassCollector> waiting = new HashMap<>();
+            long next = 0;
+            int running = parsers;
+            while (running > 0) {
+                Parsed result = take(parsed);
+                if (result == Parsed.DONE) {
+                    running--;
+                    continue;
+                }
+                if (result.failure() != null) {
+                    throw result.failure();
+                }
+                waiting.put(result.sequence(), result.chunk());
+                for (SinglePassCollector chunk = waiting.remove(next); chunk != null; chunk = waiting.remove(next)) {
+                    collector.append(chunk);
+                    permits.release();
+                    next++;
+                }
+            }
+            reading.rethrow();
+        } finally {
+            // Stops the reader and the parsers when appending failed
+            threads.forEach(Thread::interrupt);
+        }
+        return collector;
+    }
+
+    private void parse(BlockingQueue<Batch> batches, BlockingQueue<Parsed> parsed) {
+        try {
+            for (Batch batch = batches.take(); batch != Batch.END; batch = batches.take()) {
+                Parsed result;
+                try {
+                    SinglePassCollector chunk = SinglePassCollector.forChunk(imputer);
+                    // Only the first block has the header
+                    new MappedCsvParser().forEachRow(batch.block().buffer(), batch.block().length(),
+                            batch.sequence() == 0, chunk::acceptRow);
+                    result = new Parsed(batch.sequence(), chunk, null);
+                } catch (RuntimeException e) {
+                    result = new Parsed(batch.sequence(), null, e);
+                }
+                parsed.put(result);
+            }
+            parsed.put(Parsed.DONE);
+        } catch (InterruptedException e) {
+            // The appending side gave up
+        }
+    }
+
+    private static Parsed take(BlockingQueue<Parsed> parsed) throws InterruptedIOException {
+        try {
+            return parsed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the CSV");
+        }
+    }
+
+    // A block of whole lines and where it sits in the file
+    private record Batch(long sequence, Block block) {
+        static final Batch END = new Batch(-1, null);
+    }
+
+    // What a parser made of a block, DONE once a parser has seen the end of the file
+    private record Parsed(long sequence, SinglePassCollector chunk, RuntimeException failure) {
+        static final Parsed DONE = new Parsed(-1, null, null);
+    }
+
+    // Reads the file into blocks, the last one being the unterminated last line if any, then tells every parser
+    // that the file has ended
+    private final class Reading implements Runnable {
+        private final Path csvPath;
+        private final BlockingQueue<Batch> batches;
+        private final Semaphore permits;
+        private volatile Exception failure;
+
+        Reading(Path csvPath, BlockingQueue<Batch> batches, Semaphore permits) {
+            this.csvPath = csvPath;
+            this.batches = batches;
+            this.permits = permits;
+        }
+
+        @Override
+        public void run() {
+            try (InputStream in = Files.newInputStream(csvPath)) {
+                LineBlocks lineBlocks = new LineBlocks(in);
+                long sequence = 0;
+                for (Block block = lineBlocks.next(); block != null; block = lineBlocks.next()) {
+                    hand(new Batch(sequence++, block));
+                }
+                byte[] remainder = lineBlocks.remainder();
+                if (remainder.length > 0) {
+                    hand(new Batch(sequence, new Block(remainder, remainder.length)));
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                // The appending side gave up
+                return;
+            }
+            try {
+                for (int i = 0; i < parsers; i++) {
+                    batches.put(Batch.END);
+                }
+            } catch (InterruptedException e) {
+                // Same here
+            }
+        }
+
+        private void hand(Batch batch) throws InterruptedException {
+            permits.acquire();
+            batches.put(batch);
+        }
+
+        void rethrow() throws IOException {
+            if (failure instanceof IOException io) {
+                throw io;
+            }
+            if (failure instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.analytics.service;
+
+import com.analytics.exception.CsvParsingException;
+import com.analytics.exception.DataValidationException;
+import com.analytics.model.Dimension;
+import com.analytics.model.GlobalStats;
+import com.analytics.model.Measure;
+import com.analytics.model.MemoryBudget;
+import com.analytics.model.QueryResult;
+import com.analytics.model.RawSale;
+import com.analytics.model.Sale;
+import com.analytics.model.SalesColumn;
+import com.analytics.model.SalesColumns;
+import com.analytics.model.SalesQuery;
+import com.analytics.model.StringDictionary;
+import com.analytics.util.IsoDates;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Runs SalesQuery filters, group-bys and measures over sales
+// Against a CSV the filters are pushed down into the scan: the date and the filtered text fields are checked on the
+// row bytes first, and a row that fails is never decoded any further or imputed. Every row still feeds the
+// imputation stats, so the rows that are kept get exactly the values a full run would give them.
+// Queries are read-only and write nothing to the ingestion logs. Under a memory budget, groups and held-back rows
+// that don't fit are spilled to temporary files, so a group-by with more groups than the heap holds still finishes
+public class QueryEngine {
+
+    private final MemoryBudget budget;
+
+    public QueryEngine() {
+        this(MemoryBudget.UNLIMITED);
+    }
+
+    public QueryEngine(MemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    // Filters loaded sales, column-backed lists are filtered on their codes before any Sale is built
+    public QueryResult run(SalesQuery query, List<Sale> sales) {
+        return run(query, sales, List.of());
+    }
+
+    // The same over two lists taken as one, such as rows kept in columns and a few rows imputed since
+    public QueryResult run(SalesQuery query, List<Sale> sales, List<Sale> moreSales) {
+        Groups groups = new Groups(query, budget, 0);
+        acceptAll(query, sales, groups);
+        acceptAll(query, moreSales, groups);
+        return groups.toResult();
+    }
+
+    private void acceptAll(SalesQuery query, List<Sale> sales, Groups groups) {
+        if (!(sales instanceof SalesColumns columns)) {
+            for (Sale sale : sales) {
+                if (query.matches(sale)) {
+                    groups.accept(sale);
+                }
+            }
+            return;
+        }
+
+        boolean[] regions = allowedCodes(columns.regions(), query.regions());
+        boolean[] categories = allowedCodes(columns.categories(), query.categories());
+        boolean[] paymentMethods = allowedCodes(columns.paymentMethods(), query.paymentMethods());
+        long from = query.from() == null ? Long.MIN_VALUE : query.from().toEpochDay();
+        long to = query.to() == null ? Long.MAX_VALUE : query.to().toEpochDay();
+        for (int row = 0; row < columns.size(); row++) {
+            int day = columns.epochDay(row);
+            if (day >= from && day <= to
+                    && (regions == null || regions[columns.regionCode(row)])
+                    && (categories == null || categories[columns.categoryCode(row)])
+                    && (paymentMethods == null || paymentMethods[columns.paymentMethodCode(row)])) {
+                groups.accept(sales.get(row));
+            }
+        }
+    }
+
+    // Scans the CSV once with the filters pushed down, rows that need imputation are checked once the stats are known
+    // Only the columns the query reads are decoded, found by the names in the header
+    public QueryResult run(SalesQuery query, Path csvPath) throws IOException {
+        CsvHeader header = CsvHeader.read(csvPath).project(query.columns());
+        ImputationService imputer = new ImputationService(header);
+        // The groups and the held-back rows share the budget
+        Groups groups = new Groups(query, budget.divide(2), 0);
+        StatsAccumulator stats = new StatsAccumulator();
+        DeferredRows deferred = new DeferredRows(budget.divide(2));
+
+        new MappedCsvParser().forEachRow(csvPath, row -> {
+            if (!stats.accept(row, header)) {
+                acceptLine(query, imputer, row.line(), stats, groups, deferred);
+                return;
+            }
+            if (rejects(query, header, row)) {
+                return;
+            }
+            Sale sale = imputer.mapIfSimple(row);
+            if (sale != null) {
+                if (query.matches(sale)) {
+                    groups.accept(sale);
+                }
+            } else {
+                acceptParsed(query, imputer, row.line(), groups, deferred);
+            }
+        });
+
+        GlobalStats globalStats = stats.toGlobalStats();
+        try (deferred) {
+            deferred.forEach(raw -> {
+                Sale sale = imputer.imputeAndMap(raw, globalStats, false);
+                if (query.matches(sale)) {
+                    groups.accept(sale);
+                }
+            });
+        }
+        return groups.toResult();
+    }
+
+    // True when the row bytes already rule it out. Blank text fields are left alone since they get imputed later
+    private static boolean rejects(SalesQuery query, CsvHeader header, CsvRow row) {
+        if (query.from() != null || query.to() != null) {
+            int epochDay = row.parseEpochDay(header.field(SalesColumn.DATE));
+            if (epochDay != IsoDates.INVALID && !query.matchesEpochDay(epochDay)) {
+                return true;
+            }
+        }
+        return rejectsField(query.categories(), row, header.field(SalesColumn.CATEGORY))
+                || rejectsField(query.regions(), row, header.field(SalesColumn.REGION))
+                || rejectsField(query.paymentMethods(), row, header.field(SalesColumn.PAYMENT_METHOD));
+    }
+
+    private static boolean rejectsField(Set<String> allowed, CsvRow row, int field) {
+        return !allowed.isEmpty() && row.length(field) > 0 && !allowed.contains(row.string(field));
+    }
+
+    // A row the byte decoder couldn't read the stats fields of
+    private void acceptLine(SalesQuery query, ImputationService imputer, String line, StatsAccumulator stats,
+                            Groups groups, DeferredRows deferred) {
+        RawSale raw;
+        try {
+            raw = imputer.parser().parseLine(line);
+        } catch (CsvParsingException e) {
+            return;
+        }
+        stats.accept(raw);
+        accept(query, imputer, raw, groups, deferred);
+    }
+
+    // A row that passed the byte filters but has a field only the String path handles
+    private void acceptParsed(SalesQuery query, ImputationService imputer, String line, Groups groups,
+                              DeferredRows deferred) {
+        try {
+            accept(query, imputer, imputer.parser().parseLine(line), groups, deferred);
+        } catch (CsvParsingException e) {
+            // Rejected rows are the ingestion run's business, queries just leave them out
+        }
+    }
+
+    private void accept(SalesQuery query, ImputationService imputer, RawSale raw, Groups groups, DeferredRows deferred) {
+        Sale sale;
+        try {
+            sale = imputer.mapIfComplete(raw);
+        } catch (DataValidationException e) {
+            return;
+        }
+        if (sale == null) {
+            deferred.add(raw);
+        } else if (query.matches(sale)) {
+            groups.accept(sale);
+        }
+    }
+
+    // allowed[code] for every code of the dictionary, or null when the filter is off
+    private static boolean[] allowedCodes(StringDictionary dictionary, Set<String> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        boolean[] allowed = new boolean[dictionary.size()];
+        for (String value : values) {
+            int code = dictionary.codeOf(value);
+            if (code >= 0) {
+                allowed[code] = true;
+            }
+        }
+        return allowed;
+    }
+
+    // Running measures per group. Each group value gets a code per dimension, and the codes of a row are packed
+    // 21 bits each into one long key rather than a list of Strings.
+    // Past the budget's number of groups, all of them are written out to one of PARTITIONS files by a hash of their
+    // values and the map starts over. A group can then be in a file several times, but always in the same file, so
+    // at the end each file is merged on its own, hashing again one level down when a file still has too many groups
+    private static final class Groups {
+        private static final int BITS = 21;
+        private static final Measure.Field[] FIELDS = Measure.Field.values();
+        // Group, its map entry and its values in the dictionaries
+        private static final int BYTES_PER_GROUP = 400;
+        private static final int PARTITIONS = 16;
+        // Values that still share a file this deep down hash alike at every level, stop spilling them
+        private static final int MAX_LEVEL = 6;
+
+        private final SalesQuery query;
+        private final MemoryBudget budget;
+        private final int maxGroups;
+        private final int level;
+        private final StringDictionary[] values;
+        private final Map<Long, Group> groups = new HashMap<>();
+        // Epoch day -> month key, so MONTH doesn't format a String for every row
+        private final Map<Integer, String> months = new HashMap<>();
+        private Path[] spillFiles;
+        private DataOutputStream[] spills;
+
+        Groups(SalesQuery query, MemoryBudget budget, int level) {
+            this.query = query;
+            this.budget = budget;
+            this.maxGroups = budget.maxEntries(BYTES_PER_GROUP);
+            this.level = level;
+            this.values = new StringDictionary[query.groupBy().size()];
+            Arrays.setAll(values, i -> new StringDictionary());
+        }
+
+        void accept(Sale sale) {
+            long key = 0;
+            for (int d = 0; d < values.length; d++) {
+                key = key << BITS | encode(d, valueOf(query.groupBy().get(d), sale));
+            }
+            groups.computeIfAbsent(key, k -> new Group()).accept(sale);
+            spillIfFull();
+        }
+
+        // A group read back from a spill file
+        private void merge(String[] groupValues, Group group) {
+            long key = 0;
+            for (int d = 0; d < values.length; d++) {
+                key = key << BITS | encode(d, groupValues[d]);
+            }
+            groups.merge(key, group, Group::merge);
+            spillIfFull();
+        }
+
+        private int encode(int d, String value) {
+            int code = values[d].encode(value);
+            if (code >= 1 << BITS) {
+                throw new IllegalStateException("Too many distinct values to group by " + query.groupBy().get(d));
+            }
+            return code;
+        }
+
+        private void spillIfFull() {
+            if (groups.size() > maxGroups && level < MAX_LEVEL) {
+                spill();
+            }
+        }
+
+        private void spill() {
+            try {
+                if (spills == null) {
+                    spillFiles = new Path[PARTITIONS];
+                    spills = new DataOutputStream[PARTITIONS];
+                    for (int p = 0; p < PARTITIONS; p++) {
+                        spillFiles[p] = Files.createTempFile(budget.spillDirectory(), "query-groups", ".bin");
+                        spills[p] = new DataOutputStream(
+                                new BufferedOutputStream(Files.newOutputStream(spillFiles[p]), 1 << 13));
+                    }
+                }
+                for (Map.Entry<Long, Group> entry : groups.entrySet()) {
+                    String[] groupValues = decode(entry.getKey());
+                    DataOutputStream out = spills[partition(groupValues)];
+                    out.writeBoolean(true);
+                    for (String value : groupValues) {
+                        DeferredRows.writeString(out, value);
+                    }
+                    entry.getValue().writeTo(out);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            groups.clear();
+            Arrays.setAll(values, i -> new StringDictionary());
+        }
+
+        // The top bits of the mixed hash, salted with the level so a file splits up differently one level down
+        private int partition(String[] groupValues) {
+            int hash = (Arrays.hashCode(groupValues) ^ level * 0x27d4eb2d) * 0x9e3779b9;
+            hash ^= hash >>> 15;
+            return (hash * 0x85ebca6b) >>> 28;
+        }
+
+        private String[] decode(long key) {
+            String[] groupValues = new String[values.length];
+            long rest = key;
+            for (int d = values.length - 1; d >= 0; d--) {
+                groupValues[d] = values[d].decode((int) (rest & ((1 << BITS) - 1)));
+                rest >>>= BITS;
+            }
+            return groupValues;
+        }
+
+        private static int compareKeys(QueryResult.Row a, QueryResult.Row b) {
+            for (int d = 0; d < a.key().size(); d++) {
+                int cmp = a.key().get(d).compareTo(b.key().get(d));
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+
+        private String valueOf(Dimension dimension, Sale sale) {
+            if (dimension == Dimension.MONTH) {
+                return months.computeIfAbsent(sale.epochDay(), IsoDates::monthKey);
+            }
+            return dimension.valueOf(sale);
+        }
+
+        QueryResult toResult() {
+            List<QueryResult.Row> rows = new ArrayList<>();
+            try {
+                addRows(rows);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows.sort(Groups::compareKeys);
+            return new QueryResult(query.groupBy(), query.measures(), rows);
+        }
+
+        private void addRows(List<QueryResult.Row> rows) throws IOException {
+            if (spills == null) {
+                groups.forEach((key, group) -> {
+                    List<Double> measures = query.measures().stream().map(group::value).toList();
+                    rows.add(new QueryResult.Row(List.of(decode(key)), measures));
+                });
+                return;
+            }
+
+            spill();
+            for (int p = 0; p < PARTITIONS; p++) {
+                spills[p].writeBoolean(false);
+                spills[p].close();
+            }
+            try {
+                for (Path spillFile : spillFiles) {
+                    Groups partition = new Groups(query, budget, level + 1);
+                    try (DataInputStream in = new DataInputStream(
+                            new BufferedInputStream(Files.newInputStream(spillFile), 1 << 16))) {
+                        while (in.readBoolean()) {
+                            String[] groupValues = new String[values.length];
+                            for (int d = 0; d < groupValues.length; d++) {
+                                groupValues[d] = DeferredRows.readString(in);
+                            }
+                            partition.merge(groupValues, Group.readFrom(in));
+                        }
+                    }
+                    Files.delete(spillFile);
+                    partition.addRows(rows);
+                }
+            } finally {
+                for (Path spillFile : spillFiles) {
+                    Files.deleteIfExists(spillFile);
+                }
+            }
+        }
+    }
+
+    // Count plus a compensated sum, min and max of every field, whichever measures end up being asked for
+    private static final class Group {
+        private long count;
+        private final double[] sums = new double[Groups.FIELDS.length];
+        private final double[] compensations = new double[Groups.FIELDS.length];
+        private final double[] mins = new double[Groups.FIELDS.length];
+        private final double[] maxes = new double[Groups.FIELDS.length];
+
+        Group() {
+            Arrays.fill(mins, Double.POSITIVE_INFINITY);
+            Arrays.fill(maxes, Double.NEGATIVE_INFINITY);
+        }
+
+        void accept(Sale sale) {
+            count++;
+            for (Measure.Field field : Groups.FIELDS) {
+                int f = field.ordinal();
+                double value = field.valueOf(sale);
+                add(f, value);
+                mins[f] = Math.min(mins[f], value);
+                maxes[f] = Math.max(maxes[f], value);
+            }
+        }
+
+        private void add(int f, double value) {
+            double tmp = value - compensations[f];
+            double velvel = sums[f] + tmp;
+            compensations[f] = (velvel - sums[f]) - tmp;
+            sums[f] = velvel;
+        }
+
+        // Combines the sums like the summingDouble combiner: the other sum, then its compensation taken back out
+        Group merge(Group other) {
+            count += other.count;
+            for (int f = 0; f < sums.length; f++) {
+                add(f, other.sums[f]);
+                add(f, -other.compensations[f]);
+                mins[f] = Math.min(mins[f], other.mins[f]);
+                maxes[f] = Math.max(maxes[f], other.maxes[f]);
+            }
+            return this;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeLong(count);
+            for (double[] array : new double[][]{sums, compensations, mins, maxes}) {
+                for (double value : array) {
+                    out.writeDouble(value);
+                }
+            }
+        }
+
+        static Group readFrom(DataInputStream in) throws IOException {
+            Group group = new Group();
+            group.count = in.readLong();
+            for (double[] array : new double[][]{group.sums, group.compensations, group.mins, group.maxes}) {
+                for (int f = 0; f < array.length; f++) {
+                    array[f] = in.readDouble();
+                }
+            }
+            return group;
+        }
+
+        double value(Measure measure) {
+            if (measure.function() == Measure.Function.COUNT) {
+                return count;
+            }
+            int f = measure.field().ordinal();
+            return switch (measure.function()) {
+                case SUM -> sums[f] - compensations[f];
+                case AVG -> (sums[f] - compensations[f]) / count;
+                case MIN -> mins[f];
+                case MAX -> maxes[f];
+                case COUNT -> count;
+            };
+        }
+    }
+}
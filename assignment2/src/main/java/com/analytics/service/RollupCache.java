@@ -0,0 +1,150 @@
+package com.analytics.service;
+
+import com.analytics.util.AnalyticsLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Keeps the stats and partial aggregates of a CSV on disk between runs
+// What is saved is a TailingAnalytics state, keyed by the real path, size and modification time of the file when it
+// was saved and the SHA-256 of the bytes it had read. A later run on the same path with the same size and time uses the
+// saved state as it is, without reading the file. Otherwise the bytes are hashed again: if they are still at the start
+// of the file rows were only appended and it carries on from where it stopped, and anything else means the CSV was
+// edited or replaced and it is read again from scratch.
+// Rollups saved in the other money mode are rebuilt too, double and exact sums can't be converted into each other
+public class RollupCache {
+
+    private static final int MAGIC = 0x524f4c4c; // "ROLL"
+    private static final int VERSION = 6;
+
+    // What load() had to do to bring the rollups up to date with the file
+    public enum Outcome { UNCHANGED, APPENDED, REBUILT }
+
+    public record Result(TailingAnalytics analytics, Outcome outcome, int newRows) {}
+
+    private final Path cacheFile;
+    private final boolean exactMoney;
+
+    public RollupCache(Path cacheFile) {
+        this(cacheFile, false);
+    }
+
+    public RollupCache(Path cacheFile, boolean exactMoney) {
+        this.cacheFile = cacheFile;
+        this.exactMoney = exactMoney;
+    }
+
+    // Rollups covering every complete line currently in the CSV
+    public Result load(Path csvPath) throws IOException {
+        Saved saved = readIfStillValid(csvPath);
+        if (saved == null) {
+            TailingAnalytics analytics = new TailingAnalytics(csvPath, exactMoney);
+            return new Result(analytics, Outcome.REBUILT, analytics.poll());
+        }
+        // The logs already hold the lines for the rows the cache covers
+        AnalyticsLogger.continueExistingLogs();
+        if (saved.untouched()) {
+            return new Result(saved.analytics(), Outcome.UNCHANGED, 0);
+        }
+
+        int newRows = saved.analytics().poll();
+        return new Result(saved.analytics(), newRows > 0 ? Outcome.APPENDED : Outcome.UNCHANGED, newRows);
+    }
+
+    // Writes the state next to the cache file and moves it into place, so a crash never leaves half a cache
+    public void save(Path csvPath, TailingAnalytics analytics) throws IOException {
+        Path partial = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partial), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(analytics.isExactMoney());
+            out.writeUTF(csvPath.toRealPath().toString());
+            out.writeLong(Files.size(csvPath));
+            out.writeLong(modifiedNanos(csvPath));
+            out.writeLong(analytics.offset());
+            out.write(sha256(csvPath, analytics.offset()));
+            analytics.writeTo(out);
+        }
+        Files.move(partial, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // untouched when the file still has the size and modification time it had when the state was saved
+    private record Saved(TailingAnalytics analytics, boolean untouched) {}
+
+    // The saved state if the bytes it was built from are still at the start of the file, otherwise null
+    private Saved readIfStillValid(Path csvPath) throws IOException {
+        if (!Files.exists(cacheFile)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readBoolean() != exactMoney) {
+                return null;
+            }
+            String source = in.readUTF();
+            long size = in.readLong();
+            long modified = in.readLong();
+            long offset = in.readLong();
+            byte[] hash = in.readNBytes(32);
+            if (!source.equals(csvPath.toRealPath().toString())) {
+                return null;
+            }
+
+            long currentSize = Files.size(csvPath);
+            boolean untouched = currentSize == size && modifiedNanos(csvPath) == modified;
+            // Only a file that was written to since is read, and an edit can keep the size, so its bytes are checked
+            if (!untouched && (currentSize < offset || !Arrays.equals(hash, sha256(csvPath, offset)))) {
+                return null;
+            }
+            return new Saved(TailingAnalytics.readFrom(csvPath, in), untouched);
+        } catch (IOException | RuntimeException e) {
+            // A damaged cache is only a slower run
+            System.err.println("Ignoring unreadable rollup cache " + cacheFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // As precise as the file system keeps it, so a rewrite within the same millisecond still shows
+    private static long modifiedNanos(Path path) throws IOException {
+        return Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS);
+    }
+
+    // SHA-256 of the first length bytes of the file
+    static byte[] sha256(Path path, long length) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            long position = 0;
+            while (position < length) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), length - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("File ended while hashing " + path);
+                }
+                buffer.flip();
+                digest.update(buffer);
+                position += read;
+            }
+        }
+        return digest.digest();
+    }
+}
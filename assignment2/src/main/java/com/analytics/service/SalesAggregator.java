@@ -0,0 +1,702 @@
+package com.analytics.service;
+
+import com.analytics.model.Money;
+import com.analytics.model.Sale;
+import com.analytics.model.SalesColumns;
+import com.analytics.model.SalesReport;
+import com.analytics.model.StringDictionary;
+import com.analytics.util.IsoDates;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Builds all eight report aggregates in one pass over the sales
+// Every dimension value gets a dense code in the order it is first seen and the sums live in primitive arrays
+// indexed by those codes, so there are no per-row map lookups, boxed accumulators or month Strings.
+// Sums use the same compensated summation as Collectors.summingDouble/averagingDouble, in the same row order,
+// and the result maps are filled in first-seen order like groupingBy does, so the printed report is identical.
+// Rows that can only be added later, once the stats for their imputation are known, reserve their place in the input
+// with reserveRow, and the report still lists the values in the order the input first has them.
+// An exact-money aggregator instead keeps prices as whole paise and sums revenue in long. Sale prices stay doubles and
+// are converted here, which only changes the imputed mean price: parsed prices are whole paise either way
+public class SalesAggregator {
+
+    private static final String[] BUCKETS = {SalesReport.LOW_VALUE, SalesReport.MID_VALUE, SalesReport.HIGH_VALUE};
+    private static final int DATE_CACHE_SIZE = 4096;
+
+    private final StringDictionary regions = new StringDictionary();
+    private final StringDictionary categories = new StringDictionary();
+    private final StringDictionary products = new StringDictionary();
+    private final StringDictionary paymentMethods = new StringDictionary();
+    private final StringDictionary months = new StringDictionary();
+
+    // Rows taken or reserved so far, and for every code of each dictionary the first of those rows that had it
+    private long rows;
+    private final FirstSeen regionsSeen;
+    private final FirstSeen categoriesSeen;
+    private final FirstSeen productsSeen;
+    private final FirstSeen paymentMethodsSeen;
+    private final FirstSeen monthsSeen;
+    private final FirstSeen pairsSeen;
+
+    // Exact totals are the same in whatever order rows are added or aggregators merged, doubles only match
+    // the stream pipelines when added in their order
+    private final boolean exactMoney;
+    private final Sums revenueByRegion;
+    private final Sums revenueByMonth;
+    private final Sums priceByCategory;
+    private final Sums revenueByPair;
+    private final Sums orderValueByDay;
+    private int[] unitsByProduct = new int[16];
+    private long[] countByPaymentMethod = new long[16];
+    private final long[] countByBucket = new long[BUCKETS.length];
+
+    // Region/category pairs numbered in first-seen order, pairCodes[region][category] is the pair code + 1
+    private int[][] pairCodes = new int[16][];
+    private int[] pairRegions = new int[16];
+    private int[] pairCategories = new int[16];
+    private int pairCount;
+
+    // Epoch day -> month code, dates repeat a lot so the month is only worked out once per day
+    private final int[] cachedDays = new int[DATE_CACHE_SIZE];
+    private final int[] cachedMonths = new int[DATE_CACHE_SIZE];
+
+    public SalesAggregator() {
+        this(false);
+    }
+
+    private SalesAggregator(boolean exactMoney) {
+        this.exactMoney = exactMoney;
+        revenueByRegion = newSums();
+        revenueByMonth = newSums();
+        priceByCategory = newSums();
+        revenueByPair = newSums();
+        orderValueByDay = newSums();
+        regionsSeen = new FirstSeen();
+        categoriesSeen = new FirstSeen();
+        productsSeen = new FirstSeen();
+        paymentMethodsSeen = new FirstSeen();
+        monthsSeen = new FirstSeen();
+        pairsSeen = new FirstSeen();
+        Arrays.fill(cachedDays, Integer.MIN_VALUE);
+    }
+
+    // Prices become whole paise and revenue is summed in long, see Money
+    public static SalesAggregator exactMoney() {
+        return new SalesAggregator(true);
+    }
+
+    // Independent copy of the running totals, so more rows can be added to one without touching the other
+    private SalesAggregator(SalesAggregator other) {
+        exactMoney = other.exactMoney;
+        // Fresh dictionaries hand out the same codes when fed the values in code order
+        regions.remap(other.regions);
+        categories.remap(other.categories);
+        products.remap(other.products);
+        paymentMethods.remap(other.paymentMethods);
+        months.remap(other.months);
+
+        rows = other.rows;
+        regionsSeen = other.regionsSeen.copy();
+        categoriesSeen = other.categoriesSeen.copy();
+        productsSeen = other.productsSeen.copy();
+        paymentMethodsSeen = other.paymentMethodsSeen.copy();
+        monthsSeen = other.monthsSeen.copy();
+        pairsSeen = other.pairsSeen.copy();
+
+        revenueByRegion = other.revenueByRegion.copy();
+        revenueByMonth = other.revenueByMonth.copy();
+        priceByCategory = other.priceByCategory.copy();
+        revenueByPair = other.revenueByPair.copy();
+        orderValueByDay = other.orderValueByDay.copy();
+        unitsByProduct = other.unitsByProduct.clone();
+        countByPaymentMethod = other.countByPaymentMethod.clone();
+        System.arraycopy(other.countByBucket, 0, countByBucket, 0, countByBucket.length);
+
+        pairCodes = new int[other.pairCodes.length][];
+        for (int r = 0; r < pairCodes.length; r++) {
+            pairCodes[r] = other.pairCodes[r] == null ? null : other.pairCodes[r].clone();
+        }
+        pairRegions = other.pairRegions.clone();
+        pairCategories = other.pairCategories.clone();
+        pairCount = other.pairCount;
+
+        System.arraycopy(other.cachedDays, 0, cachedDays, 0, DATE_CACHE_SIZE);
+        System.arraycopy(other.cachedMonths, 0, cachedMonths, 0, DATE_CACHE_SIZE);
+    }
+
+    public SalesAggregator copy() {
+        return new SalesAggregator(this);
+    }
+
+    public boolean isExactMoney() {
+        return exactMoney;
+    }
+
+    // Adds the totals of an aggregator built over a later part of the input, as if its rows had been accepted here
+    // Values it has that this one hasn't seen get the next codes, so merging in input order keeps the report order.
+    // Exact money comes out the same however the input was split. Double sums are combined the way a parallel
+    // Collectors.summingDouble combines its parts: the same for the same split and merge order, but they can differ
+    // in the last bits from one pass over all the rows
+    public void merge(SalesAggregator other) {
+        if (exactMoney != other.exactMoney) {
+            throw new IllegalStateException("Exact-money and double aggregators can't be merged");
+        }
+        int[] regionCodes = regions.remap(other.regions);
+        int[] categoryCodes = categories.remap(other.categories);
+        int[] productCodes = products.remap(other.products);
+        int[] paymentMethodCodes = paymentMethods.remap(other.paymentMethods);
+        int[] monthCodes = months.remap(other.months);
+        int[] pairs = new int[other.pairCount];
+        for (int pair = 0; pair < pairs.length; pair++) {
+            pairs[pair] = pairCode(regionCodes[other.pairRegions[pair]], categoryCodes[other.pairCategories[pair]]);
+        }
+        // The other rows come after these
+        regionsSeen.addAll(other.regionsSeen, regionCodes, rows);
+        categoriesSeen.addAll(other.categoriesSeen, categoryCodes, rows);
+        productsSeen.addAll(other.productsSeen, productCodes, rows);
+        paymentMethodsSeen.addAll(other.paymentMethodsSeen, paymentMethodCodes, rows);
+        monthsSeen.addAll(other.monthsSeen, monthCodes, rows);
+        pairsSeen.addAll(other.pairsSeen, pairs, rows);
+        rows += other.rows;
+
+        revenueByRegion.addAll(other.revenueByRegion, regionCodes);
+        revenueByMonth.addAll(other.revenueByMonth, monthCodes);
+        priceByCategory.addAll(other.priceByCategory, categoryCodes);
+        revenueByPair.addAll(other.revenueByPair, pairs);
+        orderValueByDay.addAll(other.orderValueByDay, new int[]{0, 1, 2, 3, 4, 5, 6});
+        for (int p = 0; p < productCodes.length; p++) {
+            unitsByProduct = grow(unitsByProduct, productCodes[p]);
+            unitsByProduct[productCodes[p]] += other.unitsByProduct[p];
+        }
+        for (int p = 0; p < paymentMethodCodes.length; p++) {
+            countByPaymentMethod = grow(countByPaymentMethod, paymentMethodCodes[p]);
+            countByPaymentMethod[paymentMethodCodes[p]] += other.countByPaymentMethod[p];
+        }
+        for (int b = 0; b < countByBucket.length; b++) {
+            countByBucket[b] += other.countByBucket[b];
+        }
+    }
+
+    // Saves the running totals, readFrom gives back an aggregator that carries on exactly where this one was
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeBoolean(exactMoney);
+        for (StringDictionary dictionary : new StringDictionary[]{regions, categories, products, paymentMethods, months}) {
+            dictionary.writeTo(out);
+        }
+        for (Sums sums : new Sums[]{revenueByRegion, revenueByMonth, priceByCategory, revenueByPair, orderValueByDay}) {
+            sums.writeTo(out);
+        }
+        writeInts(out, unitsByProduct);
+        writeLongs(out, countByPaymentMethod);
+        writeLongs(out, countByBucket);
+        out.writeInt(pairCount);
+        for (int pair = 0; pair < pairCount; pair++) {
+            out.writeInt(pairRegions[pair]);
+            out.writeInt(pairCategories[pair]);
+        }
+        out.writeLong(rows);
+        for (FirstSeen seen : new FirstSeen[]{regionsSeen, categoriesSeen, productsSeen, paymentMethodsSeen,
+                monthsSeen, pairsSeen}) {
+            writeLongs(out, seen.positions);
+        }
+    }
+
+    static SalesAggregator readFrom(DataInputStream in) throws IOException {
+        SalesAggregator aggregator = new SalesAggregator(in.readBoolean());
+        for (StringDictionary dictionary : new StringDictionary[]{aggregator.regions, aggregator.categories,
+                aggregator.products, aggregator.paymentMethods, aggregator.months}) {
+            dictionary.remap(StringDictionary.readFrom(in));
+        }
+        for (Sums sums : new Sums[]{aggregator.revenueByRegion, aggregator.revenueByMonth,
+                aggregator.priceByCategory, aggregator.revenueByPair, aggregator.orderValueByDay}) {
+            sums.readFrom(in);
+        }
+        aggregator.unitsByProduct = readInts(in);
+        aggregator.countByPaymentMethod = readLongs(in);
+        long[] buckets = readLongs(in);
+        System.arraycopy(buckets, 0, aggregator.countByBucket, 0, aggregator.countByBucket.length);
+        int pairs = in.readInt();
+        for (int pair = 0; pair < pairs; pair++) {
+            // Pairs come back in the order they were first seen, so they get their old codes
+            aggregator.pairCode(in.readInt(), in.readInt());
+        }
+        aggregator.rows = in.readLong();
+        for (FirstSeen seen : new FirstSeen[]{aggregator.regionsSeen, aggregator.categoriesSeen,
+                aggregator.productsSeen, aggregator.paymentMethodsSeen, aggregator.monthsSeen, aggregator.pairsSeen}) {
+            seen.positions = readLongs(in);
+        }
+        return aggregator;
+    }
+
+    public static SalesReport aggregate(List<Sale> sales) {
+        return aggregate(sales, false);
+    }
+
+    public static SalesReport aggregate(List<Sale> sales, boolean exactMoney) {
+        SalesAggregator aggregator = new SalesAggregator(exactMoney);
+        aggregator.acceptAll(sales);
+        return aggregator.toReport();
+    }
+
+    public void accept(Sale sale) {
+        accept(sale, rows++);
+    }
+
+    // Takes the place of the next row, for a row that is only added later with accept(sale, position)
+    public long reserveRow() {
+        return rows++;
+    }
+
+    // Rows taken or reserved so far
+    public long rowCount() {
+        return rows;
+    }
+
+    // A row added after the ones that followed it in the input, at the position reserveRow gave it
+    public void accept(Sale sale, long position) {
+        accept(regions.encode(sale.region()), categories.encode(sale.category()), products.encode(sale.product()),
+                paymentMethods.encode(sale.paymentMethod()), sale.epochDay(),
+                sale.quantity(), sale.unitPrice(), position);
+    }
+
+    // Column-backed lists are read straight from their columns, their dictionary codes are translated once per value
+    public void acceptAll(List<Sale> sales) {
+        if (!(sales instanceof SalesColumns store)) {
+            sales.forEach(this::accept);
+            return;
+        }
+
+        int[] regionCodes = codeCache(store.regions());
+        int[] categoryCodes = codeCache(store.categories());
+        int[] productCodes = codeCache(store.products());
+        int[] paymentMethodCodes = codeCache(store.paymentMethods());
+        for (int row = 0; row < store.size(); row++) {
+            accept(
+                    localCode(regionCodes, store.regionCode(row), store.regions(), regions),
+                    localCode(categoryCodes, store.categoryCode(row), store.categories(), categories),
+                    localCode(productCodes, store.productCode(row), store.products(), products),
+                    localCode(paymentMethodCodes, store.paymentMethodCode(row), store.paymentMethods(), paymentMethods),
+                    store.epochDay(row), store.quantity(row), store.unitPrice(row), rows++);
+        }
+    }
+
+    private void accept(int region, int category, int product, int paymentMethod, int epochDay, int quantity,
+                        double unitPrice, long position) {
+        double amount = quantity * unitPrice;
+        long minorPrice = exactMoney ? Money.toMinorUnits(unitPrice) : 0;
+        long minorAmount = exactMoney ? Math.multiplyExact(minorPrice, quantity) : 0;
+        int month = monthCode(epochDay);
+        int pair = pairCode(region, category);
+        regionsSeen.note(region, position);
+        categoriesSeen.note(category, position);
+        productsSeen.note(product, position);
+        paymentMethodsSeen.note(paymentMethod, position);
+        monthsSeen.note(month, position);
+        pairsSeen.note(pair, position);
+
+        revenueByRegion.add(region, amount, minorAmount);
+        revenueByMonth.add(month, amount, minorAmount);
+        unitsByProduct = grow(unitsByProduct, product);
+        unitsByProduct[product] += quantity;
+        countByPaymentMethod = grow(countByPaymentMethod, paymentMethod);
+        countByPaymentMethod[paymentMethod]++;
+        priceByCategory.add(category, unitPrice, minorPrice);
+        revenueByPair.add(pair, amount, minorAmount);
+        countByBucket[exactMoney ? bucket(minorAmount) : amount < 50.00 ? 0 : amount <= 150.00 ? 1 : 2]++;
+        orderValueByDay.add(IsoDates.dayOfWeek(epochDay) - 1, amount, minorAmount);
+    }
+
+    public SalesReport toReport() {
+        Map<String, Double> revenueByRegionMap = new HashMap<>();
+        for (int r : regionsSeen.order(regions.size())) {
+            fill(revenueByRegionMap, regions.decode(r), revenueByRegion.sum(r));
+        }
+
+        Map<String, Double> monthlyRevenue = new HashMap<>();
+        for (int m : monthsSeen.order(months.size())) {
+            fill(monthlyRevenue, months.decode(m), revenueByMonth.sum(m));
+        }
+
+        Map<String, Integer> unitsByProductMap = new HashMap<>();
+        for (int p : productsSeen.order(products.size())) {
+            fill(unitsByProductMap, products.decode(p), unitsByProduct[p]);
+        }
+
+        Map<String, Long> paymentMethodCounts = new HashMap<>();
+        for (int p : paymentMethodsSeen.order(paymentMethods.size())) {
+            fill(paymentMethodCounts, paymentMethods.decode(p), countByPaymentMethod[p]);
+        }
+
+        Map<String, Double> avgUnitPriceByCategory = new HashMap<>();
+        for (int c : categoriesSeen.order(categories.size())) {
+            fill(avgUnitPriceByCategory, categories.decode(c), priceByCategory.average(c));
+        }
+
+        // Regions in first-seen order, then each region's categories in the order they first showed up for it
+        Map<String, Map<String, Double>> revenueByRegionAndCategory = new HashMap<>();
+        for (int r : regionsSeen.order(regions.size())) {
+            fill(revenueByRegionAndCategory, regions.decode(r), new HashMap<>());
+        }
+        for (int pair : pairsSeen.order(pairCount)) {
+            fill(revenueByRegionAndCategory.get(regions.decode(pairRegions[pair])),
+                    categories.decode(pairCategories[pair]), revenueByPair.sum(pair));
+        }
+
+        Map<String, Long> valueBuckets = new HashMap<>();
+        for (int b = 0; b < BUCKETS.length; b++) {
+            if (countByBucket[b] > 0) {
+                fill(valueBuckets, BUCKETS[b], countByBucket[b]);
+            }
+        }
+
+        Map<DayOfWeek, Double> avgOrderValueByDay = new HashMap<>();
+        for (int d = 0; d < 7; d++) {
+            if (orderValueByDay.count(d) > 0) {
+                fill(avgOrderValueByDay, DayOfWeek.of(d + 1), orderValueByDay.average(d));
+            }
+        }
+
+        return new SalesReport(revenueByRegionMap, monthlyRevenue, unitsByProductMap, paymentMethodCounts,
+                avgUnitPriceByCategory, revenueByRegionAndCategory, valueBuckets, avgOrderValueByDay);
+    }
+
+    // groupingBy adds keys with computeIfAbsent, which puts a new key at the head of its hash bucket where put()
+    // would append it, so colliding keys only iterate in the original order when added the same way
+    private static <K, V> void fill(Map<K, V> map, K key, V value) {
+        map.computeIfAbsent(key, k -> value);
+    }
+
+    // Same boundaries as SalesReport.valueBucket, in paise
+    private static int bucket(long minorAmount) {
+        return minorAmount < 50 * Money.MINOR_PER_MAJOR ? 0 : minorAmount <= 150 * Money.MINOR_PER_MAJOR ? 1 : 2;
+    }
+
+    private Sums newSums() {
+        return exactMoney ? new MinorUnitSums() : new CompensatedSums();
+    }
+
+    private int monthCode(int epochDay) {
+        int slot = epochDay & (DATE_CACHE_SIZE - 1);
+        if (cachedDays[slot] != epochDay) {
+            cachedDays[slot] = epochDay;
+            cachedMonths[slot] = months.encode(IsoDates.monthKey(epochDay));
+        }
+        return cachedMonths[slot];
+    }
+
+    private int pairCode(int region, int category) {
+        if (region >= pairCodes.length) {
+            pairCodes = Arrays.copyOf(pairCodes, Math.max(region + 1, pairCodes.length * 2));
+        }
+        int[] byCategory = pairCodes[region];
+        if (byCategory == null || category >= byCategory.length) {
+            byCategory = byCategory == null ? new int[Math.max(16, category + 1)]
+                    : Arrays.copyOf(byCategory, Math.max(category + 1, byCategory.length * 2));
+            pairCodes[region] = byCategory;
+        }
+        if (byCategory[category] == 0) {
+            pairRegions = grow(pairRegions, pairCount);
+            pairCategories = grow(pairCategories, pairCount);
+            pairRegions[pairCount] = region;
+            pairCategories[pairCount] = category;
+            byCategory[category] = ++pairCount;
+        }
+        return byCategory[category] - 1;
+    }
+
+    private static int[] codeCache(StringDictionary source) {
+        int[] cache = new int[source.size()];
+        Arrays.fill(cache, -1);
+        return cache;
+    }
+
+    private static int localCode(int[] cache, int sourceCode, StringDictionary source, StringDictionary local) {
+        int code = cache[sourceCode];
+        if (code < 0) {
+            code = local.encode(source.decode(sourceCode));
+            cache[sourceCode] = code;
+        }
+        return code;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        long[] values = new long[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+    private static int[] grow(int[] array, int index) {
+        return index < array.length ? array : Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+    }
+
+    private static long[] grow(long[] array, int index) {
+        return index < array.length ? array : Arrays.copyOf(array, Math.max(index + 1, array.length * 2));
+    }
+
+    // First row each code was seen in. Codes are handed out in that order unless a reserved row brings a value in late
+    private static final class FirstSeen {
+        private long[] positions = new long[0];
+
+        void note(int code, long position) {
+            if (code >= positions.length) {
+                int length = positions.length;
+                positions = Arrays.copyOf(positions, Math.max(code + 1, length * 2));
+                Arrays.fill(positions, length, positions.length, Long.MAX_VALUE);
+            }
+            if (position < positions[code]) {
+                positions[code] = position;
+            }
+        }
+
+        // Positions of an aggregator over rows that start at offset, codes[c] is the code here of its code c
+        void addAll(FirstSeen other, int[] codes, long offset) {
+            for (int c = 0; c < codes.length; c++) {
+                note(codes[c], offset + other.positions[c]);
+            }
+        }
+
+        // The first count codes by the row they were first seen in
+        int[] order(int count) {
+            return IntStream.range(0, count).boxed()
+                    .sorted(Comparator.comparingLong(code -> positions[code]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+
+        FirstSeen copy() {
+            FirstSeen copy = new FirstSeen();
+            copy.positions = positions.clone();
+            return copy;
+        }
+    }
+
+    // Per-code totals behind the revenue and price reports. add() gets each value both ways and every
+    // implementation uses the one it keeps
+    private abstract static class Sums {
+        abstract void add(int code, double value, long minorValue);
+
+        abstract double sum(int code);
+
+        abstract double average(int code);
+
+        abstract long count(int code);
+
+        abstract Sums copy();
+
+        abstract void writeTo(DataOutputStream out) throws IOException;
+
+        abstract void readFrom(DataInputStream in) throws IOException;
+
+        // Adds the other totals, codes[c] is the code here of the other side's code c
+        abstract void addAll(Sums other, int[] codes);
+    }
+
+    // Per-code Kahan sums laid out like the double[] state of Collectors.summingDouble and averagingDouble:
+    // running sum, compensation, plain sum for the infinity check, and a count for averages
+    private static final class CompensatedSums extends Sums {
+        private double[] sums = new double[16];
+        private double[] compensations = new double[16];
+        private double[] simpleSums = new double[16];
+        private long[] counts = new long[16];
+
+        @Override
+        void add(int code, double value, long minorValue) {
+            ensureCapacity(code);
+            sumWithCompensation(code, value);
+            simpleSums[code] += value;
+            counts[code]++;
+        }
+
+        // Collectors.summingDouble's combiner, the other side's compensation is subtracted
+        @Override
+        void addAll(Sums other, int[] codes) {
+            CompensatedSums later = (CompensatedSums) other;
+            for (int c = 0; c < codes.length && c < later.sums.length; c++) {
+                ensureCapacity(codes[c]);
+                sumWithCompensation(codes[c], later.sums[c]);
+                sumWithCompensation(codes[c], -later.compensations[c]);
+                simpleSums[codes[c]] += later.simpleSums[c];
+                counts[codes[c]] += later.counts[c];
+            }
+        }
+
+        private void sumWithCompensation(int code, double value) {
+            double tmp = value - compensations[code];
+            double sum = sums[code];
+            double velvel = sum + tmp;
+            compensations[code] = (velvel - sum) - tmp;
+            sums[code] = velvel;
+        }
+
+        private void ensureCapacity(int code) {
+            if (code >= sums.length) {
+                int capacity = Math.max(code + 1, sums.length * 2);
+                sums = Arrays.copyOf(sums, capacity);
+                compensations = Arrays.copyOf(compensations, capacity);
+                simpleSums = Arrays.copyOf(simpleSums, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+        }
+
+        @Override
+        Sums copy() {
+            CompensatedSums copy = new CompensatedSums();
+            copy.sums = sums.clone();
+            copy.compensations = compensations.clone();
+            copy.simpleSums = simpleSums.clone();
+            copy.counts = counts.clone();
+            return copy;
+        }
+
+        @Override
+        void writeTo(DataOutputStream out) throws IOException {
+            writeDoubles(out, sums);
+            writeDoubles(out, compensations);
+            writeDoubles(out, simpleSums);
+            writeLongs(out, counts);
+        }
+
+        @Override
+        void readFrom(DataInputStream in) throws IOException {
+            sums = readDoubles(in);
+            compensations = readDoubles(in);
+            simpleSums = readDoubles(in);
+            counts = readLongs(in);
+        }
+
+        @Override
+        double sum(int code) {
+            double tmp = sums[code] - compensations[code];
+            if (Double.isNaN(tmp) && Double.isInfinite(simpleSums[code])) {
+                return simpleSums[code];
+            }
+            return tmp;
+        }
+
+        @Override
+        double average(int code) {
+            return counts[code] == 0 ? 0.0 : sum(code) / counts[code];
+        }
+
+        @Override
+        long count(int code) {
+            return code < counts.length ? counts[code] : 0;
+        }
+    }
+
+    // Per-code totals in paise. Long addition is exact and commutative, so merging is just adding
+    private static final class MinorUnitSums extends Sums {
+        private long[] sums = new long[16];
+        private long[] counts = new long[16];
+
+        @Override
+        void add(int code, double value, long minorValue) {
+            ensureCapacity(code);
+            sums[code] = Math.addExact(sums[code], minorValue);
+            counts[code]++;
+        }
+
+        @Override
+        void addAll(Sums other, int[] codes) {
+            MinorUnitSums minor = (MinorUnitSums) other;
+            for (int c = 0; c < codes.length && c < minor.sums.length; c++) {
+                ensureCapacity(codes[c]);
+                sums[codes[c]] = Math.addExact(sums[codes[c]], minor.sums[c]);
+                counts[codes[c]] += minor.counts[c];
+            }
+        }
+
+        @Override
+        Sums copy() {
+            MinorUnitSums copy = new MinorUnitSums();
+            copy.sums = sums.clone();
+            copy.counts = counts.clone();
+            return copy;
+        }
+
+        @Override
+        void writeTo(DataOutputStream out) throws IOException {
+            writeLongs(out, sums);
+            writeLongs(out, counts);
+        }
+
+        @Override
+        void readFrom(DataInputStream in) throws IOException {
+            sums = readLongs(in);
+            counts = readLongs(in);
+        }
+
+        @Override
+        double sum(int code) {
+            return Money.toMajorUnits(sums[code]);
+        }
+
+        // Divided once at the end, so the average doesn't depend on the order either
+        @Override
+        double average(int code) {
+            return counts[code] == 0 ? 0.0 : sums[code] / ((double) counts[code] * Money.MINOR_PER_MAJOR);
+        }
+
+        @Override
+        long count(int code) {
+            return code < counts.length ? counts[code] : 0;
+        }
+
+        private void ensureCapacity(int code) {
+            if (code >= sums.length) {
+                int capacity = Math.max(code + 1, sums.length * 2);
+                sums = Arrays.copyOf(sums, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+        }
+    }
+}
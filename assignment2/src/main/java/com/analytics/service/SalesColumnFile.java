@@ -0,0 +1,422 @@
+package com.analytics.service;
+
+import com.analytics.model.ColumnarSalesStore;
+import com.analytics.model.GlobalStats;
+import com.analytics.model.Sale;
+import com.analytics.model.SalesColumns;
+import com.analytics.model.StringDictionary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Binary column file for cleaned sales, so a later run can skip parsing and imputing the CSV
+// Layout, all numbers big-endian:
+//   header   "SALESCOL", version, the CSV the rows came from (real path, size, modification time, SHA-256),
+//            row count, the GlobalStats the rows were imputed with
+//   pages    one dictionary page per text column: value count, then each value in code order
+//   columns  one fixed-width column per field, each starting on an 8-byte boundary
+//   footer   offset, min and max of every column, then the footer offset and "SALESCOL" again
+// Opening a file only reads the header, dictionaries and footer, a column is memory-mapped the first time it is used.
+// A mapping holds at most 2 GB, so each column is mapped in segments of 2^27 rows, 1 GB for the 8-byte columns
+public class SalesColumnFile extends AbstractList<Sale> implements SalesColumns, RandomAccess {
+
+    private static final byte[] MAGIC = "SALESCOL".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 2;
+    private static final int TRAILER_SIZE = Long.BYTES + 8;
+    private static final int SHA256_LENGTH = 32;
+    private static final int SEGMENT_SHIFT = 27;
+
+    // Column order in the file, width in bytes. Min and max of UNIT_PRICE are stored as double bits
+    public enum Column {
+        TRANSACTION_ID(8), PRODUCT_ID(8), PAYMENT_ID(8), EPOCH_DAY(4), QUANTITY(4), UNIT_PRICE(8),
+        CATEGORY(4), REGION(4), PRODUCT(4), PAYMENT_METHOD(4);
+
+        private final int width;
+
+        Column(int width) {
+            this.width = width;
+        }
+    }
+
+    private static final Column[] COLUMNS = Column.values();
+
+    private final Path path;
+    private final Source source;
+    private final int size;
+    private final GlobalStats stats;
+    private final StringDictionary categories;
+    private final StringDictionary regions;
+    private final StringDictionary products;
+    private final StringDictionary paymentMethods;
+    private final long[] offsets = new long[COLUMNS.length];
+    private final long[] mins = new long[COLUMNS.length];
+    private final long[] maxes = new long[COLUMNS.length];
+    private final int segmentShift;
+    private final int segmentMask;
+    private final int segments;
+    // Segment s of column c at c * segments + s
+    private final AtomicReferenceArray<ByteBuffer> mapped;
+
+    // The CSV as it was when its rows were read, so a run on another file or a changed one doesn't reuse them
+    public record Source(String path, long size, long modifiedNanos, byte[] sha256) {
+
+        public static Source of(Path csvPath) throws IOException {
+            return new Source(csvPath.toRealPath().toString(), Files.size(csvPath), modifiedNanos(csvPath),
+                    RollupCache.sha256(csvPath, Files.size(csvPath)));
+        }
+
+        // Same file and size, and either the same modification time or, when the file was only touched, the same
+        // bytes. Only that last case reads the CSV
+        public boolean matches(Path csvPath) throws IOException {
+            if (!path.equals(csvPath.toRealPath().toString()) || size != Files.size(csvPath)) {
+                return false;
+            }
+            return modifiedNanos == modifiedNanos(csvPath) || Arrays.equals(sha256, RollupCache.sha256(csvPath, size));
+        }
+
+        private static long modifiedNanos(Path csvPath) throws IOException {
+            return Files.getLastModifiedTime(csvPath).to(TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private SalesColumnFile(Path path, Source source, int size, GlobalStats stats, StringDictionary[] dictionaries,
+                            int segmentShift) {
+        this.path = path;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1 << segmentShift) - 1;
+        this.segments = Math.max(1, (int) (((long) size + segmentMask) >>> segmentShift));
+        this.mapped = new AtomicReferenceArray<>(COLUMNS.length * segments);
+        this.source = source;
+        this.size = size;
+        this.stats = stats;
+        this.categories = dictionaries[0];
+        this.regions = dictionaries[1];
+        this.products = dictionaries[2];
+        this.paymentMethods = dictionaries[3];
+    }
+
+    // Writes the store, the stats it was imputed with and the CSV it came from, replacing the file if it exists
+    // The file is written next to the target and moved into place, so a reader never sees half a file
+    public static void write(Path path, ColumnarSalesStore sales, GlobalStats stats, Source source) throws IOException {
+        Path partial = path.resolveSibling(path.getFileName() + ".tmp");
+        writeTo(partial, sales, stats, source);
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeTo(Path path, ColumnarSalesStore sales, GlobalStats stats, Source source) throws IOException {
+        for (int row = 0; row < sales.size(); row++) {
+            if (sales.categoryCode(row) < 0) {
+                throw new IllegalStateException("Row " + row + " was reserved but never filled in");
+            }
+        }
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.write(MAGIC);
+        header.writeInt(VERSION);
+        header.writeUTF(source.path());
+        header.writeLong(source.size());
+        header.writeLong(source.modifiedNanos());
+        header.write(source.sha256());
+        header.writeInt(sales.size());
+        header.writeDouble(stats.meanPrice());
+        header.writeUTF(stats.modeCategory());
+        header.writeUTF(stats.modeRegion());
+        header.writeUTF(stats.modePaymentMethod());
+        header.writeInt(stats.modeQuantity());
+        for (StringDictionary dictionary : new StringDictionary[]{sales.categories(), sales.regions(), sales.products(), sales.paymentMethods()}) {
+            dictionary.writeTo(header);
+        }
+        header.flush();
+
+        long[] offsets = new long[COLUMNS.length];
+        long[] mins = new long[COLUMNS.length];
+        long[] maxes = new long[COLUMNS.length];
+        long position = align(headerBytes.size());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            headerBytes.writeTo(out);
+            pad(out, position - headerBytes.size());
+
+            for (Column column : COLUMNS) {
+                offsets[column.ordinal()] = position;
+                long min = Long.MAX_VALUE;
+                long max = Long.MIN_VALUE;
+                double minPrice = Double.POSITIVE_INFINITY;
+                double maxPrice = Double.NEGATIVE_INFINITY;
+                for (int row = 0; row < sales.size(); row++) {
+                    if (column == Column.UNIT_PRICE) {
+                        double price = sales.unitPrice(row);
+                        out.writeDouble(price);
+                        minPrice = Math.min(minPrice, price);
+                        maxPrice = Math.max(maxPrice, price);
+                        continue;
+                    }
+                    long value = value(sales, column, row);
+                    if (column.width == Long.BYTES) {
+                        out.writeLong(value);
+                    } else {
+                        out.writeInt((int) value);
+                    }
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                mins[column.ordinal()] = column == Column.UNIT_PRICE ? Double.doubleToLongBits(minPrice) : min;
+                maxes[column.ordinal()] = column == Column.UNIT_PRICE ? Double.doubleToLongBits(maxPrice) : max;
+
+                long length = (long) sales.size() * column.width;
+                pad(out, align(length) - length);
+                position += align(length);
+            }
+
+            for (int c = 0; c < COLUMNS.length; c++) {
+                out.writeLong(offsets[c]);
+                out.writeLong(mins[c]);
+                out.writeLong(maxes[c]);
+            }
+            out.writeLong(position);
+            out.write(MAGIC);
+        }
+    }
+
+    // Reads the header, dictionaries and footer, the columns stay on disk until they are needed
+    public static SalesColumnFile open(Path path) throws IOException {
+        return open(path, SEGMENT_SHIFT);
+    }
+
+    // Maps the columns in segments of 2^segmentShift rows, small segments exercise the boundaries in tests
+    public static SalesColumnFile open(Path path, int segmentShift) throws IOException {
+        if (segmentShift < 0 || segmentShift > SEGMENT_SHIFT) {
+            throw new IllegalArgumentException("Segments hold 2^0 to 2^" + SEGMENT_SHIFT + " rows, not 2^" + segmentShift);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < MAGIC.length + TRAILER_SIZE) {
+                throw new IOException("Not a sales column file: " + path);
+            }
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a sales column file: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported sales column file version " + version + ": " + path);
+            }
+            Source source = new Source(in.readUTF(), in.readLong(), in.readLong(), in.readNBytes(SHA256_LENGTH));
+            int size = in.readInt();
+            GlobalStats stats = new GlobalStats(in.readDouble(), in.readUTF(), in.readUTF(), in.readUTF(), in.readInt());
+            StringDictionary[] dictionaries = new StringDictionary[4];
+            for (int d = 0; d < dictionaries.length; d++) {
+                dictionaries[d] = StringDictionary.readFrom(in);
+            }
+
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            readFully(channel, trailer, fileSize - TRAILER_SIZE);
+            long footerOffset = trailer.getLong(0);
+            if (!Arrays.equals(Arrays.copyOfRange(trailer.array(), Long.BYTES, TRAILER_SIZE), MAGIC)
+                    || footerOffset + COLUMNS.length * 3L * Long.BYTES != fileSize - TRAILER_SIZE) {
+                throw new IOException("Sales column file is truncated or damaged: " + path);
+            }
+
+            SalesColumnFile file = new SalesColumnFile(path, source, size, stats, dictionaries, segmentShift);
+            ByteBuffer footer = ByteBuffer.allocate(COLUMNS.length * 3 * Long.BYTES);
+            readFully(channel, footer, footerOffset);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                file.offsets[c] = footer.getLong();
+                file.mins[c] = footer.getLong();
+                file.maxes[c] = footer.getLong();
+                if (file.offsets[c] + (long) size * COLUMNS[c].width > footerOffset) {
+                    throw new IOException("Sales column file is truncated or damaged: " + path);
+                }
+            }
+            return file;
+        }
+    }
+
+    public Source source() {
+        return source;
+    }
+
+    // The stats the rows were imputed with
+    public GlobalStats stats() {
+        return stats;
+    }
+
+    // Smallest and largest value of an integer column, from the footer
+    public long min(Column column) {
+        checkIntegerColumn(column);
+        return mins[column.ordinal()];
+    }
+
+    public long max(Column column) {
+        checkIntegerColumn(column);
+        return maxes[column.ordinal()];
+    }
+
+    public double minUnitPrice() {
+        return Double.longBitsToDouble(mins[Column.UNIT_PRICE.ordinal()]);
+    }
+
+    public double maxUnitPrice() {
+        return Double.longBitsToDouble(maxes[Column.UNIT_PRICE.ordinal()]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Sale get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+        }
+        return new Sale(
+                transactionId(row), epochDay(row), categories.decode(categoryCode(row)),
+                productId(row), products.decode(productCode(row)), regions.decode(regionCode(row)), paymentId(row),
+                paymentMethods.decode(paymentMethodCode(row)), quantity(row), unitPrice(row)
+        );
+    }
+
+    public long transactionId(int row) {
+        return segment(Column.TRANSACTION_ID, row).getLong((row & segmentMask) * 8);
+    }
+
+    public long productId(int row) {
+        return segment(Column.PRODUCT_ID, row).getLong((row & segmentMask) * 8);
+    }
+
+    public long paymentId(int row) {
+        return segment(Column.PAYMENT_ID, row).getLong((row & segmentMask) * 8);
+    }
+
+    public int epochDay(int row) {
+        return segment(Column.EPOCH_DAY, row).getInt((row & segmentMask) * 4);
+    }
+
+    public int quantity(int row) {
+        return segment(Column.QUANTITY, row).getInt((row & segmentMask) * 4);
+    }
+
+    public double unitPrice(int row) {
+        return segment(Column.UNIT_PRICE, row).getDouble((row & segmentMask) * 8);
+    }
+
+    public int categoryCode(int row) {
+        return segment(Column.CATEGORY, row).getInt((row & segmentMask) * 4);
+    }
+
+    public int regionCode(int row) {
+        return segment(Column.REGION, row).getInt((row & segmentMask) * 4);
+    }
+
+    public int productCode(int row) {
+        return segment(Column.PRODUCT, row).getInt((row & segmentMask) * 4);
+    }
+
+    public int paymentMethodCode(int row) {
+        return segment(Column.PAYMENT_METHOD, row).getInt((row & segmentMask) * 4);
+    }
+
+    public StringDictionary categories() {
+        return categories;
+    }
+
+    public StringDictionary regions() {
+        return regions;
+    }
+
+    public StringDictionary products() {
+        return products;
+    }
+
+    public StringDictionary paymentMethods() {
+        return paymentMethods;
+    }
+
+    // A mapping stays valid after its channel is closed, so each segment is mapped once and kept
+    private ByteBuffer segment(Column column, int row) {
+        int index = column.ordinal() * segments + (row >>> segmentShift);
+        ByteBuffer buffer = mapped.get(index);
+        return buffer != null ? buffer : map(column, row >>> segmentShift, index);
+    }
+
+    private synchronized ByteBuffer map(Column column, int segment, int index) {
+        ByteBuffer buffer = mapped.get(index);
+        if (buffer != null) {
+            return buffer;
+        }
+        long first = (long) segment << segmentShift;
+        long length = Math.min(size - first, 1L << segmentShift) * column.width;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer segmentBuffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    offsets[column.ordinal()] + first * column.width, length);
+            mapped.set(index, segmentBuffer);
+            return segmentBuffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map column " + column + " of " + path, e);
+        }
+    }
+
+    private static long value(ColumnarSalesStore sales, Column column, int row) {
+        return switch (column) {
+            case TRANSACTION_ID -> sales.transactionId(row);
+            case PRODUCT_ID -> sales.productId(row);
+            case PAYMENT_ID -> sales.paymentId(row);
+            case EPOCH_DAY -> sales.epochDay(row);
+            case QUANTITY -> sales.quantity(row);
+            case CATEGORY -> sales.categoryCode(row);
+            case REGION -> sales.regionCode(row);
+            case PRODUCT -> sales.productCode(row);
+            case PAYMENT_METHOD -> sales.paymentMethodCode(row);
+            case UNIT_PRICE -> throw new IllegalArgumentException("UNIT_PRICE is not an integer column");
+        };
+    }
+
+    private static void checkIntegerColumn(Column column) {
+        if (column == Column.UNIT_PRICE) {
+            throw new IllegalArgumentException("UNIT_PRICE is not an integer column, use minUnitPrice/maxUnitPrice");
+        }
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static void pad(DataOutputStream out, long bytes) throws IOException {
+        for (long i = 0; i < bytes; i++) {
+            out.write(0);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+    }
+}
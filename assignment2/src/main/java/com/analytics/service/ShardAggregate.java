@@ -0,0 +1,122 @@
+package com.analytics.service;
+
+import com.analytics.exception.CsvParsingException;
+import com.analytics.exception.DataValidationException;
+import com.analytics.model.GlobalStats;
+import com.analytics.model.MemoryBudget;
+import com.analytics.model.RawSale;
+import com.analytics.model.Sale;
+import com.analytics.model.SalesColumn;
+import com.analytics.util.AnalyticsLogger;
+import com.analytics.util.PipelineMetrics;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// What one CSV shard contributes to a multi-file report, from a single scan of it
+// Clean rows go straight into the shard's stats and aggregate like in TailingAnalytics. Rows that need the mean or a
+// mode are kept raw, since those have to come from every shard, and ingestion errors are buffered so the shards can
+// be scanned at the same time and still be logged one after the other. No row is kept beyond the raw ones, and those
+// go to a spill file once they outgrow the memory budget
+class ShardAggregate {
+
+    private final ImputationService imputer;
+    private final StatsAccumulator stats = new StatsAccumulator();
+    private final SalesAggregator sales;
+    private final DeferredRows deferred;
+    private final List<String[]> bufferedErrors = new ArrayList<>();
+
+    private ShardAggregate(ImputationService imputer, boolean exactMoney, MemoryBudget budget) {
+        this.imputer = imputer;
+        this.sales = exactMoney ? SalesAggregator.exactMoney() : new SalesAggregator();
+        this.deferred = new DeferredRows(budget);
+    }
+
+    // Reads the whole shard, each one starts with its own header line and may order its columns differently
+    static ShardAggregate scan(Path csvPath, Set<SalesColumn> columns, boolean exactMoney, MemoryBudget budget)
+            throws IOException {
+        ImputationService imputer = new ImputationService(CsvHeader.read(csvPath).project(columns));
+        ShardAggregate shard = new ShardAggregate(imputer, exactMoney, budget);
+        if (GzipCsvReader.isGzip(csvPath)) {
+            GzipCsvReader.forEachRow(csvPath, shard::acceptRow);
+        } else {
+            new MappedCsvParser().forEachRow(csvPath, shard::acceptRow);
+        }
+        return shard;
+    }
+
+    // Adds a later shard: its errors are logged now, its stats, aggregate and held-back rows are merged in
+    void append(ShardAggregate later) throws IOException {
+        for (String[] error : later.bufferedErrors) {
+            AnalyticsLogger.logIngestionError(error[0], error[1]);
+        }
+        stats.merge(later.stats);
+        // The later shard's rows are numbered after the ones of this aggregate
+        long offset = sales.rowCount();
+        sales.merge(later.sales);
+        deferred.addAll(later.deferred, offset);
+    }
+
+    // Errors of the first shard, which nothing is appended to
+    void logErrors() {
+        for (String[] error : bufferedErrors) {
+            AnalyticsLogger.logIngestionError(error[0], error[1]);
+        }
+        bufferedErrors.clear();
+    }
+
+    GlobalStats stats() {
+        return stats.toGlobalStats();
+    }
+
+    // Which columns were read, the same for every shard of a report
+    CsvHeader header() {
+        return imputer.parser().header();
+    }
+
+    // Imputes the held-back rows with the stats of all shards, their keys were validated when they were read
+    // Each goes in at the place it had in the input, so the report lists values in the order two-pass does
+    SalesAggregator finish(GlobalStats global) throws IOException {
+        deferred.forEach((raw, position) -> sales.accept(imputer.imputeAndMap(raw, global), position));
+        deferred.close();
+        return sales;
+    }
+
+    private void acceptRow(CsvRow row) {
+        PipelineMetrics.rowRead();
+        Sale sale = imputer.mapIfSimple(row);
+        if (sale != null) {
+            stats.accept(sale);
+            sales.accept(sale);
+            return;
+        }
+
+        String line = row.line();
+        RawSale raw;
+        try {
+            raw = imputer.parser().parseLine(line);
+        } catch (CsvParsingException e) {
+            PipelineMetrics.parseError();
+            bufferedErrors.add(new String[]{line, e.getMessage()});
+            return;
+        }
+        stats.accept(raw);
+
+        try {
+            sale = imputer.mapIfComplete(raw);
+        } catch (DataValidationException e) {
+            PipelineMetrics.validationReject();
+            bufferedErrors.add(new String[]{imputer.parser().describe(raw, line), e.getMessage()});
+            return;
+        }
+
+        if (sale != null) {
+            sales.accept(sale);
+        } else {
+            deferred.add(raw, sales.reserveRow());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.analytics.service;
+
+import com.analytics.exception.CsvParsingException;
+import com.analytics.exception.DataValidationException;
+import com.analytics.model.ColumnarSalesStore;
+import com.analytics.model.GlobalStats;
+import com.analytics.model.RawSale;
+import com.analytics.model.Sale;
+import com.analytics.util.AnalyticsLogger;
+import com.analytics.util.PipelineMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Row-by-row state for the single-scan ingestion modes
+// Complete rows are mapped as they arrive, rows that need the mean or a mode keep their slot until the stats are final
+class SinglePassCollector {
+
+    private final ImputationService imputer;
+    private final StatsAccumulator accumulator;
+    private final ColumnarSalesStore sales = new ColumnarSalesStore();
+    private final List<RawSale> deferred = new ArrayList<>();
+    private final List<Integer> deferredSlots = new ArrayList<>();
+    // Only set for a chunk of a parallel load, errors then wait here until the chunk is appended in file order
+    private final List<String[]> bufferedErrors;
+
+    SinglePassCollector(ImputationService imputer) {
+        this(imputer, false);
+    }
+
+    private SinglePassCollector(ImputationService imputer, boolean chunk) {
+        this.imputer = imputer;
+        this.accumulator = chunk ? StatsAccumulator.recording() : new StatsAccumulator();
+        this.bufferedErrors = chunk ? new ArrayList<>() : null;
+    }
+
+    // Collector for one piece of the file, meant to be appended to a plain collector afterwards
+    static SinglePassCollector forChunk(ImputationService imputer) {
+        return new SinglePassCollector(imputer, true);
+    }
+
+    void acceptLine(String line) {
+        PipelineMetrics.rowRead();
+        parseAndAccept(line);
+    }
+
+    // Clean rows come straight from the bytes, anything else takes the String path
+    void acceptRow(CsvRow row) {
+        PipelineMetrics.rowRead();
+        Sale sale = imputer.mapIfSimple(row);
+        if (sale != null) {
+            acceptComplete(sale);
+        } else {
+            parseAndAccept(row.line());
+        }
+    }
+
+    // Stream won't stop while parsing and continues by logging the errors
+    private void parseAndAccept(String line) {
+        RawSale raw;
+        try {
+            raw = imputer.parser().parseLine(line);
+        } catch (CsvParsingException e) {
+            PipelineMetrics.parseError();
+            logIngestionError(line, e.getMessage());
+            return;
+        }
+        accept(raw, line);
+    }
+
+    private void accept(RawSale raw, String line) {
+        accumulator.accept(raw);
+
+        Sale sale;
+        try {
+            sale = imputer.mapIfComplete(raw);
+        } catch (DataValidationException e) {
+            PipelineMetrics.validationReject();
+            // Same message imputeAndMap would have logged in the second pass
+            logIngestionError(imputer.parser().describe(raw, line), e.getMessage());
+            return;
+        }
+
+        if (sale != null) {
+            sales.add(sale);
+        } else {
+            deferred.add(raw);
+            deferredSlots.add(sales.size());
+            sales.add(null);
+        }
+    }
+
+    // For rows the caller already mapped without imputation
+    void acceptComplete(Sale sale) {
+        accumulator.accept(sale);
+        sales.add(sale);
+    }
+
+    // Adds a later chunk as if its rows had been read here, its buffered errors are written out now
+    void append(SinglePassCollector chunk) {
+        for (String[] error : chunk.bufferedErrors) {
+            logIngestionError(error[0], error[1]);
+        }
+        accumulator.merge(chunk.accumulator);
+
+        int offset = sales.size();
+        sales.appendAll(chunk.sales);
+        deferred.addAll(chunk.deferred);
+        for (int slot : chunk.deferredSlots) {
+            deferredSlots.add(offset + slot);
+        }
+    }
+
+    GlobalStats stats() {
+        return accumulator.toGlobalStats();
+    }
+
+    // Imputes the held-back rows in file order, their keys were validated when they were read
+    ColumnarSalesStore finish(GlobalStats stats) {
+        for (int i = 0; i < deferred.size(); i++) {
+            sales.set(deferredSlots.get(i), imputer.imputeAndMap(deferred.get(i), stats));
+        }
+        return sales;
+    }
+
+    private void logIngestionError(String line, String message) {
+        if (bufferedErrors != null) {
+            bufferedErrors.add(new String[]{line, message});
+        } else {
+            AnalyticsLogger.logIngestionError(line, message);
+        }
+    }
+}
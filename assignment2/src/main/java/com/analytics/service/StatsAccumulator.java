@@ -0,0 +1,206 @@
+package com.analytics.service;
+
+import com.analytics.model.GlobalStats;
+import com.analytics.model.RawSale;
+import com.analytics.model.Sale;
+import com.analytics.model.SalesColumn;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Running mean price and category/region frequencies used to build GlobalStats
+// Shared by the two-pass stats scan and the single-pass ingestion so both count rows the same way
+public class StatsAccumulator {
+
+    // Compensated price sum, the same arithmetic as DoubleSummaryStatistics but with the state out in the open
+    // so it can be saved and restored exactly
+    private long count;
+    private double sum;
+    private double sumCompensation;
+    private double simpleSum;
+    // Kept in first-seen order so merged chunks can rebuild the exact map a sequential scan would have
+    private final Map<String, Long> categoryFreq = new LinkedHashMap<>();
+    private final Map<String, Long> regionFreq = new LinkedHashMap<>();
+    // Set for a recording accumulator, prices are kept in order instead of summed
+    private double[] prices;
+    private int priceCount;
+
+    // For one chunk of a parallel scan. The compensated sum depends on the order values are added in,
+    // so a chunk keeps its prices and merge() feeds them in file order to get the same mean as one scan
+    public static StatsAccumulator recording() {
+        StatsAccumulator accumulator = new StatsAccumulator();
+        accumulator.prices = new double[1024];
+        return accumulator;
+    }
+
+    // Every parsed row counts, even ones that later fail ID/date validation
+    public void accept(RawSale raw) {
+        double price = ImputationService.parsePrice(raw.unitPrice());
+        if (!Double.isNaN(price) || ImputationService.isValidDouble(raw.unitPrice())) {
+            acceptPrice(price);
+        }
+
+        if (!raw.category().isBlank()) {
+            categoryFreq.merge(raw.category(), 1L, Long::sum);
+        }
+
+        if (!raw.region().isBlank()) {
+            regionFreq.merge(raw.region(), 1L, Long::sum);
+        }
+    }
+
+    // Same counts accept(RawSale) would make, straight from the bytes of a mapped row with the given header
+    // Returns false without counting anything when the row has to go through parseLine to tell
+    boolean accept(CsvRow row, CsvHeader header) {
+        if (row.fieldCount() < header.fieldCount() || !row.isAscii()) {
+            return false;
+        }
+        int priceField = header.field(SalesColumn.UNIT_PRICE);
+        int categoryField = header.field(SalesColumn.CATEGORY);
+        int regionField = header.field(SalesColumn.REGION);
+        double price = priceField < 0 ? Double.NaN : row.parseDouble(priceField);
+        if (Double.isNaN(price) && priceField >= 0 && row.length(priceField) > 0) {
+            return false;
+        }
+
+        if (!Double.isNaN(price)) {
+            acceptPrice(price);
+        }
+        if (categoryField >= 0 && row.length(categoryField) > 0) {
+            categoryFreq.merge(row.string(categoryField), 1L, Long::sum);
+        }
+        if (regionField >= 0 && row.length(regionField) > 0) {
+            regionFreq.merge(row.string(regionField), 1L, Long::sum);
+        }
+        return true;
+    }
+
+    // Same counts accept(RawSale) would make for a row that needed no imputation
+    // Columns that weren't read come as "" and aren't counted
+    public void accept(Sale sale) {
+        acceptPrice(sale.unitPrice());
+        if (!sale.category().isEmpty()) {
+            categoryFreq.merge(sale.category(), 1L, Long::sum);
+        }
+        if (!sale.region().isEmpty()) {
+            regionFreq.merge(sale.region(), 1L, Long::sum);
+        }
+    }
+
+    // Adds the rows of an accumulator that covered a later part of the file
+    public void merge(StatsAccumulator later) {
+        if (later.prices != null) {
+            for (int i = 0; i < later.priceCount; i++) {
+                acceptPrice(later.prices[i]);
+            }
+        } else if (prices == null) {
+            // DoubleSummaryStatistics.combine
+            count += later.count;
+            simpleSum += later.simpleSum;
+            sumWithCompensation(later.sum);
+            sumWithCompensation(-later.sumCompensation);
+        } else {
+            throw new IllegalStateException("A recording accumulator can only merge another recording accumulator");
+        }
+        later.categoryFreq.forEach((k, v) -> categoryFreq.merge(k, v, Long::sum));
+        later.regionFreq.forEach((k, v) -> regionFreq.merge(k, v, Long::sum));
+    }
+
+    public GlobalStats toGlobalStats() {
+        if (prices != null) {
+            StatsAccumulator replayed = new StatsAccumulator();
+            for (int i = 0; i < priceCount; i++) {
+                replayed.acceptPrice(prices[i]);
+            }
+            return new GlobalStats(replayed.meanPrice(), getMode(categoryFreq), getMode(regionFreq), "Cash", 1);
+        }
+        return new GlobalStats(meanPrice(), getMode(categoryFreq), getMode(regionFreq), "Cash", 1);
+    }
+
+    // Saves the running state, only for a plain accumulator
+    void writeTo(DataOutputStream out) throws IOException {
+        if (prices != null) {
+            throw new IllegalStateException("A recording accumulator can't be saved");
+        }
+        out.writeLong(count);
+        out.writeDouble(sum);
+        out.writeDouble(sumCompensation);
+        out.writeDouble(simpleSum);
+        writeFrequencies(out, categoryFreq);
+        writeFrequencies(out, regionFreq);
+    }
+
+    static StatsAccumulator readFrom(DataInputStream in) throws IOException {
+        StatsAccumulator accumulator = new StatsAccumulator();
+        accumulator.count = in.readLong();
+        accumulator.sum = in.readDouble();
+        accumulator.sumCompensation = in.readDouble();
+        accumulator.simpleSum = in.readDouble();
+        readFrequencies(in, accumulator.categoryFreq);
+        readFrequencies(in, accumulator.regionFreq);
+        return accumulator;
+    }
+
+    // Same result as DoubleSummaryStatistics.getAverage
+    private double meanPrice() {
+        if (count == 0) {
+            return 0.0;
+        }
+        double total = sum - sumCompensation;
+        if (Double.isNaN(total) && Double.isInfinite(simpleSum)) {
+            total = simpleSum;
+        }
+        return total / count;
+    }
+
+    private void acceptPrice(double price) {
+        if (prices == null) {
+            count++;
+            simpleSum += price;
+            sumWithCompensation(price);
+            return;
+        }
+        if (priceCount == prices.length) {
+            prices = Arrays.copyOf(prices, priceCount * 2);
+        }
+        prices[priceCount++] = price;
+    }
+
+    private void sumWithCompensation(double value) {
+        double tmp = value - sumCompensation;
+        double velvel = sum + tmp;
+        sumCompensation = (velvel - sum) - tmp;
+        sum = velvel;
+    }
+
+    private static void writeFrequencies(DataOutputStream out, Map<String, Long> freqMap) throws IOException {
+        out.writeInt(freqMap.size());
+        for (Map.Entry<String, Long> entry : freqMap.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static void readFrequencies(DataInputStream in, Map<String, Long> freqMap) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            freqMap.put(in.readUTF(), in.readLong());
+        }
+    }
+
+    // Ties go to whichever key iterates first in a HashMap built with merge() in first-seen order, as they always have
+    // merge() puts a new key at the head of its bucket, so put() would reorder colliding keys
+    private static String getMode(Map<String, Long> freqMap) {
+        Map<String, Long> byHash = new HashMap<>();
+        freqMap.forEach((k, v) -> byHash.merge(k, v, Long::sum));
+        return byHash.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse("Unknown");
+    }
+}
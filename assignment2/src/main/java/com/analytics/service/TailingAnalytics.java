@@ -0,0 +1,275 @@
+package com.analytics.service;
+
+import com.analytics.exception.CsvParsingException;
+import com.analytics.exception.DataValidationException;
+import com.analytics.model.ColumnarSalesStore;
+import com.analytics.model.GlobalStats;
+import com.analytics.model.QueryResult;
+import com.analytics.model.RawSale;
+import com.analytics.model.Sale;
+import com.analytics.model.SalesQuery;
+import com.analytics.model.SalesReport;
+import com.analytics.util.AnalyticsLogger;
+import com.analytics.util.PipelineMetrics;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Incremental analytics over a CSV that keeps getting rows appended
+// Each poll() only reads the complete lines added since the last one. Clean rows go straight into the running stats
+// and a running SalesAggregator; rows that need imputation are kept raw, because what they get filled in with
+// depends on stats that are still changing, and are imputed with the latest stats whenever a report is built.
+// Each of them keeps the place it had in the file, so the report lists values in the order a full run does.
+// With keepSales the clean rows are also kept in columns, so queries can run over everything read so far
+public class TailingAnalytics {
+
+    // How much of each end of the bytes read so far is kept to tell an appended file from a rewritten one
+    private static final int CHECK_BYTES = 4096;
+
+    private final Path csvPath;
+    private final boolean exactMoney;
+    private final boolean keepSales;
+    // Set up from the header whenever the file is read from the start
+    private ImputationService imputer = new ImputationService();
+    private final MappedCsvParser csvParser = new MappedCsvParser();
+
+    private StatsAccumulator stats;
+    private SalesAggregator cleanSales;
+    private List<RawSale> deferred;
+    // Row position in cleanSales that each deferred row reserved
+    private List<Long> deferredPositions;
+    private ColumnarSalesStore sales;
+    // Deferred rows before this index already had their imputation written to the cleaning log
+    private int loggedDeferred;
+    private long offset;
+    // The file read up to offset: its identity where the file system has one, its first bytes and the ones before offset
+    private Object fileKey;
+    private byte[] head;
+    private byte[] tail;
+    private long rowCount;
+    private int polledRows;
+
+    public TailingAnalytics(Path csvPath) {
+        this(csvPath, false);
+    }
+
+    // exactMoney aggregates in whole paise, see SalesAggregator.exactMoney()
+    public TailingAnalytics(Path csvPath, boolean exactMoney) {
+        this(csvPath, exactMoney, false);
+    }
+
+    public TailingAnalytics(Path csvPath, boolean exactMoney, boolean keepSales) {
+        this.csvPath = csvPath;
+        this.exactMoney = exactMoney;
+        this.keepSales = keepSales;
+        reset();
+    }
+
+    // Reads the lines appended since the last call and returns how many rows they held
+    // A last line without its line break yet is left for the next poll. A file that was replaced, truncated or
+    // rewritten is read again from the start, even when it is now as long as before or longer
+    public int poll() throws IOException {
+        if (offset > 0 && replaced()) {
+            System.out.println("File was replaced, reading it again from the start");
+            reset();
+        }
+
+        long end = MappedCsvParser.lastLineEnd(csvPath);
+        if (end <= offset) {
+            return 0;
+        }
+
+        polledRows = 0;
+        // The header is the first line of the file, so only the very first read skips it
+        if (offset == 0) {
+            imputer = new ImputationService(CsvHeader.read(csvPath).projectAll());
+        }
+        csvParser.forEachRow(csvPath, offset, end, offset == 0, this::acceptRow);
+        offset = end;
+        remember();
+        rowCount += polledRows;
+        return polledRows;
+    }
+
+    public GlobalStats stats() {
+        return stats.toGlobalStats();
+    }
+
+    // The report over every row read so far, held-back rows imputed with the current stats
+    // Their imputation is logged once, the first time they make it into a report
+    public SalesReport report() {
+        GlobalStats current = stats();
+        SalesAggregator aggregator = cleanSales.copy();
+        for (int i = 0; i < deferred.size(); i++) {
+            aggregator.accept(imputer.imputeAndMap(deferred.get(i), current, i >= loggedDeferred), deferredPositions.get(i));
+        }
+        loggedDeferred = deferred.size();
+        return aggregator.toReport();
+    }
+
+    // A query over every row read so far, held-back rows imputed with the current stats like in report()
+    public QueryResult query(QueryEngine engine, SalesQuery query) {
+        if (!keepSales) {
+            throw new IllegalStateException("Queries need the rows, create this with keepSales");
+        }
+        GlobalStats current = stats();
+        List<Sale> imputed = new ArrayList<>(deferred.size());
+        for (RawSale raw : deferred) {
+            imputed.add(imputer.imputeAndMap(raw, current, false));
+        }
+        return engine.run(query, sales, imputed);
+    }
+
+    public long rowCount() {
+        return rowCount;
+    }
+
+    public boolean isExactMoney() {
+        return exactMoney;
+    }
+
+    // Byte position up to which the file has been read
+    public long offset() {
+        return offset;
+    }
+
+    // Saves where the file was read up to and everything built from it, for RollupCache
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(offset);
+        out.writeLong(rowCount);
+        stats.writeTo(out);
+        cleanSales.writeTo(out);
+        out.writeInt(deferred.size());
+        for (int i = 0; i < deferred.size(); i++) {
+            out.writeLong(deferredPositions.get(i));
+            DeferredRows.write(out, deferred.get(i));
+        }
+        out.writeInt(loggedDeferred);
+    }
+
+    // Picks up from a saved state, the next poll() reads on from the saved offset
+    static TailingAnalytics readFrom(Path csvPath, DataInputStream in) throws IOException {
+        long offset = in.readLong();
+        long rowCount = in.readLong();
+        StatsAccumulator stats = StatsAccumulator.readFrom(in);
+        SalesAggregator cleanSales = SalesAggregator.readFrom(in);
+        TailingAnalytics analytics = new TailingAnalytics(csvPath, cleanSales.isExactMoney());
+        analytics.imputer = new ImputationService(CsvHeader.read(csvPath).projectAll());
+        analytics.offset = offset;
+        analytics.rowCount = rowCount;
+        analytics.stats = stats;
+        analytics.cleanSales = cleanSales;
+        int deferredCount = in.readInt();
+        for (int i = 0; i < deferredCount; i++) {
+            analytics.deferredPositions.add(in.readLong());
+            analytics.deferred.add(DeferredRows.read(in));
+        }
+        analytics.loggedDeferred = in.readInt();
+        // RollupCache has checked that the bytes up to the offset are the ones the state was built from
+        analytics.remember();
+        return analytics;
+    }
+
+    private void reset() {
+        stats = new StatsAccumulator();
+        cleanSales = exactMoney ? SalesAggregator.exactMoney() : new SalesAggregator();
+        deferred = new ArrayList<>();
+        deferredPositions = new ArrayList<>();
+        sales = keepSales ? new ColumnarSalesStore() : null;
+        loggedDeferred = 0;
+        offset = 0;
+        fileKey = null;
+        head = null;
+        tail = null;
+        rowCount = 0;
+    }
+
+    // Same handling as the single-pass modes: clean rows from the bytes, everything else through parseLine
+    private void acceptRow(CsvRow row) {
+        polledRows++;
+        PipelineMetrics.rowRead();
+        Sale sale = imputer.mapIfSimple(row);
+        if (sale != null) {
+            stats.accept(sale);
+            cleanSales.accept(sale);
+            keep(sale);
+            return;
+        }
+
+        String line = row.line();
+        RawSale raw;
+        try {
+            raw = imputer.parser().parseLine(line);
+        } catch (CsvParsingException e) {
+            PipelineMetrics.parseError();
+            AnalyticsLogger.logIngestionError(line, e.getMessage());
+            return;
+        }
+        stats.accept(raw);
+
+        try {
+            sale = imputer.mapIfComplete(raw);
+        } catch (DataValidationException e) {
+            PipelineMetrics.validationReject();
+            AnalyticsLogger.logIngestionError(raw.toString(), e.getMessage());
+            return;
+        }
+
+        if (sale != null) {
+            cleanSales.accept(sale);
+            keep(sale);
+        } else {
+            deferred.add(raw);
+            deferredPositions.add(cleanSales.reserveRow());
+        }
+    }
+
+    // Appending leaves the bytes already read alone. A file moved into place has another key, and one rewritten
+    // in place has changed at the start or just before the offset unless it was rewritten with those bytes
+    private boolean replaced() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(csvPath, BasicFileAttributes.class);
+        if (attributes.size() < offset) {
+            return true;
+        }
+        if (fileKey != null && !fileKey.equals(attributes.fileKey())) {
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            return !Arrays.equals(head, read(channel, 0, head.length))
+                    || !Arrays.equals(tail, read(channel, offset - tail.length, tail.length));
+        }
+    }
+
+    private void remember() throws IOException {
+        fileKey = Files.readAttributes(csvPath, BasicFileAttributes.class).fileKey();
+        int length = (int) Math.min(CHECK_BYTES, offset);
+        try (FileChannel channel = FileChannel.open(csvPath, StandardOpenOption.READ)) {
+            head = read(channel, 0, length);
+            tail = read(channel, offset - length, length);
+        }
+    }
+
+    private static byte[] read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+            // Positional reads can come back short
+        }
+        return buffer.array();
+    }
+
+    private void keep(Sale sale) {
+        if (sales != null) {
+            sales.add(sale);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.analytics.sketch;
+
+// Approximate counts per key in a fixed depth x width table of counters
+// Each key adds to one counter per row and its estimate is the smallest of them, so an estimate is never below the
+// true count and is over it by at most total / width * e with probability 1 - e^-depth
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final long[][] counters;
+    private long total;
+
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("Width and depth must be positive: " + width + " x " + depth);
+        }
+        this.width = width;
+        this.depth = depth;
+        this.counters = new long[depth][width];
+    }
+
+    public void add(String key, long count) {
+        long hash = Hashing.hash(key);
+        for (int row = 0; row < depth; row++) {
+            counters[row][column(hash, row)] += count;
+        }
+        total += count;
+    }
+
+    public long estimate(String key) {
+        long hash = Hashing.hash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row][column(hash, row)]);
+        }
+        return estimate;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    // Adds the other sketch's counts, both need the same shape since a key must land on the same counters
+    public void merge(CountMinSketch other) {
+        if (other.width != width || other.depth != depth) {
+            throw new IllegalArgumentException("Cannot merge a " + other.depth + " x " + other.width
+                    + " count-min sketch into a " + depth + " x " + width + " one");
+        }
+        for (int row = 0; row < depth; row++) {
+            for (int column = 0; column < width; column++) {
+                counters[row][column] += other.counters[row][column];
+            }
+        }
+        total += other.total;
+    }
+
+    // The row hashes are derived from the two halves of one 64-bit hash (Kirsch-Mitzenmacher)
+    private int column(long hash, int row) {
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return Math.floorMod(combined, width);
+    }
+}
@@ -0,0 +1,27 @@
+package com.analytics.sketch;
+
+// 64-bit hashes for the sketches, String.hashCode() has too few bits and too many collisions to count distinct values
+final class Hashing {
+
+    private Hashing() {
+    }
+
+    // SplitMix64's mixer on the value times the golden ratio, every input bit ends up affecting every output bit
+    // and consecutive IDs land as independently as random values would
+    static long hash(long value) {
+        long h = value * 0x9e3779b97f4a7c15L;
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    // FNV-1a over the chars, finished with the mixer above since FNV alone mixes the high bits poorly
+    static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return hash(h);
+    }
+}
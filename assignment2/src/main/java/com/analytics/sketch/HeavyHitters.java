@@ -0,0 +1,78 @@
+package com.analytics.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+// The k keys with the largest counts, without keeping a counter per key
+// Counts go into a count-min sketch, and a min-heap keeps the k keys with the highest estimates seen so far. A key
+// that is added enough to push out the smallest candidate takes its place, so memory stays fixed however many
+// distinct keys the input has
+public class HeavyHitters {
+
+    public record Estimate(String key, long count) {}
+
+    private final int k;
+    private final CountMinSketch counts;
+    private final Map<String, Long> candidates = new HashMap<>();
+    private final PriorityQueue<Estimate> smallestFirst =
+            new PriorityQueue<>(Comparator.comparingLong(Estimate::count).thenComparing(Estimate::key));
+
+    public HeavyHitters(int k, int width, int depth) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.k = k;
+        this.counts = new CountMinSketch(width, depth);
+    }
+
+    public void add(String key, long count) {
+        counts.add(key, count);
+        offer(key, counts.estimate(key));
+    }
+
+    // Highest estimate first, ties by key
+    public List<Estimate> top() {
+        List<Estimate> top = new ArrayList<>(smallestFirst);
+        top.sort(Comparator.comparingLong(Estimate::count).reversed().thenComparing(Estimate::key));
+        return top;
+    }
+
+    // Merges the counts, then ranks the candidates of both sides again against the merged counts
+    public void merge(HeavyHitters other) {
+        if (other.k != k) {
+            throw new IllegalArgumentException("Cannot merge top-" + other.k + " into top-" + k);
+        }
+        counts.merge(other.counts);
+
+        Set<String> keys = new HashSet<>(candidates.keySet());
+        keys.addAll(other.candidates.keySet());
+        candidates.clear();
+        smallestFirst.clear();
+        for (String key : keys) {
+            offer(key, counts.estimate(key));
+        }
+    }
+
+    private void offer(String key, long estimate) {
+        Long current = candidates.get(key);
+        if (current != null) {
+            // Estimates only grow, so re-inserting keeps the heap ordered
+            smallestFirst.remove(new Estimate(key, current));
+        } else if (candidates.size() == k) {
+            Estimate smallest = smallestFirst.peek();
+            if (estimate <= smallest.count()) {
+                return;
+            }
+            smallestFirst.poll();
+            candidates.remove(smallest.key());
+        }
+        candidates.put(key, estimate);
+        smallestFirst.add(new Estimate(key, estimate));
+    }
+}
@@ -0,0 +1,72 @@
+package com.analytics.sketch;
+
+// Approximate number of distinct values in 2^precision one-byte registers
+// The top bits of a value's hash pick a register, which keeps the longest run of leading zeros seen in the rest.
+// The relative error is about 1.04 / sqrt(2^precision), 0.8% at the default precision of 14 (16 KB)
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 14;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void add(long value) {
+        addHash(Hashing.hash(value));
+    }
+
+    public void add(String value) {
+        addHash(Hashing.hash(value));
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        // Small cardinalities leave registers empty, linear counting on them is more accurate there
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    // Register-wise maximum, the result is the sketch of both inputs together
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge precision " + other.precision + " into precision " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+        }
+    }
+
+    private void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // The marker bit caps the run at 64 - precision when the remaining bits are all zero
+        long rest = hash << precision | 1L << (precision - 1);
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.analytics.sketch;
+
+import com.analytics.model.Sale;
+
+import java.util.List;
+
+// Fixed-size stand-ins for the parts of the report that grow with the data
+// Top products come from a count-min sketch with a heap instead of a map of every product, distinct products,
+// payment IDs and transactions from HyperLogLog, and order value quantiles from a KLL sketch instead of three
+// fixed buckets. Together they take a few hundred KB however many rows and products there are, and sketches built
+// over separate parts of the input merge into the sketches of the whole
+public class SalesSketches {
+
+    public static final int TOP_PRODUCTS = 3;
+    // A few more candidates than are printed, so the last places aren't decided by the heap's cut-off
+    private static final int CANDIDATES = 4 * TOP_PRODUCTS;
+    private static final int WIDTH = 2048;
+    private static final int DEPTH = 5;
+
+    private final HeavyHitters unitsByProduct = new HeavyHitters(CANDIDATES, WIDTH, DEPTH);
+    private final HyperLogLog products = new HyperLogLog();
+    private final HyperLogLog paymentIds = new HyperLogLog();
+    private final HyperLogLog transactions = new HyperLogLog();
+    private final QuantileSketch orderValues = new QuantileSketch();
+
+    public void accept(Sale sale) {
+        unitsByProduct.add(sale.product(), sale.quantity());
+        products.add(sale.productId());
+        paymentIds.add(sale.paymentId());
+        transactions.add(sale.transactionId());
+        orderValues.add(sale.totalAmount());
+    }
+
+    // Returns this so it can be the combiner of a collect()
+    public SalesSketches merge(SalesSketches other) {
+        unitsByProduct.merge(other.unitsByProduct);
+        products.merge(other.products);
+        paymentIds.merge(other.paymentIds);
+        transactions.merge(other.transactions);
+        orderValues.merge(other.orderValues);
+        return this;
+    }
+
+    public List<HeavyHitters.Estimate> topProducts() {
+        List<HeavyHitters.Estimate> top = unitsByProduct.top();
+        return top.subList(0, Math.min(TOP_PRODUCTS, top.size()));
+    }
+
+    public long distinctProducts() {
+        return products.estimate();
+    }
+
+    public long distinctPaymentIds() {
+        return paymentIds.estimate();
+    }
+
+    public long distinctTransactions() {
+        return transactions.estimate();
+    }
+
+    public long count() {
+        return orderValues.count();
+    }
+
+    public double orderValueQuantile(double q) {
+        return orderValues.quantile(q);
+    }
+}
@@ -1,41 +1,282 @@
 package com.analytics.util;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class AnalyticsLogger {
     // Adds to the data ingestion error and data cleaning errors separate log files
     private static final Path ERROR_LOG = Paths.get("DataIngestionErrors.log");
     private static final Path CLEANING_LOG = Paths.get("DataCleaning.log");
 
+    // Callers only pay for putting the raw values on a bounded queue, one background thread formats them
+    // and writes both logs through long-lived buffered writers. Tunable with system properties:
+    //   analytics.log.queueCapacity   messages the queue holds before the overflow policy kicks in (default 65536)
+    //   analytics.log.overflow        BLOCK waits for room, DROP discards the message and counts it (default BLOCK)
+    //   analytics.log.flushIntervalMs how often buffered lines are pushed to the files (default 200)
+    private static final int QUEUE_CAPACITY = Integer.getInteger("analytics.log.queueCapacity", 65_536);
+    private static final boolean DROP_WHEN_FULL = "DROP".equalsIgnoreCase(System.getProperty("analytics.log.overflow", "BLOCK"));
+    private static final long FLUSH_INTERVAL_MS = Long.getLong("analytics.log.flushIntervalMs", 200);
+    private static final int BATCH_SIZE = 4096;
+
+    private enum Kind { INGESTION, CLEANING, FLUSH, STOP }
+
+    private record Entry(Kind kind, String a, String b, String c, String d, CountDownLatch done) {}
+
+    private static final BlockingQueue<Entry> QUEUE = new ArrayBlockingQueue<>(Math.max(1, QUEUE_CAPACITY));
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final Thread WRITER;
+    private static BufferedWriter errorWriter;
+    // Set by the writer once it has taken the stop marker, nothing takes from the queue after its last drain
+    private static volatile boolean stopped;
+    private static BufferedWriter cleaningWriter;
+    // The files are opened by the writer when it takes its first message, so a run can still ask to keep them
+    private static volatile boolean continueLogs;
+    private static boolean opened;
+
     static {
+        WRITER = new Thread(AnalyticsLogger::writeLoop, "analytics-logger");
+        WRITER.setDaemon(true);
+        WRITER.start();
+        // Whatever is still queued when the JVM exits gets written out
+        Runtime.getRuntime().addShutdownHook(new Thread(AnalyticsLogger::shutdown, "analytics-logger-shutdown"));
+    }
+
+    // For a run that carries on from a cache instead of reading the rows again: the logs keep what the run that read
+    // them wrote, and the lines for any rows read now are added at the end. Has no effect once something was logged
+    public static void continueExistingLogs() {
+        continueLogs = true;
+    }
+
+    public static void logIngestionError(String rawLine, String exceptionMsg) {
+        enqueue(new Entry(Kind.INGESTION, rawLine, exceptionMsg, null, null, null));
+    }
+
+    public static void logDataCleaning(String id, String field, String original, String imputed) {
+        enqueue(new Entry(Kind.CLEANING, id, field, original, imputed, null));
+    }
+
+    // Blocks until everything logged before this call is in the files
+    public static void flush() {
+        CountDownLatch done = new CountDownLatch(1);
+        if (control(new Entry(Kind.FLUSH, null, null, null, null, done))) {
+            try {
+                // A flush that raced with the stop marker is never answered, so stop waiting once the writer is gone
+                while (!done.await(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS) && WRITER.isAlive()) {
+                    // Still writing
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Messages discarded because the queue was full under the DROP policy
+    public static long getDroppedCount() {
+        return DROPPED.get();
+    }
+
+    // After the writer has stopped, e.g. server handlers or parser threads still logging while the JVM exits,
+    // messages are counted as dropped rather than left waiting for room that never comes
+    private static void enqueue(Entry entry) {
+        if (stopped) {
+            DROPPED.incrementAndGet();
+            return;
+        }
+        if (DROP_WHEN_FULL) {
+            if (!QUEUE.offer(entry)) {
+                DROPPED.incrementAndGet();
+                return;
+            }
+        } else {
+            try {
+                while (!QUEUE.offer(entry, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    if (stopped) {
+                        DROPPED.incrementAndGet();
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                DROPPED.incrementAndGet();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (missedLastDrain(entry)) {
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    // Flush and stop markers always wait for room, even under the DROP policy
+    private static boolean control(Entry entry) {
+        if (stopped || !WRITER.isAlive()) {
+            return false;
+        }
         try {
-            Files.writeString(ERROR_LOG, "--- INGESTION ERRORS LOG ---\nTimestamp: " + java.time.Instant.now() + "\n\n");
-            Files.writeString(CLEANING_LOG, "--- DATA CLEANING LOG ---\nTimestamp: " + java.time.Instant.now() + "\n\n");
+            while (!QUEUE.offer(entry, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (stopped) {
+                    return false;
+                }
+            }
+            return !missedLastDrain(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // The writer sets stopped before its last drain, so an entry queued too late for that drain sees it set here.
+    // Taking it back out means every entry is either written by the drain or removed here, never just left behind
+    private static boolean missedLastDrain(Entry entry) {
+        return stopped && QUEUE.remove(entry);
+    }
+
+    private static void shutdown() {
+        if (control(new Entry(Kind.STOP, null, null, null, null, null))) {
+            try {
+                WRITER.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (DROPPED.get() > 0) {
+            System.err.println("[WARN] " + DROPPED.get() + " log messages were dropped because the log queue was full or the logger had stopped");
+        }
+    }
+
+    private static void writeLoop() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        long lastFlush = System.nanoTime();
+        boolean dirty = false;
+
+        while (true) {
+            try {
+                Entry first = QUEUE.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    QUEUE.drainTo(batch, BATCH_SIZE - 1);
+                }
+            } catch (InterruptedException e) {
+                // Nothing interrupts this thread on purpose, keep draining
+            }
+
+            if (!batch.isEmpty()) {
+                open();
+            }
+            boolean stop = false;
+            for (Entry entry : batch) {
+                switch (entry.kind()) {
+                    case INGESTION, CLEANING -> {
+                        writeEntry(entry);
+                        dirty = true;
+                    }
+                    case FLUSH -> {
+                        flushWriters();
+                        dirty = false;
+                        lastFlush = System.nanoTime();
+                        entry.done().countDown();
+                    }
+                    // The rest of the batch still gets written
+                    case STOP -> stop = true;
+                }
+            }
+            batch.clear();
+            if (stop) {
+                finish(batch);
+                return;
+            }
+
+            if (dirty && System.nanoTime() - lastFlush >= TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS)) {
+                flushWriters();
+                dirty = false;
+                lastFlush = System.nanoTime();
+            }
+        }
+    }
+
+    // A new run starts both logs over with a header, a continued one appends to them
+    private static void open() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        try {
+            if (continueLogs) {
+                errorWriter = Files.newBufferedWriter(ERROR_LOG, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                cleaningWriter = Files.newBufferedWriter(CLEANING_LOG, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                return;
+            }
+            errorWriter = Files.newBufferedWriter(ERROR_LOG);
+            cleaningWriter = Files.newBufferedWriter(CLEANING_LOG);
+            errorWriter.write("--- INGESTION ERRORS LOG ---\nTimestamp: " + java.time.Instant.now() + "\n\n");
+            cleaningWriter.write("--- DATA CLEANING LOG ---\nTimestamp: " + java.time.Instant.now() + "\n\n");
+            errorWriter.flush();
+            cleaningWriter.flush();
         } catch (IOException e) {
             System.err.println("[CRITICAL] Could not initialize log files.");
         }
     }
 
-    public static void logIngestionError(String rawLine, String exceptionMsg) {
-        String msg = String.format("[INGESTION ERROR LOG] Exception: %s | Line: %s", exceptionMsg, rawLine);
-        append(ERROR_LOG, msg);
+    // Stops taking messages, then writes whatever is still queued, also what was logged after the stop marker
+    private static void finish(List<Entry> batch) {
+        stopped = true;
+        List<CountDownLatch> flushes = new ArrayList<>();
+        while (QUEUE.drainTo(batch) > 0) {
+            for (Entry entry : batch) {
+                if (entry.kind() == Kind.FLUSH) {
+                    flushes.add(entry.done());
+                } else {
+                    writeEntry(entry);
+                }
+            }
+            batch.clear();
+        }
+        flushWriters();
+        flushes.forEach(CountDownLatch::countDown);
     }
 
-    public static void logDataCleaning(String id, String field, String original, String imputed) {
-        String msg = String.format("[CLEANING LOG] TxID: %-10s | Field: %-10s | Original: '%-8s' -> Imputed: %s",
-                id, field, original, imputed);
-        append(CLEANING_LOG, msg);
+    private static void writeEntry(Entry entry) {
+        switch (entry.kind()) {
+            case INGESTION -> write(errorWriter, String.format("[INGESTION ERROR LOG] Exception: %s | Line: %s", entry.b(), entry.a()));
+            case CLEANING -> write(cleaningWriter, String.format("[CLEANING LOG] TxID: %-10s | Field: %-10s | Original: '%-8s' -> Imputed: %s",
+                    entry.a(), entry.b(), entry.c(), entry.d()));
+            default -> {
+            }
+        }
     }
 
-    private static void append(Path path, String msg) {
+    private static void write(BufferedWriter writer, String msg) {
+        if (writer == null) {
+            return;
+        }
         try {
-            Files.writeString(path, msg + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            writer.write(msg);
+            writer.write('\n');
         } catch (IOException e) {
             System.err.println("Failed to write to log: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private static void flushWriters() {
+        for (BufferedWriter writer : new BufferedWriter[]{errorWriter, cleaningWriter}) {
+            if (writer == null) {
+                continue;
+            }
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                System.err.println("Failed to write to log: " + e.getMessage());
+            }
+        }
+    }
+}
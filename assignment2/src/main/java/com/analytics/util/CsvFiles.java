@@ -0,0 +1,64 @@
+package com.analytics.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+// The CSV files named by --input: a single file, every *.csv and *.csv.gz directly in a directory,
+// or a glob like exports/2024-*.csv.gz
+// Always sorted by path, which is the order their rows are merged in
+public final class CsvFiles {
+
+    private CsvFiles() {
+    }
+
+    public static List<Path> resolve(String input) throws IOException {
+        int wildcard = firstWildcard(input);
+        if (wildcard < 0) {
+            Path path = Paths.get(input);
+            if (!Files.isDirectory(path)) {
+                return List.of(path);
+            }
+            try (Stream<Path> files = Files.list(path)) {
+                return files.filter(p -> Files.isRegularFile(p) && isCsv(p.getFileName().toString()))
+                        .sorted()
+                        .toList();
+            }
+        }
+
+        // Walk from the last directory before the first wildcard, only as deep as the pattern reaches
+        int slash = Math.max(input.lastIndexOf('/', wildcard), input.lastIndexOf(File.separatorChar, wildcard));
+        Path base = Paths.get(slash < 0 ? "." : input.substring(0, slash + 1));
+        if (!Files.isDirectory(base)) {
+            return List.of();
+        }
+        int depth = input.contains("**")
+                ? Integer.MAX_VALUE
+                : (int) input.substring(slash + 1).chars().filter(c -> c == '/').count() + 1;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+        try (Stream<Path> files = Files.walk(base, depth)) {
+            return files.filter(p -> Files.isRegularFile(p) && matcher.matches(slash < 0 ? base.relativize(p) : p))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static boolean isCsv(String name) {
+        return name.endsWith(".csv") || name.endsWith(".csv.gz");
+    }
+
+    private static int firstWildcard(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            if ("*?[{".indexOf(input.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
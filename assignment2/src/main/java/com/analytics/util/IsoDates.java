@@ -0,0 +1,126 @@
+package com.analytics.util;
+
+import java.time.LocalDate;
+
+// yyyy-MM-dd dates as epoch-day ints, decoded and broken down with plain arithmetic
+// Gives the same days as LocalDate (proleptic Gregorian, epoch day 0 = 1970-01-01) without its parser or objects.
+// Anything that isn't exactly yyyy-MM-dd with a real day comes back as INVALID or null, so the caller can fall back to
+// LocalDate.parse and its error handling
+public final class IsoDates {
+
+    public static final int INVALID = Integer.MIN_VALUE;
+
+    // Days from 0000-03-01 to 1970-01-01
+    private static final int DAYS_0000_TO_1970 = 719_468;
+    private static final int DAYS_PER_400_YEARS = 146_097;
+
+    private IsoDates() {
+    }
+
+    public static int parseEpochDay(CharSequence text) {
+        if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return INVALID;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        return isValid(year, month, day) ? epochDay(year, month, day) : INVALID;
+    }
+
+    // Same as LocalDate.parse for a well-formed date, null for anything it would have to look at more closely
+    public static LocalDate parseDate(CharSequence text) {
+        if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return null;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        return isValid(year, month, day) ? LocalDate.of(year, month, day) : null;
+    }
+
+    // year from 0 up, month 1-12 and day within that month, digits() gives -1 for a non-digit
+    public static boolean isValid(int year, int month, int day) {
+        return year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month);
+    }
+
+    public static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeap(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    public static boolean isLeap(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    // Counts from March so the leap day is the last day of its year (Howard Hinnant's days_from_civil)
+    public static int epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_400_YEARS + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    public static int year(int epochDay) {
+        return civil(epochDay) >> 9;
+    }
+
+    public static int month(int epochDay) {
+        return civil(epochDay) >>> 5 & 15;
+    }
+
+    public static int dayOfMonth(int epochDay) {
+        return civil(epochDay) & 31;
+    }
+
+    // 1 = Monday to 7 = Sunday like DayOfWeek.getValue(), epoch day 0 was a Thursday
+    public static int dayOfWeek(int epochDay) {
+        return Math.floorMod(epochDay + 3, 7) + 1;
+    }
+
+    // The SalesReport.monthKey of the day's month
+    public static String monthKey(int epochDay) {
+        int civil = civil(epochDay);
+        int year = civil >> 9;
+        int month = civil >>> 5 & 15;
+        if (year < 1000 || year > 9999) {
+            return year + "-" + (month < 10 ? "0" : "") + month;
+        }
+        char[] key = {
+                (char) ('0' + year / 1000), (char) ('0' + year / 100 % 10), (char) ('0' + year / 10 % 10),
+                (char) ('0' + year % 10), '-', (char) ('0' + month / 10), (char) ('0' + month % 10)
+        };
+        return new String(key);
+    }
+
+    // year << 9 | month << 5 | day, the inverse of epochDay (Howard Hinnant's civil_from_days)
+    private static int civil(int epochDay) {
+        int days = epochDay + DAYS_0000_TO_1970;
+        int era = Math.floorDiv(days, DAYS_PER_400_YEARS);
+        int dayOfEra = days - era * DAYS_PER_400_YEARS;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146_096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year << 9 | month << 5 | day;
+    }
+
+    // Non-negative value of count ASCII digits, -1 if any of them isn't one
+    private static int digits(CharSequence text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = text.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,101 @@
+package com.analytics.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.RecordComponent;
+import java.util.Map;
+
+// Just enough JSON for the server's answers: maps, lists, records, strings, numbers, booleans and null
+// Map keys are written with toString(), records as objects of their components, enums by name.
+// NaN and the infinities have no JSON form and are written as null
+public final class Json {
+
+    private Json() {
+    }
+
+    public static String write(Object value) {
+        StringBuilder out = new StringBuilder();
+        append(out, value);
+        return out.toString();
+    }
+
+    private static void append(StringBuilder out, Object value) {
+        switch (value) {
+            case null -> out.append("null");
+            case String text -> appendString(out, text);
+            case Double number -> out.append(number.isNaN() || number.isInfinite() ? "null" : number.toString());
+            case Number number -> out.append(number);
+            case Boolean bool -> out.append(bool);
+            case Enum<?> constant -> appendString(out, constant.name());
+            case Map<?, ?> map -> {
+                out.append('{');
+                boolean first = true;
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    if (!first) {
+                        out.append(',');
+                    }
+                    first = false;
+                    appendString(out, String.valueOf(entry.getKey()));
+                    out.append(':');
+                    append(out, entry.getValue());
+                }
+                out.append('}');
+            }
+            case Iterable<?> items -> {
+                out.append('[');
+                boolean first = true;
+                for (Object item : items) {
+                    if (!first) {
+                        out.append(',');
+                    }
+                    first = false;
+                    append(out, item);
+                }
+                out.append(']');
+            }
+            case Record record -> {
+                out.append('{');
+                RecordComponent[] components = record.getClass().getRecordComponents();
+                for (int i = 0; i < components.length; i++) {
+                    if (i > 0) {
+                        out.append(',');
+                    }
+                    appendString(out, components[i].getName());
+                    out.append(':');
+                    append(out, component(record, components[i]));
+                }
+                out.append('}');
+            }
+            default -> appendString(out, value.toString());
+        }
+    }
+
+    private static Object component(Record record, RecordComponent component) {
+        try {
+            return component.getAccessor().invoke(record);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Can't read " + component.getName() + " of " + record.getClass(), e);
+        }
+    }
+
+    private static void appendString(StringBuilder out, String text) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        out.append('"');
+    }
+}
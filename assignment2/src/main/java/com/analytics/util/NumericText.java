@@ -0,0 +1,271 @@
+package com.analytics.util;
+
+// Long.parseLong, Integer.parseInt and Double.parseDouble without exceptions
+// Each decoder makes one pass over the characters and returns a marker value for text the JDK method would reject,
+// so dirty fields cost no more than clean ones. The plain forms are decoded here, the rare valid forms the JDK
+// also accepts (exponents, hex floats, long mantissas, non-ASCII digits) are handed to it once they are known to parse.
+// Two texts decode to the marker itself: "-9223372036854775808" and "NaN"; isLong and isDouble tell them apart
+public final class NumericText {
+
+    public static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+    private static final String MIN_LONG = Long.toString(Long.MIN_VALUE);
+    // Every power of ten up to 1e22 is exact as a double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private NumericText() {
+    }
+
+    // Long.parseLong's value, NOT_A_NUMBER where it would throw
+    public static long parseLong(CharSequence text) {
+        return parseInteger(text, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Integer.parseInt's value, NOT_A_NUMBER where it would throw. Never ambiguous since the marker is out of int range
+    public static long parseInt(CharSequence text) {
+        return parseInteger(text, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // Double.parseDouble's value, NaN where it would throw
+    public static double parseDouble(CharSequence text) {
+        if (text == null) {
+            return Double.NaN;
+        }
+        int start = 0;
+        int end = text.length();
+        // Double.parseDouble trims the same way String.trim() does
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            int d = c - '0';
+            if (d < 0 || d > 9 || mantissa >= MAX_EXACT_MANTISSA / 10) {
+                return slowParseDouble(text);
+            }
+            mantissa = mantissa * 10 + d;
+            digits++;
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return slowParseDouble(text);
+        }
+        // An exact mantissa divided by an exact power of ten is one correctly rounded operation, as the JDK's result is
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    // Whether Long.parseLong accepts the text, for telling "-9223372036854775808" apart from a rejected one
+    public static boolean isLong(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        if (!isAscii(text)) {
+            return jdkParsesLong(text);
+        }
+        return parseLong(text) != NOT_A_NUMBER || MIN_LONG.contentEquals(text);
+    }
+
+    // Whether Double.parseDouble accepts the text: the grammar of Double.valueOf, checked without parsing the value
+    public static boolean isDouble(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int i = start;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            i++;
+        }
+        if (matchesRest(text, i, end, "NaN") || matchesRest(text, i, end, "Infinity")) {
+            return true;
+        }
+        if (i + 1 < end && text.charAt(i) == '0' && (text.charAt(i + 1) == 'x' || text.charAt(i + 1) == 'X')) {
+            return isHexFloat(text, i + 2, end);
+        }
+
+        int digits = 0;
+        while (i < end && isDigit(text.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(text.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i = skipSignedExponent(text, i + 1, end);
+            if (i < 0) {
+                return false;
+            }
+        }
+        return isSuffixOrEnd(text, i, end);
+    }
+
+    private static long parseInteger(CharSequence text, long min, long max) {
+        if (text == null || text.length() == 0) {
+            return NOT_A_NUMBER;
+        }
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        char first = text.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i = 1;
+            if (length == 1) {
+                return NOT_A_NUMBER;
+            }
+        }
+
+        // Accumulated negatively like the JDK, so the most negative value doesn't overflow on the way
+        long limit = negative ? min : -max;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            int d = c - '0';
+            if (d < 0 || d > 9) {
+                // Character.digit also takes digits from other scripts, leave those to the JDK
+                return c >= 0x80 ? slowParseInteger(text, min == Integer.MIN_VALUE) : NOT_A_NUMBER;
+            }
+            if (result < multiplyLimit) {
+                return NOT_A_NUMBER;
+            }
+            result *= 10;
+            if (result < limit + d) {
+                return NOT_A_NUMBER;
+            }
+            result -= d;
+        }
+        return negative ? result : -result;
+    }
+
+    private static long slowParseInteger(CharSequence text, boolean isInt) {
+        try {
+            return isInt ? Integer.parseInt(text.toString()) : Long.parseLong(text.toString());
+        } catch (NumberFormatException e) {
+            return NOT_A_NUMBER;
+        }
+    }
+
+    // Only reached for text that isn't a plain decimal, the grammar check keeps it from throwing
+    private static double slowParseDouble(CharSequence text) {
+        return isDouble(text) ? Double.parseDouble(text.toString()) : Double.NaN;
+    }
+
+    private static boolean jdkParsesLong(CharSequence text) {
+        try {
+            Long.parseLong(text.toString());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // 0x already skipped: HexDigits [. HexDigits] with at least one digit, then a binary exponent, which is required
+    private static boolean isHexFloat(CharSequence text, int i, int end) {
+        int digits = 0;
+        while (i < end && Character.digit(text.charAt(i), 16) >= 0 && text.charAt(i) < 0x80) {
+            i++;
+            digits++;
+        }
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            while (i < end && Character.digit(text.charAt(i), 16) >= 0 && text.charAt(i) < 0x80) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0 || i == end || (text.charAt(i) != 'p' && text.charAt(i) != 'P')) {
+            return false;
+        }
+        i = skipSignedExponent(text, i + 1, end);
+        return i >= 0 && isSuffixOrEnd(text, i, end);
+    }
+
+    // Index after [+-]digits, -1 when there are no digits
+    private static int skipSignedExponent(CharSequence text, int i, int end) {
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            i++;
+        }
+        int from = i;
+        while (i < end && isDigit(text.charAt(i))) {
+            i++;
+        }
+        return i == from ? -1 : i;
+    }
+
+    // Nothing left, or just one of the float/double suffixes
+    private static boolean isSuffixOrEnd(CharSequence text, int i, int end) {
+        if (i == end) {
+            return true;
+        }
+        char c = text.charAt(i);
+        return i + 1 == end && (c == 'f' || c == 'F' || c == 'd' || c == 'D');
+    }
+
+    private static boolean matchesRest(CharSequence text, int i, int end, String word) {
+        if (end - i != word.length()) {
+            return false;
+        }
+        for (int j = 0; j < word.length(); j++) {
+            if (text.charAt(i + j) != word.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAscii(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,27 @@
+package com.analytics.util;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+// Enum constants as the command line and the server name them: any case, '-' for '_', e.g. "unit-price" for UNIT_PRICE
+// An unknown name fails with the names that would have worked instead of Enum.valueOf's "No enum constant ..."
+public final class OptionNames {
+
+    private OptionNames() {
+    }
+
+    public static <E extends Enum<E>> E parse(Class<E> type, String name, String what) {
+        String constant = name.trim().replace('-', '_').toUpperCase(Locale.ROOT);
+        for (E value : type.getEnumConstants()) {
+            if (value.name().equals(constant)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("No " + what + " called " + name.trim() + ", expected one of "
+                + Arrays.stream(type.getEnumConstants()).map(OptionNames::name).toList());
+    }
+
+    public static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
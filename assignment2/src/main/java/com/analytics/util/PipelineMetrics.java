@@ -0,0 +1,217 @@
+package com.analytics.util;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and stage timers for the pipeline: bytes and rows read, parse errors, validation rejects, imputations per
+// field, and wall time and heap allocation per stage. Off unless -Danalytics.metrics=true (or --metrics) is given.
+// ENABLED is a constant once the class is loaded, so with metrics off the JIT drops the static hooks from the row
+// loops entirely. With metrics on they are shown over JMX as com.analytics:type=PipelineMetrics while the JVM runs,
+// and Main prints summary() at the end of a run.
+// Rows are counted where the cleaning pass takes them, once per run whatever the mode; the first pass of the
+// two-pass mode only adds its bytes. Stages run one after the other on the calling thread, and the allocation of a
+// stage is that of every thread, so worker pools are included
+public final class PipelineMetrics implements PipelineMetricsMXBean {
+
+    public static final boolean ENABLED = Boolean.getBoolean("analytics.metrics");
+
+    private static final PipelineMetrics RUN = new PipelineMetrics();
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(RUN, new ObjectName("com.analytics:type=PipelineMetrics"));
+            } catch (JMException e) {
+                System.err.println("[WARN] Could not register the pipeline metrics with JMX: " + e.getMessage());
+            }
+        }
+    }
+
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder parseErrors = new LongAdder();
+    private final LongAdder validationRejects = new LongAdder();
+    private final Map<String, LongAdder> imputed = new ConcurrentHashMap<>();
+    // Guarded by this: name to {nanos, allocated bytes}
+    private final Map<String, long[]> stages = new LinkedHashMap<>();
+    private String stage;
+    private long stageStart;
+    private long stageAllocatedStart;
+
+    // The global instance is the one the hooks below feed, separate ones are for tests
+    public PipelineMetrics() {
+    }
+
+    // Hooks for the pipeline, each does nothing while metrics are off
+
+    public static void bytesRead(long bytes) {
+        if (ENABLED) RUN.recordBytesRead(bytes);
+    }
+
+    public static void rowRead() {
+        if (ENABLED) RUN.recordRow();
+    }
+
+    public static void parseError() {
+        if (ENABLED) RUN.recordParseError();
+    }
+
+    public static void validationReject() {
+        if (ENABLED) RUN.recordValidationReject();
+    }
+
+    public static void imputed(String field) {
+        if (ENABLED) RUN.recordImputed(field);
+    }
+
+    // Ends the running stage, if any, and starts timing the next one
+    public static void beginStage(String name) {
+        if (ENABLED) RUN.startStage(name);
+    }
+
+    public static void endStage() {
+        if (ENABLED) RUN.stopStage();
+    }
+
+    // Ends the last stage and prints what was counted, nothing when metrics are off
+    public static void printSummary() {
+        if (ENABLED) {
+            RUN.stopStage();
+            System.out.print(RUN.summary());
+        }
+    }
+
+    public void recordBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public void recordRow() {
+        rowsRead.increment();
+    }
+
+    public void recordParseError() {
+        parseErrors.increment();
+    }
+
+    public void recordValidationReject() {
+        validationRejects.increment();
+    }
+
+    public void recordImputed(String field) {
+        imputed.computeIfAbsent(field, f -> new LongAdder()).increment();
+    }
+
+    public synchronized void startStage(String name) {
+        stopStage();
+        stage = name;
+        stageAllocatedStart = allocatedBytes();
+        stageStart = System.nanoTime();
+    }
+
+    public synchronized void stopStage() {
+        if (stage == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - stageStart;
+        long allocated = allocatedBytes();
+        long[] totals = stages.computeIfAbsent(stage, s -> new long[2]);
+        totals[0] += nanos;
+        totals[1] = allocated < 0 || stageAllocatedStart < 0 || totals[1] < 0
+                ? -1 : totals[1] + allocated - stageAllocatedStart;
+        stage = null;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    @Override
+    public long getParseErrors() {
+        return parseErrors.sum();
+    }
+
+    @Override
+    public long getValidationRejects() {
+        return validationRejects.sum();
+    }
+
+    @Override
+    public Map<String, Long> getImputedByField() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (String field : new String[]{"Category", "Region", "UnitPrice", "Quantity"}) {
+            LongAdder count = imputed.get(field);
+            counts.put(field, count == null ? 0 : count.sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getStageMillis() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        stages.forEach((name, totals) -> millis.put(name, totals[0] / 1_000_000));
+        return millis;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getStageAllocatedBytes() {
+        Map<String, Long> bytes = new LinkedHashMap<>();
+        stages.forEach((name, totals) -> bytes.put(name, totals[1]));
+        return bytes;
+    }
+
+    @Override
+    public synchronized void reset() {
+        bytesRead.reset();
+        rowsRead.reset();
+        parseErrors.reset();
+        validationRejects.reset();
+        imputed.clear();
+        stages.clear();
+        stage = null;
+    }
+
+    // The end-of-run summary, one line per counter and per stage
+    public synchronized String summary() {
+        StringBuilder out = new StringBuilder("\n---- PIPELINE METRICS ----\n\n");
+        out.append(String.format("Bytes read : %,d%n", getBytesRead()));
+        out.append(String.format("Rows read : %,d%n", getRowsRead()));
+        out.append(String.format("Parse errors : %,d%n", getParseErrors()));
+        out.append(String.format("Validation rejects : %,d%n", getValidationRejects()));
+        getImputedByField().forEach((field, count) -> out.append(String.format("Imputed %s : %,d%n", field, count)));
+        if (!stages.isEmpty()) {
+            out.append('\n');
+        }
+        stages.forEach((name, totals) -> out.append(String.format("%-2s : %,.1f ms, %s allocated%n",
+                name, totals[0] / 1e6, totals[1] < 0 ? "n/a" : String.format("%,d KB", totals[1] >> 10))));
+        return out.toString();
+    }
+
+    // Heap allocated by all threads so far, or -1 when the JVM doesn't track it
+    private static long allocatedBytes() {
+        if (THREADS == null || !THREADS.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return THREADS.getTotalThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            return bean;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,25 @@
+package com.analytics.util;
+
+import java.util.Map;
+
+// What PipelineMetrics shows over JMX, as com.analytics:type=PipelineMetrics
+public interface PipelineMetricsMXBean {
+
+    long getBytesRead();
+
+    long getRowsRead();
+
+    long getParseErrors();
+
+    long getValidationRejects();
+
+    // By the field names of DataCleaning.log: Category, Region, UnitPrice, Quantity
+    Map<String, Long> getImputedByField();
+
+    // By stage, in the order the stages first ran
+    Map<String, Long> getStageMillis();
+
+    Map<String, Long> getStageAllocatedBytes();
+
+    void reset();
+}
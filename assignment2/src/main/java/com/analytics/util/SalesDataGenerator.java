@@ -0,0 +1,359 @@
+package com.analytics.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Writes synthetic sales files in the sales_data.csv schema, from thousands to billions of rows
+// The same seed and ratios always give the same bytes: rows are made in blocks, each with a random generator of its
+// own seeded from the block number, so the blocks can be built on every core and still be written in order.
+// Each dirty row has exactly one problem, drawn with the given ratios, of the same kinds the sample file has
+//
+// Usage: java -cp target/classes com.analytics.util.SalesDataGenerator --rows=10m [--output=FILE] [--seed=42]
+//        [--missing-category=0.01] [--missing-region=0.01] [--bad-price=0.0075] [--bad-quantity=0.005]
+//        [--invalid-date=0.005] [--invalid-id=0.002] [--malformed=0.005]
+public final class SalesDataGenerator {
+
+    public static final String HEADER =
+            "Transaction ID,Date,Category,Product ID,Product,Region,Payment ID,Payment method,Quantity,unitPrice";
+
+    // Fraction of all rows with each problem, at most one per row
+    public record DirtyRatios(double missingCategory, double missingRegion, double badPrice, double badQuantity,
+                              double invalidDate, double invalidId, double malformed) {
+        // About what the sample file has
+        public static final DirtyRatios DEFAULT = new DirtyRatios(0.01, 0.01, 0.0075, 0.005, 0.005, 0.002, 0.005);
+        public static final DirtyRatios CLEAN = new DirtyRatios(0, 0, 0, 0, 0, 0, 0);
+
+        public DirtyRatios {
+            double[] all = {missingCategory, missingRegion, badPrice, badQuantity, invalidDate, invalidId, malformed};
+            double total = 0;
+            for (double ratio : all) {
+                if (ratio < 0 || ratio > 1) {
+                    throw new IllegalArgumentException("Dirty-row ratios are fractions between 0 and 1: " + ratio);
+                }
+                total += ratio;
+            }
+            if (total > 1) {
+                throw new IllegalArgumentException("Dirty-row ratios add up to more than every row: " + total);
+            }
+        }
+    }
+
+    // Problems, in the order of DirtyRatios
+    private static final int MISSING_CATEGORY = 0;
+    private static final int MISSING_REGION = 1;
+    private static final int BAD_PRICE = 2;
+    private static final int BAD_QUANTITY = 3;
+    private static final int INVALID_DATE = 4;
+    private static final int INVALID_ID = 5;
+    private static final int MALFORMED = 6;
+
+    private static final int BLOCK_ROWS = 1 << 16;
+    private static final long FIRST_TRANSACTION_ID = 1_000_001;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2023, 1, 1);
+    private static final int DAYS = 730;
+
+    private static final String[] CATEGORIES = {"Electronics", "Clothing", "Home", "Books", "Beauty"};
+    // Three products per category, in category order, with their IDs and list prices in paise
+    private static final String[] PRODUCTS = {
+            "Smartphone", "Laptop", "Headphones", "T-Shirt", "Jeans", "Jacket", "Blender", "Coffee Maker", "Vacuum",
+            "Fiction Novel", "Science Textbook", "Cookbook", "Lipstick", "Perfume", "Moisturizer"};
+    private static final int[] PRODUCT_IDS = {101, 102, 103, 201, 202, 203, 301, 302, 304, 401, 402, 403, 501, 503, 504};
+    private static final long[] LIST_PRICES = {
+            69_900, 120_000, 15_000, 2_000, 5_000, 8_000, 4_000, 8_000, 15_000, 1_500, 8_000, 2_500, 1_800, 6_000, 2_500};
+    private static final String[] REGIONS = {"North", "South", "East", "West"};
+    private static final String[] PAYMENT_METHODS = {"Credit Card", "Debit Card", "PayPal", "Cash", "Bank Transfer"};
+    private static final String[] BAD_PRICES = {"", "N/A", "abc", "1.2.3", "-"};
+    private static final String[] BAD_QUANTITIES = {"", "two", "2.5", "-"};
+    private static final String[] BAD_DATES = {"2023-02-30", "INVALID", "01/15/2023", ""};
+    private static final String[] BAD_IDS = {"", "TXN"};
+
+    private static final byte[][] CATEGORY_BYTES = ascii(CATEGORIES);
+    private static final byte[][] PRODUCT_BYTES = ascii(PRODUCTS);
+    private static final byte[][] REGION_BYTES = ascii(REGIONS);
+    private static final byte[][] PAYMENT_METHOD_BYTES = ascii(PAYMENT_METHODS);
+    private static final byte[][] DATE_BYTES = new byte[DAYS][];
+
+    static {
+        for (int day = 0; day < DAYS; day++) {
+            DATE_BYTES[day] = FIRST_DAY.plusDays(day).toString().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final long seed;
+    // Upper end of each problem's share of [0, 1), in the order of DirtyRatios
+    private final double[] thresholds;
+
+    public SalesDataGenerator(long seed, DirtyRatios ratios) {
+        this.seed = seed;
+        double[] shares = shares(ratios);
+        this.thresholds = new double[shares.length];
+        double sum = 0;
+        for (int i = 0; i < shares.length; i++) {
+            sum += shares[i];
+            thresholds[i] = sum;
+        }
+    }
+
+    // Header and rows, blocks built on every core and written in order
+    public void write(Path output, long rows) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output), 1 << 20)) {
+            out.write((HEADER + "\n").getBytes(StandardCharsets.US_ASCII));
+            // Blocks being built, bounded so a slow disk doesn't let them pile up in memory
+            Deque<Future<byte[]>> building = new ArrayDeque<>();
+            long blocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+            for (long block = 0; block < blocks; block++) {
+                long first = block * BLOCK_ROWS;
+                int count = (int) Math.min(BLOCK_ROWS, rows - first);
+                building.add(pool.submit(() -> block(first, count)));
+                if (building.size() > threads * 2) {
+                    out.write(await(building.poll()));
+                }
+            }
+            while (!building.isEmpty()) {
+                out.write(await(building.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Rows first .. first + count - 1 of a block, the same bytes whichever thread builds them
+    private byte[] block(long first, int count) {
+        SplittableRandom random = new SplittableRandom(mix(seed + first / BLOCK_ROWS * 0x9e3779b97f4a7c15L));
+        Line line = new Line(count * 72);
+        for (int i = 0; i < count; i++) {
+            row(line, first + i, random);
+        }
+        return line.toByteArray();
+    }
+
+    // Draws every field even for a dirty row, so each row uses up the same random numbers
+    private void row(Line line, long row, SplittableRandom random) {
+        int product = random.nextInt(PRODUCTS.length);
+        int day = random.nextInt(DAYS);
+        int region = random.nextInt(REGIONS.length);
+        int paymentMethod = random.nextInt(PAYMENT_METHODS.length);
+        long paymentId = 500_000 + random.nextInt(500_000);
+        int quantity = 1 + random.nextInt(5);
+        // Within 10% of the list price
+        long price = LIST_PRICES[product] * (900 + random.nextInt(201)) / 1000;
+        int problem = problem(random.nextDouble());
+        int variant = random.nextInt(60);
+
+        // Half the malformed rows are empty lines, the other half miss the last column
+        if (problem == MALFORMED && variant % 2 == 0) {
+            line.newline();
+            return;
+        }
+        if (problem == INVALID_ID) {
+            String bad = BAD_IDS[variant % BAD_IDS.length];
+            line.ascii(bad.isEmpty() ? bad : bad + (FIRST_TRANSACTION_ID + row));
+        } else {
+            line.number(FIRST_TRANSACTION_ID + row);
+        }
+        line.comma();
+        if (problem == INVALID_DATE) {
+            line.ascii(BAD_DATES[variant % BAD_DATES.length]);
+        } else {
+            line.bytes(DATE_BYTES[day]);
+        }
+        line.comma();
+        if (problem != MISSING_CATEGORY) {
+            line.bytes(CATEGORY_BYTES[product / 3]);
+        }
+        line.comma().number(PRODUCT_IDS[product]).comma().bytes(PRODUCT_BYTES[product]).comma();
+        if (problem != MISSING_REGION) {
+            line.bytes(REGION_BYTES[region]);
+        }
+        line.comma().number(paymentId).comma().bytes(PAYMENT_METHOD_BYTES[paymentMethod]).comma();
+        if (problem == BAD_QUANTITY) {
+            line.ascii(BAD_QUANTITIES[variant % BAD_QUANTITIES.length]);
+        } else {
+            line.number(quantity);
+        }
+        if (problem != MALFORMED) {
+            line.comma();
+            if (problem == BAD_PRICE) {
+                line.ascii(BAD_PRICES[variant % BAD_PRICES.length]);
+            } else {
+                line.price(price);
+            }
+        }
+        line.newline();
+    }
+
+    // Index of the problem u falls on, -1 for a clean row
+    private int problem(double u) {
+        for (int i = 0; i < thresholds.length; i++) {
+            if (u < thresholds[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static double[] shares(DirtyRatios ratios) {
+        return new double[]{ratios.missingCategory(), ratios.missingRegion(), ratios.badPrice(), ratios.badQuantity(),
+                ratios.invalidDate(), ratios.invalidId(), ratios.malformed()};
+    }
+
+    // SplitMix64's finalizer, so neighbouring block numbers give unrelated seeds
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static byte[] await(Future<byte[]> block) throws IOException {
+        try {
+            return block.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while generating rows");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Generating rows failed", e.getCause());
+        }
+    }
+
+    private static byte[][] ascii(String[] values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return bytes;
+    }
+
+    // A growing byte buffer that writes numbers without going through Strings
+    private static final class Line {
+        private byte[] buffer;
+        private int length;
+
+        Line(int capacity) {
+            buffer = new byte[Math.max(64, capacity)];
+        }
+
+        Line bytes(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, buffer, length, value.length);
+            length += value.length;
+            return this;
+        }
+
+        Line ascii(String value) {
+            return bytes(value.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        Line comma() {
+            ensure(1);
+            buffer[length++] = ',';
+            return this;
+        }
+
+        void newline() {
+            ensure(1);
+            buffer[length++] = '\n';
+        }
+
+        // Non-negative only
+        Line number(long value) {
+            ensure(20);
+            int start = length;
+            do {
+                buffer[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                byte swap = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = swap;
+            }
+            return this;
+        }
+
+        // Paise as rupees with two decimals
+        Line price(long paise) {
+            number(paise / 100);
+            ensure(3);
+            buffer[length++] = '.';
+            buffer[length++] = (byte) ('0' + paise % 100 / 10);
+            buffer[length++] = (byte) ('0' + paise % 10);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+        }
+
+        private void ensure(int more) {
+            if (length + more > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(length + more, buffer.length * 2));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long rows = 10_000_000;
+        Path output = Paths.get("sales_data_generated.csv");
+        long seed = 42;
+        double[] ratios = shares(DirtyRatios.DEFAULT);
+        // In the order of shares()
+        String[] ratioOptions = {"--missing-category=", "--missing-region=", "--bad-price=", "--bad-quantity=",
+                "--invalid-date=", "--invalid-id=", "--malformed="};
+
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--rows=")) {
+                rows = parseCount(value);
+            } else if (arg.startsWith("--output=")) {
+                output = Paths.get(value);
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(value);
+            } else {
+                int option = Arrays.asList(ratioOptions).indexOf(arg.substring(0, arg.indexOf('=') + 1));
+                if (option < 0) {
+                    System.err.println("Unknown option: " + arg);
+                    System.exit(1);
+                }
+                ratios[option] = Double.parseDouble(value);
+            }
+        }
+
+        SalesDataGenerator generator = new SalesDataGenerator(seed, new DirtyRatios(
+                ratios[0], ratios[1], ratios[2], ratios[3], ratios[4], ratios[5], ratios[6]));
+        long start = System.nanoTime();
+        generator.write(output, rows);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "Wrote %,d rows (%,d MB) to %s in %.1f s%n",
+                rows, Files.size(output) >> 20, output, seconds);
+    }
+
+    // 2500, 10m or 1b (thousand, million, billion)
+    private static long parseCount(String text) {
+        String count = text.trim().toLowerCase(Locale.ROOT).replace("_", "");
+        long scale = switch (count.charAt(count.length() - 1)) {
+            case 'k' -> 1_000L;
+            case 'm' -> 1_000_000L;
+            case 'b' -> 1_000_000_000L;
+            default -> 1L;
+        };
+        return Long.parseLong(scale == 1 ? count : count.substring(0, count.length() - 1)) * scale;
+    }
+}
@@ -2,20 +2,70 @@ package com.analytics;
 
 import com.analytics.exception.CsvParsingException;
 import com.analytics.exception.DataValidationException;
+import com.analytics.model.ColumnarSalesStore;
+import com.analytics.model.Dimension;
 import com.analytics.model.GlobalStats;
+import com.analytics.model.Measure;
+import com.analytics.model.MemoryBudget;
+import com.analytics.model.Money;
+import com.analytics.model.QueryResult;
 import com.analytics.model.RawSale;
+import com.analytics.model.ReportSection;
 import com.analytics.model.Sale;
+import com.analytics.model.SalesQuery;
+import com.analytics.model.SalesReport;
+import com.analytics.server.AnalyticsServer;
+import com.analytics.service.AnalyticsService;
 import com.analytics.service.DataIngestionService;
 import com.analytics.service.ImputationService;
+import com.analytics.service.IngestionMode;
+import com.analytics.service.QueryEngine;
+import com.analytics.service.RollupCache;
+import com.analytics.service.SalesAggregator;
+import com.analytics.service.SalesColumnFile;
+import com.analytics.service.TailingAnalytics;
+import com.analytics.sketch.HeavyHitters;
+import com.analytics.sketch.HyperLogLog;
+import com.analytics.sketch.QuantileSketch;
+import com.analytics.sketch.SalesSketches;
+import com.analytics.util.AnalyticsLogger;
+import com.analytics.util.CsvFiles;
+import com.analytics.util.IsoDates;
+import com.analytics.util.Json;
+import com.analytics.util.NumericText;
+import com.analytics.util.PipelineMetrics;
+import com.analytics.util.SalesDataGenerator;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -136,4 +186,906 @@ class SalesAnalyticsTest {
             assertEquals(50.0, dayStats.get(java.time.DayOfWeek.TUESDAY), "Tuesday average should be 50");
         }
     }
+
+    @Nested
+    class IngestionModeTest {
+
+        @TempDir
+        Path tempDir;
+
+        // Mix of clean rows, rows that need imputation and rows that must be rejected
+        private Path writeDirtyCsv() throws IOException {
+            Path csv = tempDir.resolve("sales.csv");
+            Files.write(csv, List.of(
+                    "Transaction ID,Date,Category,Product ID,Product,Region,Payment ID,Payment method,Quantity,unitPrice",
+                    "1,2023-01-02,Electronics,101,Laptop,North,900,Cash,1,1000.00",
+                    "2,2023-01-03,,201,Shirt,South,901,Card,2,30.00",
+                    "3,2023-01-04,Clothing,202,Jeans,,902,Cash,1,50.00",
+                    "4,2023-01-05,Clothing,202,Jeans,East,903,Cash,1,N/A",
+                    "5,2023-01-06,Books,401,Novel,West,904,Cash,two,15.00",
+                    "X6,2023-01-07,,401,Novel,West,905,Cash,1,",
+                    "7,2023-13-45,Books,401,Novel,West,906,Cash,1,20.00",
+                    "8,2023-01-09,Clothing",
+                    "",
+                    "9,2023-01-10,Clothing,201,Shirt,South,907,Card,3,25.00"
+            ));
+            return csv;
+        }
+
+        @Test
+        void testSinglePassMatchesTwoPass() throws IOException {
+            Path csv = writeDirtyCsv();
+            AnalyticsService service = new AnalyticsService();
+
+            List<Sale> twoPass = service.loadSales(csv, IngestionMode.TWO_PASS);
+            List<Sale> singlePass = service.loadSales(csv, IngestionMode.SINGLE_PASS);
+
+            assertEquals(twoPass, singlePass);
+            assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 9L), singlePass.stream().map(Sale::transactionId).toList());
+        }
+
+        @Test
+        void testMappedMatchesTwoPass() throws IOException {
+            Path csv = writeDirtyCsv();
+            // Windows line endings, padded fields and an unterminated last line take the byte parser's edge cases
+            Path crlf = tempDir.resolve("sales-crlf.csv");
+            Files.writeString(crlf, String.join("\r\n", Files.readAllLines(csv))
+                    + "\r\n 10 , 2023-01-11 , Home ,301, Lamp , East ,908, Cash , 2 , 40.5 "
+                    + "\r\n11,2023-01-12,Home,301,Lamp,East,909,Cash,1,1e2");
+            AnalyticsService service = new AnalyticsService();
+
+            assertEquals(service.loadSales(csv, IngestionMode.TWO_PASS), service.loadSales(csv, IngestionMode.MAPPED));
+            List<Sale> mapped = service.loadSales(crlf, IngestionMode.MAPPED);
+            assertEquals(service.loadSales(crlf, IngestionMode.TWO_PASS), mapped);
+            assertEquals(8, mapped.size());
+            assertEquals("Lamp", mapped.get(6).product());
+            assertEquals(100.0, mapped.get(7).unitPrice());
+        }
+
+        @Test
+        void testParallelMatchesTwoPass() throws IOException {
+            // Enough copies of the dirty rows that the file is cut into several chunks
+            List<String> rows = Files.readAllLines(writeDirtyCsv());
+            List<String> lines = new ArrayList<>(List.of(rows.get(0)));
+            for (int copy = 0; copy < 500; copy++) {
+                rows.stream().skip(1).forEach(lines::add);
+            }
+            Path csv = tempDir.resolve("sales-large.csv");
+            Files.write(csv, lines);
+            AnalyticsService service = new AnalyticsService();
+
+            List<Sale> parallel = service.loadSales(csv, IngestionMode.PARALLEL);
+            assertEquals(service.loadSales(csv, IngestionMode.TWO_PASS), parallel);
+            assertEquals(3000, parallel.size());
+        }
+
+        @Test
+        void testPipelinedMatchesTwoPass() throws IOException {
+            // Over 1 MB, so the reader hands out several blocks and the parsers may finish them out of order
+            Path csv = tempDir.resolve("generated.csv");
+            new SalesDataGenerator(5, SalesDataGenerator.DirtyRatios.DEFAULT).write(csv, 40_000);
+            Path crlf = tempDir.resolve("sales-crlf.csv");
+            Files.writeString(crlf, String.join("\r\n", Files.readAllLines(writeDirtyCsv()))
+                    + "\r\n11,2023-01-12,Home,301,Lamp,East,909,Cash,1,1e2");
+            AnalyticsService service = new AnalyticsService();
+
+            assertTrue(Files.size(csv) > 2 << 20);
+            assertEquals(service.loadSales(csv, IngestionMode.TWO_PASS), service.loadSales(csv, IngestionMode.PIPELINED));
+            assertEquals(service.loadSales(crlf, IngestionMode.TWO_PASS), service.loadSales(crlf, IngestionMode.PIPELINED));
+        }
+
+        @Test
+        void testTailReadsOnlyAppendedLines() throws IOException {
+            Path csv = writeDirtyCsv();
+            List<String> lines = Files.readAllLines(csv);
+            Path feed = tempDir.resolve("feed.csv");
+            // Header and four rows, then the start of a row that is still being written
+            Files.writeString(feed, String.join("\n", lines.subList(0, 5)) + "\n5,2023-01-06,Bo");
+
+            TailingAnalytics tail = new TailingAnalytics(feed);
+            assertEquals(4, tail.poll());
+            assertEquals(0, tail.poll());
+
+            Files.writeString(feed, "oks,401,Novel,West,904,Cash,two,15.00\n"
+                    + String.join("\n", lines.subList(6, lines.size())) + "\n", StandardOpenOption.APPEND);
+            assertEquals(6, tail.poll());
+            assertEquals(10, tail.rowCount());
+            assertEquals(Files.size(feed), tail.offset());
+
+            // Same stats as a full scan, and the report only differs from a full run in summation order
+            assertEquals(new ImputationService().calculateStats(csv), tail.stats());
+            SalesReport expected = SalesAggregator.aggregate(new AnalyticsService().loadSales(csv, IngestionMode.TWO_PASS));
+            SalesReport actual = tail.report();
+            assertEquals(expected.unitsByProduct(), actual.unitsByProduct());
+            assertEquals(expected.paymentMethodCounts(), actual.paymentMethodCounts());
+            assertEquals(expected.valueBuckets(), actual.valueBuckets());
+            assertEquals(expected.revenueByRegion().keySet(), actual.revenueByRegion().keySet());
+            expected.revenueByRegion().forEach((region, revenue) -> assertEquals(revenue, actual.revenueByRegion().get(region), 0.001));
+            // Building a report leaves the running totals alone
+            assertEquals(actual, tail.report());
+
+            // A file that got shorter is read again from the start
+            Files.write(feed, lines.subList(0, 3));
+            assertEquals(2, tail.poll());
+            assertEquals(2, tail.rowCount());
+        }
+
+        @Test
+        void testTailListsValuesInFileOrderAndRereadsReplacedFiles() throws IOException {
+            Path csv = tempDir.resolve("generated.csv");
+            new SalesDataGenerator(3, SalesDataGenerator.DirtyRatios.DEFAULT).write(csv, 20_000);
+            List<String> lines = Files.readAllLines(csv);
+            Path feed = tempDir.resolve("feed.csv");
+            Files.write(feed, lines.subList(0, 7_000));
+            TailingAnalytics tail = new TailingAnalytics(feed);
+            tail.poll();
+            Files.write(feed, lines.subList(7_000, lines.size()), StandardOpenOption.APPEND);
+            tail.poll();
+
+            // Held-back rows go in where they were in the file, however the file was read
+            SalesReport expected = SalesAggregator.aggregate(new AnalyticsService().loadSales(csv, IngestionMode.TWO_PASS));
+            assertSameOrder(expected, tail.report());
+
+            // Rewritten in place with other rows, longer than what was read
+            Path other = tempDir.resolve("other.csv");
+            new SalesDataGenerator(4, SalesDataGenerator.DirtyRatios.DEFAULT).write(other, 25_000);
+            Files.copy(other, feed, StandardCopyOption.REPLACE_EXISTING);
+            assertEquals(25_000, tail.poll());
+
+            // Same size, only a row in the middle differs, moved into place as a new file
+            List<String> edited = new ArrayList<>(Files.readAllLines(other));
+            edited.set(12_000, "9" + edited.get(12_000).substring(1));
+            Path moved = tempDir.resolve("moved.csv");
+            Files.write(moved, edited);
+            assertEquals(Files.size(feed), Files.size(moved));
+            Files.move(moved, feed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            assertEquals(25_000, tail.poll());
+            assertEquals(25_000, tail.rowCount());
+        }
+
+        @Test
+        void testRollupCacheExtendsAppendedRows() throws IOException {
+            List<String> lines = Files.readAllLines(writeDirtyCsv());
+            Path feed = tempDir.resolve("feed.csv");
+            Files.write(feed, lines.subList(0, 6));
+            RollupCache rollups = new RollupCache(tempDir.resolve("rollups.bin"));
+
+            RollupCache.Result first = rollups.load(feed);
+            assertEquals(RollupCache.Outcome.REBUILT, first.outcome());
+            first.analytics().report();
+            rollups.save(feed, first.analytics());
+            assertEquals(RollupCache.Outcome.UNCHANGED, rollups.load(feed).outcome());
+            // A copy with the same bytes, size and time is still another file
+            Path copy = tempDir.resolve("copy.csv");
+            Files.copy(feed, copy, StandardCopyOption.COPY_ATTRIBUTES);
+            assertEquals(RollupCache.Outcome.REBUILT, rollups.load(copy).outcome());
+
+            Files.write(feed, lines.subList(6, lines.size()), StandardOpenOption.APPEND);
+            RollupCache.Result appended = rollups.load(feed);
+            assertEquals(RollupCache.Outcome.APPENDED, appended.outcome());
+            assertEquals(5, appended.newRows());
+
+            // Picking up from the saved state gives exactly what reading the whole file in one go does
+            TailingAnalytics fresh = new TailingAnalytics(feed);
+            fresh.poll();
+            assertEquals(fresh.stats(), appended.analytics().stats());
+            assertEquals(fresh.report(), appended.analytics().report());
+            rollups.save(feed, appended.analytics());
+
+            // Same size, different bytes: the hash catches it
+            Files.writeString(feed, Files.readString(feed).replace("1000.00", "1000.01"));
+            assertEquals(RollupCache.Outcome.REBUILT, rollups.load(feed).outcome());
+        }
+
+        @Test
+        void testQueryPushdownMatchesLoadedSales() throws IOException {
+            Path csv = writeDirtyCsv();
+            QueryEngine engine = new QueryEngine();
+            ColumnarSalesStore loaded = new AnalyticsService().loadSales(csv, IngestionMode.TWO_PASS);
+
+            // Row 3 has no region and only gets West from the mode, so it has to survive the byte-level filter
+            SalesQuery west = SalesQuery.all().inRegions("West").groupBy(Dimension.CATEGORY)
+                    .measures(Measure.count(), Measure.sum(Measure.Field.REVENUE));
+            QueryResult result = engine.run(west, csv);
+            assertEquals(List.of(
+                    new QueryResult.Row(List.of("Books"), List.of(1.0, 15.0)),
+                    new QueryResult.Row(List.of("Clothing"), List.of(1.0, 50.0))), result.rows());
+            assertEquals(result, engine.run(west, loaded));
+
+            SalesQuery early = SalesQuery.all().between(LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 5))
+                    .measures(Measure.count(), Measure.max(Measure.Field.UNIT_PRICE));
+            assertEquals(List.of(new QueryResult.Row(List.of(), List.of(3.0, 190.0))), engine.run(early, csv).rows());
+            assertEquals(engine.run(early, csv), engine.run(early, new ArrayList<>(loaded)));
+        }
+
+        @Test
+        void testColumnFileIsRebuiltForAnotherCsv() throws IOException {
+            Path first = writeDirtyCsv();
+            Path second = tempDir.resolve("other.csv");
+            Files.write(second, Files.readAllLines(first).subList(0, 4));
+            Path columns = tempDir.resolve("sales.cols");
+            AnalyticsService service = new AnalyticsService();
+
+            service.processSalesData(first, IngestionMode.TWO_PASS, columns);
+            assertEquals(service.loadSales(first, IngestionMode.TWO_PASS), SalesColumnFile.open(columns));
+            // Newer than both CSVs, but built from the first one
+            service.processSalesData(second, IngestionMode.TWO_PASS, columns);
+            assertEquals(service.loadSales(second, IngestionMode.TWO_PASS), SalesColumnFile.open(columns));
+
+            // Touched without changing a byte, the rows still hold
+            Files.setLastModifiedTime(second, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            assertTrue(SalesColumnFile.open(columns).source().matches(second));
+            // Same size, different bytes
+            Files.writeString(second, Files.readString(second).replace("1000.00", "1000.01"));
+            assertFalse(SalesColumnFile.open(columns).source().matches(second));
+        }
+
+        @Test
+        void testQueryOptionsNameTheValidValues() {
+            SalesQuery query = SalesQuery.all().withOption("group-by", "Payment-Method")
+                    .withOption("measures", "count,avg:unit-price");
+            assertEquals(List.of(Dimension.PAYMENT_METHOD), query.groupBy());
+            assertEquals(List.of(Measure.count(), Measure.avg(Measure.Field.UNIT_PRICE)), query.measures());
+
+            IllegalArgumentException field = assertThrows(IllegalArgumentException.class,
+                    () -> SalesQuery.all().withOption("measures", "avg:price"));
+            assertEquals("No measure field called price, expected one of [revenue, quantity, unit-price]", field.getMessage());
+            IllegalArgumentException dimension = assertThrows(IllegalArgumentException.class,
+                    () -> SalesQuery.all().withOption("group-by", "colour"));
+            assertTrue(dimension.getMessage().startsWith("No dimension called colour, expected one of [region, "));
+        }
+
+        @Test
+        void testGzipMatchesMapped() throws IOException {
+            // Windows line endings and an unterminated last line
+            Path csv = tempDir.resolve("sales-crlf.csv");
+            Files.writeString(csv, String.join("\r\n", Files.readAllLines(writeDirtyCsv()))
+                    + "\r\n11,2023-01-12,Home,301,Lamp,East,909,Cash,1,1e2");
+            byte[] content = Files.readAllBytes(csv);
+            Path single = tempDir.resolve("single.csv.gz");
+            Path members = tempDir.resolve("members.csv.gz");
+            writeGzipMembers(single, content, content.length);
+            // Members of 37 bytes end in the middle of lines, fields and \r\n pairs
+            writeGzipMembers(members, content, 37);
+            AnalyticsService service = new AnalyticsService();
+
+            List<Sale> expected = service.loadSales(csv, IngestionMode.MAPPED);
+            assertEquals(7, expected.size());
+            assertEquals(expected, service.loadSales(single, IngestionMode.TWO_PASS));
+            assertEquals(expected, service.loadSales(members, IngestionMode.TWO_PASS));
+        }
+
+        private void writeGzipMembers(Path gzPath, byte[] content, int memberSize) throws IOException {
+            try (OutputStream out = Files.newOutputStream(gzPath)) {
+                for (int from = 0; from < content.length; from += memberSize) {
+                    GZIPOutputStream member = new GZIPOutputStream(out);
+                    member.write(content, from, Math.min(memberSize, content.length - from));
+                    // Writes the trailer and leaves the file open for the next member
+                    member.finish();
+                }
+            }
+        }
+
+        @Test
+        void testShardsMatchOneFile() throws IOException {
+            Path csv = writeDirtyCsv();
+            List<String> lines = Files.readAllLines(csv);
+            Path shards = Files.createDirectory(tempDir.resolve("shards"));
+            // Row 2 is missing its category in the first shard, the Clothing rows that decide the mode come later
+            Files.write(shards.resolve("shard-a.csv"), lines.subList(0, 4));
+            Files.write(shards.resolve("shard-b.csv"), concat(lines.get(0), lines.subList(4, 8)));
+            Files.write(shards.resolve("shard-c.csv"), concat(lines.get(0), lines.subList(8, lines.size())));
+            Files.writeString(shards.resolve("notes.txt"), "not a shard");
+
+            List<Path> files = CsvFiles.resolve(shards.toString());
+            assertEquals(List.of("shard-a.csv", "shard-b.csv", "shard-c.csv"),
+                    files.stream().map(p -> p.getFileName().toString()).toList());
+            assertEquals(2, CsvFiles.resolve(shards + "/shard-[bc].csv").size());
+
+            AnalyticsService service = new AnalyticsService(true);
+            assertEquals(SalesAggregator.aggregate(service.loadSales(csv, IngestionMode.TWO_PASS), true),
+                    service.aggregateShards(files));
+        }
+
+        @Test
+        void testShardsListValuesInTwoPassOrder() throws IOException {
+            Path csv = tempDir.resolve("generated.csv");
+            new SalesDataGenerator(3, SalesDataGenerator.DirtyRatios.DEFAULT).write(csv, 20_000);
+            List<String> lines = Files.readAllLines(csv);
+            Path first = tempDir.resolve("first.csv");
+            Path second = tempDir.resolve("second.csv");
+            Files.write(first, lines.subList(0, 7_000));
+            Files.write(second, concat(lines.get(0), lines.subList(7_000, lines.size())));
+
+            // Held-back rows go in where they were in the input, so values first seen in one come out in file order
+            for (boolean exactMoney : new boolean[]{false, true}) {
+                AnalyticsService service = new AnalyticsService(exactMoney);
+                SalesReport expected = SalesAggregator.aggregate(service.loadSales(csv, IngestionMode.TWO_PASS), exactMoney);
+                assertSameOrder(expected, service.aggregateShards(List.of(csv)));
+                assertSameOrder(expected, service.aggregateShards(List.of(first, second)));
+                if (exactMoney) {
+                    assertEquals(expected, service.aggregateShards(List.of(first, second)));
+                }
+            }
+        }
+
+        private void assertSameOrder(SalesReport expected, SalesReport actual) {
+            assertEquals(List.copyOf(expected.revenueByRegion().keySet()), List.copyOf(actual.revenueByRegion().keySet()));
+            assertEquals(List.copyOf(expected.monthlyRevenue().keySet()), List.copyOf(actual.monthlyRevenue().keySet()));
+            assertEquals(List.copyOf(expected.unitsByProduct().keySet()), List.copyOf(actual.unitsByProduct().keySet()));
+            assertEquals(List.copyOf(expected.paymentMethodCounts().keySet()),
+                    List.copyOf(actual.paymentMethodCounts().keySet()));
+            assertEquals(List.copyOf(expected.avgUnitPriceByCategory().keySet()),
+                    List.copyOf(actual.avgUnitPriceByCategory().keySet()));
+            for (String region : expected.revenueByRegionAndCategory().keySet()) {
+                assertEquals(List.copyOf(expected.revenueByRegionAndCategory().get(region).keySet()),
+                        List.copyOf(actual.revenueByRegionAndCategory().get(region).keySet()));
+            }
+        }
+
+        private List<String> concat(String header, List<String> rows) {
+            List<String> lines = new ArrayList<>(List.of(header));
+            lines.addAll(rows);
+            return lines;
+        }
+
+        @Test
+        void testMemoryBudgetSpillsAndMatchesUnlimited() throws IOException {
+            Path csv = writeDirtyCsv();
+            Path spillDirectory = Files.createDirectory(tempDir.resolve("spill"));
+            // Room for one group and one held-back row, everything else goes through the spill files
+            MemoryBudget budget = new MemoryBudget(1, spillDirectory);
+
+            SalesQuery byPayment = SalesQuery.all().groupBy(Dimension.PAYMENT_ID, Dimension.DATE)
+                    .measures(Measure.count(), Measure.sum(Measure.Field.REVENUE), Measure.max(Measure.Field.UNIT_PRICE));
+            QueryResult unlimited = new QueryEngine().run(byPayment, csv);
+            assertTrue(unlimited.rows().size() > 5);
+            assertEquals(unlimited, new QueryEngine(budget).run(byPayment, csv));
+
+            AnalyticsService service = new AnalyticsService(true);
+            assertEquals(SalesAggregator.aggregate(service.loadSales(csv, IngestionMode.TWO_PASS), true),
+                    service.aggregateShards(List.of(csv), budget));
+            try (var left = Files.list(spillDirectory)) {
+                assertEquals(0, left.count());
+            }
+        }
+
+        @Test
+        void testSpilledRowsKeepTheirPlaceAndLongFields() throws IOException {
+            Path csv = tempDir.resolve("generated.csv");
+            new SalesDataGenerator(3, SalesDataGenerator.DirtyRatios.DEFAULT).write(csv, 20_000);
+            // A held-back row with a product name longer than writeUTF takes, also spilled as a query group value
+            String longName = "Lamp".repeat(20_000);
+            Files.writeString(csv, "20001,2023-01-12,,301," + longName + ",East,909,Cash,1,12.00\n",
+                    StandardOpenOption.APPEND);
+            Path spillDirectory = Files.createDirectory(tempDir.resolve("spill"));
+            MemoryBudget budget = new MemoryBudget(1, spillDirectory);
+
+            for (boolean exactMoney : new boolean[]{false, true}) {
+                AnalyticsService service = new AnalyticsService(exactMoney);
+                SalesReport expected = SalesAggregator.aggregate(service.loadSales(csv, IngestionMode.TWO_PASS), exactMoney);
+                SalesReport spilled = service.aggregateShards(List.of(csv), budget);
+                assertSameOrder(expected, spilled);
+                assertEquals(1, spilled.unitsByProduct().get(longName));
+                if (exactMoney) {
+                    assertEquals(expected, spilled);
+                }
+            }
+
+            SalesQuery byProduct = SalesQuery.all().groupBy(Dimension.PRODUCT).measures(Measure.count());
+            assertEquals(new QueryEngine().run(byProduct, csv), new QueryEngine(budget).run(byProduct, csv));
+            try (var left = Files.list(spillDirectory)) {
+                assertEquals(0, left.count());
+            }
+        }
+
+        @Test
+        void testServerAnswersFromResidentRows() throws Exception {
+            Path csv = writeDirtyCsv();
+            InetSocketAddress anyPort = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+            try (AnalyticsServer server = new AnalyticsServer(csv, false, anyPort, Duration.ofHours(1))) {
+                server.start();
+                TailingAnalytics expected = new TailingAnalytics(csv);
+                expected.poll();
+                assertEquals(Json.write(expected.report().revenueByRegion()), get(server, "/report/revenueByRegion").body());
+
+                String west = "/query?regions=West&group-by=category&measures=count,sum:revenue";
+                assertEquals("{\"groupBy\":[\"category\"],\"measures\":[\"count\",\"sum(revenue)\"],\"rows\":["
+                        + "{\"key\":[\"Books\"],\"values\":[1.0,15.0]},{\"key\":[\"Clothing\"],\"values\":[1.0,50.0]}]}",
+                        get(server, west).body());
+
+                Files.writeString(csv, "12,2023-01-13,Books,401,Atlas,West,910,Cash,2,10.00\n", StandardOpenOption.APPEND);
+                assertEquals(1, server.refresh());
+                assertTrue(get(server, west).body().contains("{\"key\":[\"Books\"],\"values\":[2.0,35.0]}"));
+                assertEquals(400, get(server, "/query?group-by=colour").statusCode());
+                assertEquals(404, get(server, "/report/nothing").statusCode());
+            }
+        }
+
+        @Test
+        void testServerKeepsRefreshingAfterFailedRefresh() throws Exception {
+            Path csv = writeDirtyCsv();
+            InetSocketAddress anyPort = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+            try (AnalyticsServer server = new AnalyticsServer(csv, false, anyPort, Duration.ofMillis(20))) {
+                server.start();
+                // Without a Date column the header can't be read, so the refreshes fail until the file is fixed
+                Files.writeString(csv, "Transaction ID\n1\n");
+                Thread.sleep(200);
+                Files.writeString(csv, "Transaction ID,Date,Category,Product ID,Product,Region,Payment ID,Payment method,"
+                        + "Quantity,unitPrice\n1,2023-01-02,Books,401,Atlas,West,910,Cash,2,10.00\n");
+
+                long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+                while (!get(server, "/stats").body().startsWith("{\"rows\":1,") && System.nanoTime() < deadline) {
+                    Thread.sleep(20);
+                }
+                assertTrue(get(server, "/stats").body().startsWith("{\"rows\":1,"));
+            }
+        }
+
+        private HttpResponse<String> get(AnalyticsServer server, String path) throws Exception {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path)).build();
+            return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+        }
+
+        @Test
+        void testSinglePassImputesWithFinalStats() throws IOException {
+            List<Sale> sales = new AnalyticsService().loadSales(writeDirtyCsv(), IngestionMode.SINGLE_PASS);
+
+            // Row 2 comes before most of the Clothing rows but still gets the mode of the whole file
+            assertEquals("Clothing", sales.get(1).category());
+            // Rows rejected for a bad ID or date still count towards the stats, as in the two-pass scan
+            assertEquals("West", sales.get(2).region());
+            assertEquals((1000.0 + 30.0 + 50.0 + 15.0 + 20.0 + 25.0) / 6, sales.get(3).unitPrice(), 0.001);
+            assertEquals(1, sales.get(4).quantity());
+        }
+
+        @Test
+        void testGeneratedDataIsRepeatableAndDirtyAtTheGivenRates() throws IOException {
+            Path first = tempDir.resolve("first.csv");
+            Path second = tempDir.resolve("second.csv");
+            Path clean = tempDir.resolve("clean.csv");
+            new SalesDataGenerator(7, SalesDataGenerator.DirtyRatios.DEFAULT).write(first, 20_000);
+            new SalesDataGenerator(7, SalesDataGenerator.DirtyRatios.DEFAULT).write(second, 20_000);
+            new SalesDataGenerator(7, SalesDataGenerator.DirtyRatios.CLEAN).write(clean, 20_000);
+
+            assertEquals(-1, Files.mismatch(first, second));
+            assertEquals(20_001, Files.readAllLines(first).size());
+            assertEquals(20_000, new AnalyticsService().loadSales(clean, IngestionMode.MAPPED).size());
+            // Bad dates, bad IDs and malformed lines are rejected, 1.2% of the rows by default
+            int rejected = 20_000 - new AnalyticsService().loadSales(first, IngestionMode.MAPPED).size();
+            assertTrue(rejected > 150 && rejected < 350, "rejected " + rejected);
+        }
+
+        @Test
+        void testColumnsAreFoundByTheirHeaderNames() throws IOException {
+            Path csv = tempDir.resolve("sales.csv");
+            Path reversed = tempDir.resolve("reversed.csv");
+            new SalesDataGenerator(11, SalesDataGenerator.DirtyRatios.DEFAULT).write(csv, 5_000);
+            List<String> lines = new ArrayList<>();
+            for (String line : Files.readAllLines(csv)) {
+                List<String> fields = new ArrayList<>(List.of(line.split(",", -1)));
+                Collections.reverse(fields);
+                lines.add(String.join(",", fields));
+            }
+            Files.write(reversed, lines);
+
+            AnalyticsService service = new AnalyticsService();
+            for (IngestionMode mode : IngestionMode.values()) {
+                assertEquals(service.loadSales(csv, IngestionMode.TWO_PASS), service.loadSales(reversed, mode), mode.name());
+            }
+        }
+
+        @Test
+        void testProjectedReportMatchesTheFullOne() throws IOException {
+            Path csv = tempDir.resolve("sales.csv");
+            new SalesDataGenerator(12, SalesDataGenerator.DirtyRatios.DEFAULT).write(csv, 5_000);
+
+            AnalyticsService service = new AnalyticsService();
+            SalesReport full = service.aggregateShards(List.of(csv));
+            SalesReport byRegion = service.aggregateShards(List.of(csv), MemoryBudget.UNLIMITED,
+                    ReportSection.columnsFor(Set.of(ReportSection.REVENUE_BY_REGION)));
+            SalesReport byPayment = service.aggregateShards(List.of(csv), MemoryBudget.UNLIMITED,
+                    ReportSection.columnsFor(Set.of(ReportSection.PAYMENT_METHOD_COUNTS)));
+
+            assertEquals(full.revenueByRegion(), byRegion.revenueByRegion());
+            assertEquals(full.paymentMethodCounts(), byPayment.paymentMethodCounts());
+            // Columns outside the projection aren't decoded at all
+            assertEquals(Set.of(""), byPayment.revenueByRegion().keySet());
+        }
+
+        @Test
+        void testMissingColumnOnlyFailsTheReportsThatReadIt() throws IOException {
+            Path csv = tempDir.resolve("no_region.csv");
+            Files.write(csv, List.of(
+                    "Transaction ID,Date,Payment method,Quantity,unitPrice",
+                    "1,2023-01-05,Cash,2,10.00",
+                    "2,2023-02-05,PayPal,1,5.50"
+            ));
+
+            AnalyticsService service = new AnalyticsService();
+            SalesReport report = service.aggregateShards(List.of(csv), MemoryBudget.UNLIMITED,
+                    ReportSection.columnsFor(Set.of(ReportSection.PAYMENT_METHOD_COUNTS, ReportSection.MONTHLY_REVENUE)));
+            assertEquals(Map.of("Cash", 1L, "PayPal", 1L), Map.copyOf(report.paymentMethodCounts()));
+
+            CsvParsingException e = assertThrows(CsvParsingException.class, () -> service.aggregateShards(List.of(csv),
+                    MemoryBudget.UNLIMITED, ReportSection.columnsFor(Set.of(ReportSection.REVENUE_BY_REGION))));
+            assertTrue(e.getMessage().contains("'Region'"));
+        }
+    }
+
+    @Nested
+    class ColumnarSalesStoreTest {
+
+        private Sale sale(long id, String category, String region, String dateStr, int qty, double price) {
+            return new Sale(id, LocalDate.parse(dateStr), category, 10L + id, "Prod" + id % 2, region, 20L + id, "Cash", qty, price);
+        }
+
+        @Test
+        void testRoundTripsSales() {
+            ColumnarSalesStore store = new ColumnarSalesStore(1);
+            List<Sale> sales = List.of(
+                    sale(1, "Books", "North", "2023-01-02", 2, 15.5),
+                    sale(2, "Home", "South", "1999-12-31", 1, 40.0),
+                    sale(3, "Books", "North", "2024-02-29", 3, 9.99)
+            );
+            store.addAll(sales);
+
+            assertEquals(sales, store);
+            assertEquals(2, store.categories().size());
+            assertEquals(store.categoryCode(0), store.categoryCode(2));
+            assertEquals(3 * 9.99, store.totalAmount(2), 0.0001);
+            assertEquals(LocalDate.parse("2024-02-29").toEpochDay(), store.epochDay(2));
+        }
+
+        @Test
+        void testReservedRowsAndAppend() {
+            ColumnarSalesStore first = new ColumnarSalesStore();
+            first.add(sale(1, "Books", "North", "2023-01-02", 2, 15.5));
+            first.add(null);
+            assertNull(first.get(1));
+
+            ColumnarSalesStore second = new ColumnarSalesStore();
+            second.add(sale(3, "Home", "West", "2023-03-04", 1, 40.0));
+            second.add(null);
+            second.add(sale(5, "Books", "East", "2023-03-05", 4, 2.5));
+
+            first.appendAll(second);
+            first.set(1, sale(2, "Toys", "South", "2023-01-03", 1, 8.0));
+            first.set(3, sale(4, "Books", "North", "2023-03-04", 1, 1.0));
+
+            assertEquals(5, first.size());
+            assertEquals(List.of(1L, 2L, 3L, 4L, 5L), first.stream().map(Sale::transactionId).toList());
+            assertEquals("Home", first.get(2).category());
+            assertEquals("East", first.region(4));
+            assertEquals(first.categoryCode(0), first.categoryCode(4));
+        }
+
+        @Test
+        void testColumnFileRoundTrip(@TempDir Path tempDir) throws IOException {
+            ColumnarSalesStore store = new ColumnarSalesStore();
+            store.addAll(List.of(
+                    sale(7, "Books", "North", "2023-01-02", 2, 15.5),
+                    sale(3, "Home", "South", "1999-12-31", 1, 40.0),
+                    sale(9, "Books", "Ünïcode", "2024-02-29", 3, 9.99)
+            ));
+            GlobalStats stats = new GlobalStats(21.83, "Books", "North", "Cash", 1);
+            Path file = tempDir.resolve("sales.cols");
+            Path csv = Files.writeString(tempDir.resolve("sales.csv"), "Transaction ID,Date\n");
+            SalesColumnFile.write(file, store, stats, SalesColumnFile.Source.of(csv));
+
+            SalesColumnFile loaded = SalesColumnFile.open(file);
+            assertEquals(store, loaded);
+            assertEquals(stats, loaded.stats());
+            assertEquals(csv.toRealPath().toString(), loaded.source().path());
+            assertTrue(loaded.source().matches(csv));
+            assertEquals(3, loaded.min(SalesColumnFile.Column.TRANSACTION_ID));
+            assertEquals(9, loaded.max(SalesColumnFile.Column.TRANSACTION_ID));
+            assertEquals(LocalDate.parse("1999-12-31").toEpochDay(), loaded.min(SalesColumnFile.Column.EPOCH_DAY));
+            assertEquals(40.0, loaded.maxUnitPrice());
+            assertEquals(SalesAggregator.aggregate(store), SalesAggregator.aggregate(loaded));
+            // Columns past 2 GB are mapped in segments, here of two rows so the last row is in a segment of its own
+            SalesColumnFile segmented = SalesColumnFile.open(file, 1);
+            assertEquals(store, segmented);
+            assertEquals(SalesAggregator.aggregate(store), SalesAggregator.aggregate(segmented));
+            assertThrows(IllegalArgumentException.class, () -> SalesColumnFile.open(file, 28));
+
+            Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+            assertThrows(IOException.class, () -> SalesColumnFile.open(file));
+        }
+    }
+
+    @Nested
+    class SalesAggregatorTest {
+
+        // "Credit Card" and "Bank Transfer" share a HashMap bucket, so their order shows whether keys went in the same way
+        private List<Sale> sales() {
+            String[] payments = {"PayPal", "Credit Card", "Cash", "Bank Transfer", "Debit Card"};
+            String[] regions = {"North", "South", "East", "West"};
+            String[] categories = {"Books", "Home", "Electronics", "Beauty"};
+            List<Sale> sales = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                sales.add(new Sale(i, LocalDate.of(2023, 1, 1).plusDays(i * 7L % 500), categories[i * 3 % 4],
+                        i % 5, "Prod" + i % 7, regions[i % 4], i, payments[i * 2 % 5], 1 + i % 4, 3.3 + i % 97 * 1.7));
+            }
+            return sales;
+        }
+
+        @Test
+        void testFusedPassMatchesStreams() {
+            List<Sale> sales = sales();
+            SalesReport expected = ReferenceReports.aggregateWithStreams(sales);
+            ColumnarSalesStore store = new ColumnarSalesStore();
+            store.addAll(sales);
+
+            for (SalesReport actual : List.of(SalesAggregator.aggregate(sales), SalesAggregator.aggregate(store))) {
+                // equals() covers the values, the key lists cover the iteration order the report prints in
+                assertEquals(expected, actual);
+                assertEquals(List.copyOf(expected.paymentMethodCounts().keySet()), List.copyOf(actual.paymentMethodCounts().keySet()));
+                assertEquals(List.copyOf(expected.revenueByRegion().keySet()), List.copyOf(actual.revenueByRegion().keySet()));
+                assertEquals(List.copyOf(expected.unitsByProduct().keySet()), List.copyOf(actual.unitsByProduct().keySet()));
+                expected.revenueByRegionAndCategory().forEach((region, byCategory) -> assertEquals(
+                        List.copyOf(byCategory.keySet()), List.copyOf(actual.revenueByRegionAndCategory().get(region).keySet())));
+            }
+        }
+
+        @Test
+        void testExactMoneyIsIndependentOfOrder() {
+            List<Sale> sales = sales();
+            List<Sale> shuffled = new ArrayList<>(sales);
+            Collections.shuffle(shuffled, new Random(42));
+
+            assertEquals(SalesAggregator.aggregate(sales, true), SalesAggregator.aggregate(shuffled, true));
+        }
+
+        @Test
+        void testExactMoneyMergeMatchesOneAggregator() {
+            List<Sale> sales = sales();
+            SalesAggregator first = SalesAggregator.exactMoney();
+            SalesAggregator second = SalesAggregator.exactMoney();
+            // The second half starts with values the first half never saw, so merging has to give them new codes
+            first.acceptAll(sales.subList(0, 150));
+            second.acceptAll(sales.subList(150, sales.size()).reversed());
+            second.merge(first);
+
+            assertEquals(SalesAggregator.aggregate(sales, true), second.toReport());
+            assertThrows(IllegalStateException.class, () -> new SalesAggregator().merge(first));
+        }
+
+        @Test
+        void testExactMoneyOnlyDiffersByTheImputedMeanPrice(@TempDir Path tempDir) throws IOException {
+            Path csv = tempDir.resolve("generated.csv");
+            new SalesDataGenerator(3, SalesDataGenerator.DirtyRatios.DEFAULT).write(csv, 20_000);
+            List<Sale> sales = new AnalyticsService().loadSales(csv, IngestionMode.TWO_PASS);
+            double meanPrice = new ImputationService().calculateStats(csv).meanPrice();
+            double meanInPaise = Money.toMajorUnits(Money.toMinorUnits(meanPrice));
+            assertNotEquals(meanPrice, meanInPaise);
+
+            // Parsed prices have two decimals and are whole paise either way. Only the mean that missing prices get has
+            // more, and exact money counts it in paise, as the cleaning log prints it
+            Map<String, Double> difference = new HashMap<>();
+            for (Sale sale : sales) {
+                if (sale.unitPrice() == meanPrice) {
+                    difference.merge(sale.region(), sale.quantity() * (meanInPaise - meanPrice), Double::sum);
+                } else {
+                    assertEquals(sale.unitPrice(), Money.toMajorUnits(Money.toMinorUnits(sale.unitPrice())));
+                }
+            }
+            SalesReport doubles = SalesAggregator.aggregate(sales, false);
+            SalesReport exact = SalesAggregator.aggregate(sales, true);
+            doubles.revenueByRegion().forEach((region, revenue) -> {
+                assertTrue(Math.abs(difference.get(region)) > 0.1);
+                assertEquals(difference.get(region), exact.revenueByRegion().get(region) - revenue, 1e-6);
+            });
+        }
+
+        @Test
+        void testMoneyRoundsLikeTheDecimalText() {
+            assertEquals(101, Money.toMinorUnits(1.005));
+            assertEquals(1999, Money.toMinorUnits(19.99));
+            assertEquals(30, Money.toMinorUnits(0.1 + 0.2));
+            assertEquals(-250, Money.toMinorUnits(-2.499));
+            assertEquals(19.99, Money.toMajorUnits(1999));
+            assertThrows(ArithmeticException.class, () -> Money.toMinorUnits(Double.NaN));
+        }
+    }
+
+    @Nested
+    class AnalyticsLoggerTest {
+
+        @Test
+        void testFlushWritesQueuedLinesInOrder() throws IOException {
+            for (int i = 0; i < 100; i++) {
+                AnalyticsLogger.logDataCleaning("LOGTEST-" + i, "Price", "", "9.99");
+            }
+            AnalyticsLogger.logIngestionError("LOGTEST,raw,line", "CsvParsingError: test");
+            AnalyticsLogger.flush();
+
+            List<String> cleaning = Files.readAllLines(Path.of("DataCleaning.log")).stream()
+                    .filter(line -> line.contains("LOGTEST-"))
+                    .toList();
+            assertEquals(100, cleaning.size());
+            assertEquals("[CLEANING LOG] TxID: LOGTEST-0  | Field: Price      | Original: '        ' -> Imputed: 9.99", cleaning.get(0));
+            assertTrue(cleaning.get(99).contains("LOGTEST-99 "));
+            assertTrue(Files.readAllLines(Path.of("DataIngestionErrors.log"))
+                    .contains("[INGESTION ERROR LOG] Exception: CsvParsingError: test | Line: LOGTEST,raw,line"));
+        }
+
+        @Test
+        void testPipelineMetricsCountAndTimeStages() {
+            PipelineMetrics metrics = new PipelineMetrics();
+            metrics.recordBytesRead(1_000);
+            for (int i = 0; i < 5; i++) {
+                metrics.recordRow();
+            }
+            metrics.recordParseError();
+            metrics.recordValidationReject();
+            metrics.recordImputed("Region");
+            metrics.recordImputed("Region");
+
+            metrics.startStage("Phase 1");
+            byte[][] garbage = new byte[64][];
+            for (int i = 0; i < garbage.length; i++) {
+                garbage[i] = new byte[16_384];
+            }
+            // Starting the next stage ends this one, and a stage that runs again adds up
+            metrics.startStage("Phase 2");
+            metrics.startStage("Phase 1");
+            metrics.stopStage();
+
+            assertEquals(1_000, metrics.getBytesRead());
+            assertEquals(5, metrics.getRowsRead());
+            assertEquals(1, metrics.getParseErrors());
+            assertEquals(1, metrics.getValidationRejects());
+            assertEquals(Map.of("Category", 0L, "Region", 2L, "UnitPrice", 0L, "Quantity", 0L), metrics.getImputedByField());
+            assertEquals(List.of("Phase 1", "Phase 2"), List.copyOf(metrics.getStageMillis().keySet()));
+            assertTrue(metrics.getStageAllocatedBytes().get("Phase 1") >= garbage.length * 16_384L);
+            assertTrue(metrics.summary().contains("Imputed Region : 2"));
+
+            metrics.reset();
+            assertEquals(0, metrics.getRowsRead());
+            assertTrue(metrics.getStageMillis().isEmpty());
+        }
+    }
+
+    @Nested
+    class SketchTest {
+
+        @Test
+        void testHeavyHittersFindTheLargestCounts() {
+            HeavyHitters top = new HeavyHitters(3, 1024, 5);
+            // Many small keys around a few large ones, the large ones are added in between the rest
+            for (int i = 0; i < 20_000; i++) {
+                top.add("P" + (i % 5_000), 1);
+                if (i % 100 == 0) {
+                    top.add("Big", 30);
+                    top.add("Bigger", 50);
+                    top.add("Biggest", 70);
+                }
+            }
+            assertEquals(List.of("Biggest", "Bigger", "Big"), top.top().stream().map(HeavyHitters.Estimate::key).toList());
+            // Count-min never underestimates
+            assertTrue(top.top().get(0).count() >= 200 * 70);
+        }
+
+        @Test
+        void testHyperLogLogMergesOverlappingHalves() {
+            HyperLogLog first = new HyperLogLog();
+            HyperLogLog second = new HyperLogLog();
+            for (long id = 0; id < 60_000; id++) {
+                first.add(id);
+            }
+            for (long id = 40_000; id < 100_000; id++) {
+                second.add(id);
+            }
+            assertEquals(60_000, first.estimate(), 60_000 * 0.03);
+            first.merge(second);
+            assertEquals(100_000, first.estimate(), 100_000 * 0.03);
+        }
+
+        @Test
+        void testQuantileSketchMergesHalves() {
+            QuantileSketch even = new QuantileSketch();
+            QuantileSketch odd = new QuantileSketch();
+            for (int i = 0; i < 100_000; i++) {
+                (i % 2 == 0 ? even : odd).add((i * 7_919L) % 100_000);
+            }
+            even.merge(odd);
+            assertEquals(100_000, even.count());
+            assertEquals(0.0, even.quantile(0));
+            assertEquals(99_999.0, even.quantile(1));
+            assertEquals(50_000, even.quantile(0.5), 2_000);
+            assertEquals(90_000, even.quantile(0.9), 2_000);
+        }
+
+        @Test
+        void testSalesSketchesMatchExactReportOnSmallInput() {
+            List<Sale> sales = new ArrayList<>();
+            for (int i = 0; i < 1_000; i++) {
+                sales.add(new Sale(1_000_000 + i, LocalDate.of(2023, 1, 1), "Books", 100 + i % 20, "Product" + i % 20,
+                        "North", 500_000 + i % 400, "Cash", 1 + i % 20, 10.0));
+            }
+            SalesSketches first = new SalesSketches();
+            SalesSketches second = new SalesSketches();
+            for (int i = 0; i < sales.size(); i++) {
+                (i < 500 ? first : second).accept(sales.get(i));
+            }
+            first.merge(second);
+
+            assertEquals(List.of(new HeavyHitters.Estimate("Product19", 1_000), new HeavyHitters.Estimate("Product18", 950),
+                    new HeavyHitters.Estimate("Product17", 900)), first.topProducts());
+            assertEquals(20, first.distinctProducts());
+            assertEquals(400, first.distinctPaymentIds(), 4);
+            assertEquals(1_000, first.distinctTransactions(), 10);
+            assertEquals(1_000, first.count());
+            assertEquals(200.0, first.orderValueQuantile(1));
+        }
+    }
+
+    @Nested
+    class IsoDatesTest {
+
+        @Test
+        void testDecodingMatchesLocalDate() {
+            for (LocalDate date = LocalDate.of(1899, 12, 25); date.getYear() <= 2100; date = date.plusDays(1)) {
+                int epochDay = (int) date.toEpochDay();
+                assertEquals(epochDay, IsoDates.parseEpochDay(date.toString()));
+                assertEquals(date, IsoDates.parseDate(date.toString()));
+                assertEquals(SalesReport.monthKey(date.getYear(), date.getMonthValue()), IsoDates.monthKey(epochDay));
+                assertEquals(date.getDayOfWeek().getValue(), IsoDates.dayOfWeek(epochDay));
+            }
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = {"2023-02-29", "2023-04-31", "2023-13-01", "2023-00-10", "2023-1-01", "20230101",
+                "2023/01/01", "abcd-01-01", "2023-01-01 ", "+2023-01-01"})
+        void testMalformedDatesFallBackToValidationError(String text) {
+            assertEquals(IsoDates.INVALID, IsoDates.parseEpochDay(text));
+            assertNull(IsoDates.parseDate(text));
+
+            GlobalStats stats = new GlobalStats(10.0, "Cat", "Reg", "Pay", 1);
+            RawSale raw = new RawSale("105", text, "Cat", "1", "Prod", "Reg", "1", "Pay", "1", "10.0");
+            DataValidationException e = assertThrows(DataValidationException.class, () -> imputer.imputeAndMap(raw, stats));
+            assertEquals("Invalid ISO Date format: " + text, e.getMessage());
+        }
+    }
+
+    @Nested
+    class NumericTextTest {
+
+        @ParameterizedTest
+        @ValueSource(strings = {"", "-", ".", "12", "-7", "+3", "48.34", "1.", ".5", "-0", "12.5.6", "3.5", "two", "N/A",
+                " 2.5 ", "1e3", "0x1p3", "1d", "NaN", "-Infinity", "9007199254740993", "0.1234567890123456789",
+                "2147483648", "9223372036854775807", "9223372036854775808", "-9223372036854775808", "١٢"})
+        void testMatchesJdkParsers(String text) {
+            Double expectedDouble = null;
+            try {
+                expectedDouble = Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                // stays null
+            }
+            assertEquals(expectedDouble != null, NumericText.isDouble(text));
+            if (expectedDouble != null) {
+                assertEquals(expectedDouble, NumericText.parseDouble(text));
+            } else {
+                assertTrue(Double.isNaN(NumericText.parseDouble(text)));
+            }
+
+            Long expectedLong = null;
+            try {
+                expectedLong = Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                // stays null
+            }
+            assertEquals(expectedLong != null, NumericText.isLong(text));
+            assertEquals(expectedLong != null ? expectedLong : NumericText.NOT_A_NUMBER, NumericText.parseLong(text));
+
+            Integer expectedInt = null;
+            try {
+                expectedInt = Integer.parseInt(text);
+            } catch (NumberFormatException e) {
+                // stays null
+            }
+            assertEquals(expectedInt != null ? expectedInt : NumericText.NOT_A_NUMBER, NumericText.parseInt(text));
+        }
+    }
 }
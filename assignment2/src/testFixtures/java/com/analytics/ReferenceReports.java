@@ -0,0 +1,32 @@
+package com.analytics;
+
+import com.analytics.model.Sale;
+import com.analytics.model.SalesReport;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+// The original one-pipeline-per-report version, kept as the reference the fused pass in SalesAggregator has to match
+// Test code shared by the tests and the benchmarks, it isn't part of the application
+public final class ReferenceReports {
+
+    private ReferenceReports() {
+    }
+
+    public static SalesReport aggregateWithStreams(List<Sale> sales) {
+        return new SalesReport(
+                sales.stream().collect(Collectors.groupingBy(Sale::region, Collectors.summingDouble(Sale::totalAmount))),
+                sales.stream().collect(Collectors.groupingBy(
+                        s -> SalesReport.monthKey(s.date().getYear(), s.date().getMonthValue()),
+                        Collectors.summingDouble(Sale::totalAmount))),
+                sales.stream().collect(Collectors.groupingBy(Sale::product, Collectors.summingInt(Sale::quantity))),
+                sales.stream().collect(Collectors.groupingBy(Sale::paymentMethod, Collectors.counting())),
+                sales.stream().collect(Collectors.groupingBy(Sale::category, Collectors.averagingDouble(Sale::unitPrice))),
+                sales.stream().collect(Collectors.groupingBy(
+                        Sale::region,
+                        Collectors.groupingBy(Sale::category, Collectors.summingDouble(Sale::totalAmount)))),
+                sales.stream().collect(Collectors.groupingBy(s -> SalesReport.valueBucket(s.totalAmount()), Collectors.counting())),
+                sales.stream().collect(Collectors.groupingBy(s -> s.date().getDayOfWeek(), Collectors.averagingDouble(Sale::totalAmount)))
+        );
+    }
+}